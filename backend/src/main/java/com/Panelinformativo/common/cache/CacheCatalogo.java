@@ -0,0 +1,55 @@
+package com.Panelinformativo.common.cache;
+
+import com.Panelinformativo.common.util.TransaccionUtil;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Caché en memoria de ids de entidades de catálogo (transportistas, zonas, vueltas) por nombre normalizado.
+// Solo guarda entidades activas; los servicios de cada catálogo la invalidan al crear, editar o desactivar.
+// Guarda ids y no entidades: cada transacción obtiene su propia referencia (getReferenceById)
+// en lugar de compartir una instancia desconectada que otro hilo podría estar modificando.
+public class CacheCatalogo {
+    private final Map<String, Long> idsPorNombre = new ConcurrentHashMap<>();
+    // Aumenta con cada invalidación; una lectura que empezó antes de la última invalidación no se guarda
+    private long generacion;
+
+    public Long obtener(String nombre) {
+        return idsPorNombre.get(normalizar(nombre));
+    }
+
+    // Se toma antes de leer la entidad de la base y se pasa a guardar
+    public synchronized long generacion() {
+        return generacion;
+    }
+
+    // Se agrega recién cuando la transacción confirma, para no cachear entidades que luego se revierten,
+    // y solo si no hubo invalidaciones desde que se leyó (podría ser una entidad desactivada mientras tanto)
+    public void guardar(String nombre, Long id, long generacionLeida) {
+        String clave = normalizar(nombre);
+        TransaccionUtil.despuesDelCommit(() -> {
+            synchronized (this) {
+                if (generacion == generacionLeida) {
+                    idsPorNombre.put(clave, id);
+                }
+            }
+        });
+    }
+
+    // Se limpia en el momento y otra vez al confirmar, para descartar lo que se haya leído mientras tanto
+    public void invalidar() {
+        limpiar();
+        TransaccionUtil.despuesDelCommit(this::limpiar);
+    }
+
+    private synchronized void limpiar() {
+        generacion++;
+        idsPorNombre.clear();
+    }
+
+    // Mismo criterio que la búsqueda IgnoreCase del repositorio: sin espacios extremos y en minúsculas
+    public static String normalizar(String nombre) {
+        return nombre.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -49,6 +49,7 @@ public class SecurityConfig {
                         // Endpoints públicos para la pantalla pública (solo lectura - GET)
                         .requestMatchers(HttpMethod.GET, "/api/pedidos/estado/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/pedidos/pendientes/con-orden").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/pedidos/changes/version").permitAll()
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session -> session
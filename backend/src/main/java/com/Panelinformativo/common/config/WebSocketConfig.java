@@ -1,14 +1,28 @@
 package com.Panelinformativo.common.config;
 
+import com.Panelinformativo.common.websocket.CodificacionCbor;
+import com.Panelinformativo.common.websocket.ColasSalidaWebSocket;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+    private final CodificacionCbor codificacionCbor;
+    private final ColasSalidaWebSocket colasSalida;
+
+    @Value("${websocket.salida.limite-bytes:524288}")
+    private int limiteBytesSalida;
+    @Value("${websocket.salida.limite-tiempo-ms:15000}")
+    private int limiteTiempoSalidaMs;
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
@@ -22,5 +36,26 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
-}
 
+    // El formato se negocia en el CONNECT (entrada) y se aplica a cada mensaje hacia el cliente (salida)
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(codificacionCbor);
+    }
+
+    // La cola de salida va primero: decide qué mensajes salen y los liberados vuelven a pasar por el CBOR
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(colasSalida, codificacionCbor);
+    }
+
+    // Los mismos límites valen para lo que queda en el buffer de la sesión mientras se escribe un mensaje
+    // CodificacionCbor también decora las sesiones para saber cuáles llegan por SockJS
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendBufferSizeLimit(limiteBytesSalida)
+                .setSendTimeLimit(limiteTiempoSalidaMs)
+                .addDecoratorFactory(colasSalida)
+                .addDecoratorFactory(codificacionCbor);
+    }
+}
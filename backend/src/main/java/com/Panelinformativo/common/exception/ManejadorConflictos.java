@@ -0,0 +1,19 @@
+package com.Panelinformativo.common.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+// Responde 409 cuando un cambio se hizo sobre datos que otro usuario ya modificó
+// (versión optimista vieja o transición condicionada que no encontró el estado de partida)
+@RestControllerAdvice
+public class ManejadorConflictos {
+
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<String> manejarConflicto(ObjectOptimisticLockingFailureException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body("El pedido fue modificado por otro usuario, actualice la vista y vuelva a intentarlo");
+    }
+}
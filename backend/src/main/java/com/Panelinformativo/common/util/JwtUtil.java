@@ -1,6 +1,8 @@
 package com.Panelinformativo.common.util;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
@@ -8,21 +10,35 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 @Component
 public class JwtUtil {
-    @Value("${jwt.secret:mySecretKey123456789012345678901234567890}")
-    private String secret;
+    // Máximo de tokens verificados que se recuerdan (cada panel conectado usa uno)
+    private static final int MAXIMO_TOKENS_EN_CACHE = 10_000;
 
-    @Value("${jwt.expiration:86400000}")
-    private Long expiration;
+    private final Long expiration;
+    // La clave y el parser se construyen una sola vez
+    private final SecretKey signingKey;
+    private final JwtParser parser;
 
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+    // Tokens ya verificados: hash SHA-256 del token -> claims (válidos hasta su expiración).
+    // Se usa el hash como clave para no guardar los tokens en memoria ni compararlos carácter por carácter.
+    private final Map<String, Claims> tokensVerificados = new ConcurrentHashMap<>();
+
+    public JwtUtil(@Value("${jwt.secret:mySecretKey123456789012345678901234567890}") String secret,
+                   @Value("${jwt.expiration:86400000}") Long expiration) {
+        this.expiration = expiration;
+        this.signingKey = Keys.hmacShaKeyFor(secret.getBytes());
+        this.parser = Jwts.parser().verifyWith(signingKey).build();
     }
 
     public String extractUsername(String token) {
@@ -38,16 +54,58 @@ public class JwtUtil {
         return claimsResolver.apply(claims);
     }
 
+    // Verifica el token una sola vez y devuelve sus claims; null si es inválido o expiró.
+    // Los tokens ya verificados se sirven desde la caché sin volver a comprobar la firma.
+    public Claims validarToken(String token) {
+        try {
+            return extractAllClaims(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        String clave = hashToken(token);
+        Claims claims = tokensVerificados.get(clave);
+        if (claims != null) {
+            if (claims.getExpiration().after(new Date())) {
+                return claims;
+            }
+            tokensVerificados.remove(clave);
+        }
+
+        // Lanza ExpiredJwtException si el token expiró, igual que antes
+        claims = parser.parseSignedClaims(token).getPayload();
+        guardarEnCache(clave, claims);
+        return claims;
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    private void guardarEnCache(String clave, Claims claims) {
+        if (claims.getExpiration() == null) {
+            return;
+        }
+        if (tokensVerificados.size() >= MAXIMO_TOKENS_EN_CACHE) {
+            // Primero descartar los expirados; si sigue llena, vaciarla (se vuelven a verificar)
+            Date ahora = new Date();
+            tokensVerificados.values().removeIf(c -> !c.getExpiration().after(ahora));
+            if (tokensVerificados.size() >= MAXIMO_TOKENS_EN_CACHE) {
+                tokensVerificados.clear();
+            }
+        }
+        tokensVerificados.put(clave, claims);
+    }
+
+    private static String hashToken(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
     }
 
     public String generateToken(UserDetails userDetails) {
@@ -61,21 +119,20 @@ public class JwtUtil {
                 .subject(subject)
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 
     public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        final Claims claims = extractAllClaims(token);
+        return (claims.getSubject().equals(userDetails.getUsername()) && !isTokenExpired(claims));
     }
 
     public Boolean isTokenValid(String token) {
         try {
-            return !isTokenExpired(token);
+            return !isTokenExpired(extractAllClaims(token));
         } catch (Exception e) {
             return false;
         }
     }
 }
-
@@ -0,0 +1,29 @@
+package com.Panelinformativo.common.util;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Locale;
+
+public final class RestriccionesUtil {
+
+    private RestriccionesUtil() {
+    }
+
+    // Indica si la violación de integridad corresponde a la restricción indicada.
+    // Se compara sin distinguir mayúsculas porque cada base informa el nombre a su manera
+    // (H2 lo devuelve en mayúsculas y con prefijo de esquema).
+    public static boolean violaRestriccion(DataIntegrityViolationException e, String nombreRestriccion) {
+        String buscado = nombreRestriccion.toLowerCase(Locale.ROOT);
+        for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+            if (causa instanceof ConstraintViolationException violacion && violacion.getConstraintName() != null
+                    && violacion.getConstraintName().toLowerCase(Locale.ROOT).contains(buscado)) {
+                return true;
+            }
+            if (causa.getMessage() != null && causa.getMessage().toLowerCase(Locale.ROOT).contains(buscado)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,26 @@
+package com.Panelinformativo.common.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public final class TransaccionUtil {
+
+    private TransaccionUtil() {
+    }
+
+    // Ejecuta la acción cuando la transacción actual confirma sus cambios.
+    // Si no hay transacción activa, la ejecuta inmediatamente.
+    // Se usa para mantener estructuras en memoria sin reflejar cambios que luego se revierten.
+    public static void despuesDelCommit(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.Panelinformativo.common.websocket;
+
+// Datos que cada nodo mantiene en memoria (cachés, vistas y agregados) y que un cambio en otro nodo deja viejos
+public enum AreaCluster {
+    PEDIDOS,   // Versión de cambios conocida y vistas de las pantallas
+    MENSAJES,  // Mensajes del día y contadores de no leídos
+    CATALOGOS, // Transportistas, zonas, vueltas y grupos
+    USUARIOS   // Directorio de usuarios
+}
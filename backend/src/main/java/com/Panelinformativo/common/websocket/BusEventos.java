@@ -0,0 +1,19 @@
+package com.Panelinformativo.common.websocket;
+
+// Entrega las notificaciones de WebSocketService al broker STOMP de cada nodo del backend.
+// Con un solo nodo alcanza con BusEventosLocal; con varios nodos detrás de un balanceador,
+// BusEventosBaseDatos hace que una pantalla conectada a cualquier nodo reciba los cambios hechos en otro.
+// Se elige con la propiedad websocket.bus (local | base-datos).
+public interface BusEventos {
+
+    void publicar(String destino, Object contenido);
+
+    // Avisa a los demás nodos, al confirmar la transacción actual, que cambiaron datos que guardan en memoria;
+    // cada uno lo recibe como un evento CambiosDeOtroNodo. Con un solo nodo no hace nada.
+    void avisarCambio(AreaCluster area);
+
+    // Publica 'evento' como evento de Spring en los demás nodos, para que apliquen un cambio sin volver a leer
+    // la base. Se llama con el cambio ya confirmado (desde TransaccionUtil.despuesDelCommit); el evento debe ser
+    // un record de la aplicación que pueda convertirse a JSON. Con un solo nodo no hace nada.
+    void relevar(Object evento);
+}
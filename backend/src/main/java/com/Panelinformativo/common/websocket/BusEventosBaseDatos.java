@@ -0,0 +1,217 @@
+package com.Panelinformativo.common.websocket;
+
+import com.Panelinformativo.common.util.TransaccionUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Bus para varios nodos sin servicios externos: usa la misma base de datos como relevo.
+// Cada notificación se entrega en el momento al broker del nodo que la publica y queda en una cola;
+// cada pocos milisegundos el nodo guarda lo encolado en eventos_cluster (un solo INSERT por lotes,
+// sin ocupar la conexión de la petición que publicó) y lee lo que publicaron los demás nodos
+// para entregarlo a sus propios clientes.
+//
+// Los ids son autoincrementales pero dos nodos pueden confirmar sus INSERT en otro orden: si aparece un id
+// mayor antes que uno menor, el faltante se sigue buscando durante ESPERA_FALTANTES_MS antes de darlo por perdido.
+//
+// Los avisos de cambios (avisarCambio) viajan por la misma tabla con el destino "aviso:<área>" y no llegan a los
+// clientes: se juntan los de cada lectura en un único evento CambiosDeOtroNodo, que se publica antes de entregar
+// los demás eventos de esa lectura. Los eventos relevados (relevar) usan el destino "evento:<clase>" con el
+// record en JSON y se publican, en orden, después de CambiosDeOtroNodo y antes de las notificaciones.
+@Component
+@ConditionalOnProperty(name = "websocket.bus", havingValue = "base-datos")
+public class BusEventosBaseDatos implements BusEventos {
+    private static final long ESPERA_FALTANTES_MS = 10_000;
+    // Huecos mayores (por ejemplo, saltos del autoincremental) no se siguen
+    private static final int MAXIMO_FALTANTES = 1_000;
+    private static final int TAMANIO_LECTURA = 1_000;
+    private static final long SIN_INICIALIZAR = -1;
+    private static final String PREFIJO_AVISO = "aviso:";
+    private static final String PREFIJO_EVENTO = "evento:";
+    // Solo se reconstruyen eventos de clases de la aplicación
+    private static final String PAQUETE_EVENTOS = "com.Panelinformativo.";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final JsonMapper jsonMapper;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final String nodo = UUID.randomUUID().toString();
+
+    @Value("${websocket.bus.retencion-minutos:5}")
+    private int retencionMinutos;
+
+    private record EventoPendiente(String destino, String contenido, LocalDateTime fecha) {}
+
+    private final Queue<EventoPendiente> pendientesDeGuardar = new ConcurrentLinkedQueue<>();
+
+    // Estado de lectura: solo lo usan sincronizar e inicializarLectura (sincronizados)
+    private long ultimoId = SIN_INICIALIZAR;
+    private final Map<Long, Long> faltantes = new HashMap<>(); // id -> momento en que se detectó el hueco
+
+    public BusEventosBaseDatos(SimpMessagingTemplate messagingTemplate, JdbcTemplate jdbcTemplate, JsonMapper jsonMapper,
+                               ApplicationEventPublisher eventPublisher) {
+        this.messagingTemplate = messagingTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.jsonMapper = jsonMapper;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void publicar(String destino, Object contenido) {
+        byte[] json = jsonMapper.writeValueAsBytes(contenido);
+        entregar(destino, json);
+        pendientesDeGuardar.add(new EventoPendiente(destino, new String(json, StandardCharsets.UTF_8), LocalDateTime.now()));
+    }
+
+    // Se encola al confirmar: el nodo que recibe el aviso ya encuentra los cambios en la base
+    @Override
+    public void avisarCambio(AreaCluster area) {
+        TransaccionUtil.despuesDelCommit(() ->
+                pendientesDeGuardar.add(new EventoPendiente(PREFIJO_AVISO + area.name(), "", LocalDateTime.now())));
+    }
+
+    // Ya confirmado: se encola en el momento
+    @Override
+    public void relevar(Object evento) {
+        pendientesDeGuardar.add(new EventoPendiente(PREFIJO_EVENTO + evento.getClass().getName(),
+                jsonMapper.writeValueAsString(evento), LocalDateTime.now()));
+    }
+
+    // Fija desde dónde leer antes de que los servicios en memoria se reconstruyan (al quedar lista la aplicación):
+    // lo que otro nodo confirme después de esa lectura de la base llega por el bus
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void inicializarLectura() {
+        if (ultimoId == SIN_INICIALIZAR) {
+            // Solo interesa lo publicado desde que arrancó este nodo
+            ultimoId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM eventos_cluster", Long.class);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${websocket.bus.intervalo-ms:250}")
+    public synchronized void sincronizar() {
+        guardarPendientes();
+        recibir();
+    }
+
+    private void guardarPendientes() {
+        List<Object[]> filas = new ArrayList<>();
+        EventoPendiente evento;
+        while ((evento = pendientesDeGuardar.poll()) != null) {
+            filas.add(new Object[]{nodo, evento.destino(), evento.contenido(), Timestamp.valueOf(evento.fecha())});
+        }
+        if (!filas.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO eventos_cluster (nodo, destino, contenido, fecha) VALUES (?, ?, ?, ?)", filas);
+        }
+    }
+
+    private void recibir() {
+        if (ultimoId == SIN_INICIALIZAR) {
+            inicializarLectura();
+            return;
+        }
+
+        List<Object[]> eventos = new ArrayList<>();
+        if (!faltantes.isEmpty()) {
+            String marcadores = String.join(", ", Collections.nCopies(faltantes.size(), "?"));
+            eventos.addAll(jdbcTemplate.query(
+                    "SELECT id, nodo, destino, contenido FROM eventos_cluster WHERE id IN (" + marcadores + ")",
+                    (rs, fila) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4)},
+                    faltantes.keySet().toArray()));
+        }
+        eventos.addAll(jdbcTemplate.query(
+                "SELECT id, nodo, destino, contenido FROM eventos_cluster WHERE id > ? ORDER BY id LIMIT " + TAMANIO_LECTURA,
+                (rs, fila) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4)},
+                ultimoId));
+
+        long ahora = System.currentTimeMillis();
+        Set<AreaCluster> areas = EnumSet.noneOf(AreaCluster.class);
+        List<Object[]> relevados = new ArrayList<>();
+        List<Object[]> entregas = new ArrayList<>();
+        for (Object[] evento : eventos) {
+            long id = (Long) evento[0];
+            if (faltantes.remove(id) == null) {
+                if (id <= ultimoId) {
+                    continue;
+                }
+                if (id - ultimoId - 1 <= MAXIMO_FALTANTES) {
+                    for (long faltante = ultimoId + 1; faltante < id; faltante++) {
+                        faltantes.put(faltante, ahora);
+                    }
+                }
+                ultimoId = id;
+            }
+            if (nodo.equals(evento[1])) {
+                continue;
+            }
+            String destino = (String) evento[2];
+            if (destino.startsWith(PREFIJO_AVISO)) {
+                areas.add(AreaCluster.valueOf(destino.substring(PREFIJO_AVISO.length())));
+            } else if (destino.startsWith(PREFIJO_EVENTO)) {
+                relevados.add(evento);
+            } else {
+                entregas.add(evento);
+            }
+        }
+        faltantes.values().removeIf(detectado -> ahora - detectado > ESPERA_FALTANTES_MS);
+
+        try {
+            if (!areas.isEmpty()) {
+                eventPublisher.publishEvent(new CambiosDeOtroNodo(areas));
+            }
+            for (Object[] evento : relevados) {
+                Object relevado = reconstruirEvento(((String) evento[2]).substring(PREFIJO_EVENTO.length()), (String) evento[3]);
+                if (relevado != null) {
+                    eventPublisher.publishEvent(relevado);
+                }
+            }
+        } finally {
+            for (Object[] evento : entregas) {
+                entregar((String) evento[2], ((String) evento[3]).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    // null si la clase no es de la aplicación o ya no existe (otro nodo con una versión distinta del backend)
+    private Object reconstruirEvento(String clase, String json) {
+        if (!clase.startsWith(PAQUETE_EVENTOS)) {
+            return null;
+        }
+        try {
+            return jsonMapper.readValue(json, Class.forName(clase));
+        } catch (ClassNotFoundException | JacksonException e) {
+            return null;
+        }
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void purgar() {
+        jdbcTemplate.update("DELETE FROM eventos_cluster WHERE fecha < ?",
+                Timestamp.valueOf(LocalDateTime.now().minusMinutes(retencionMinutos)));
+    }
+
+    private void entregar(String destino, byte[] json) {
+        SimpMessageHeaderAccessor encabezados = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        encabezados.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        encabezados.setLeaveMutable(true);
+        messagingTemplate.send(destino, MessageBuilder.createMessage(json, encabezados.getMessageHeaders()));
+    }
+}
@@ -0,0 +1,29 @@
+package com.Panelinformativo.common.websocket;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+// Bus de un solo nodo: entrega directamente al broker en memoria
+@Component
+@ConditionalOnProperty(name = "websocket.bus", havingValue = "local", matchIfMissing = true)
+@RequiredArgsConstructor
+public class BusEventosLocal implements BusEventos {
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Override
+    public void publicar(String destino, Object contenido) {
+        messagingTemplate.convertAndSend(destino, contenido);
+    }
+
+    @Override
+    public void avisarCambio(AreaCluster area) {
+        // No hay otros nodos
+    }
+
+    @Override
+    public void relevar(Object evento) {
+        // No hay otros nodos
+    }
+}
@@ -0,0 +1,13 @@
+package com.Panelinformativo.common.websocket;
+
+import java.util.Set;
+
+// Evento de Spring que publica BusEventosBaseDatos cuando otros nodos avisaron cambios (BusEventos.avisarCambio).
+// Se publica antes de entregar a los clientes los eventos leídos en la misma pasada: un cliente que reacciona
+// a un evento ya encuentra al día lo que este nodo guarda en memoria.
+public record CambiosDeOtroNodo(Set<AreaCluster> areas) {
+
+    public boolean incluye(AreaCluster area) {
+        return areas.contains(area);
+    }
+}
@@ -0,0 +1,104 @@
+package com.Panelinformativo.common.websocket;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Mensajes en CBOR para los clientes que lo piden al conectarse (encabezado STOMP "formato: cbor").
+// Todo se publica una sola vez en JSON; al salir hacia esas sesiones se convierte a CBOR, una vez
+// por mensaje aunque tenga muchos suscriptores. Solo sirve por WebSocket directo (/ws/websocket):
+// SockJS transporta texto, así que en sus sesiones se ignora el encabezado y siguen recibiendo JSON.
+@Component
+@RequiredArgsConstructor
+public class CodificacionCbor implements ChannelInterceptor, WebSocketHandlerDecoratorFactory {
+    public static final String ENCABEZADO_FORMATO = "formato";
+    public static final String FORMATO_CBOR = "cbor";
+    // Atributo de sesión que marca las conexiones por WebSocket directo (no SockJS)
+    private static final String ATRIBUTO_WEBSOCKET_DIRECTO = "websocketDirecto";
+
+    private final JsonMapper jsonMapper;
+    private final CBORMapper cborMapper = new CBORMapper();
+
+    private final Set<String> sesionesCbor = ConcurrentHashMap.newKeySet();
+    // El broker entrega el mismo arreglo a todos los suscriptores: se convierte una vez por arreglo
+    private final Map<byte[], byte[]> convertidos = Collections.synchronizedMap(new WeakHashMap<>());
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType tipo = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String sesion = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sesion == null) {
+            return message;
+        }
+        if (tipo == SimpMessageType.CONNECT) {
+            String formato = StompHeaderAccessor.wrap(message).getFirstNativeHeader(ENCABEZADO_FORMATO);
+            if (FORMATO_CBOR.equalsIgnoreCase(formato) && esWebSocketDirecto(message)) {
+                sesionesCbor.add(sesion);
+            }
+            return message;
+        }
+        if (tipo != SimpMessageType.MESSAGE || !sesionesCbor.contains(sesion)
+                || !(message.getPayload() instanceof byte[] json) || !esJson(message)) {
+            return message;
+        }
+        // application/octet-stream hace que el frame STOMP salga como mensaje WebSocket binario
+        SimpMessageHeaderAccessor encabezados = SimpMessageHeaderAccessor.wrap(message);
+        encabezados.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        return MessageBuilder.createMessage(convertidos.computeIfAbsent(json, this::aCbor), encabezados.getMessageHeaders());
+    }
+
+    // Marca el transporte de cada sesión al abrirse; el CONNECT de STOMP recibe los mismos atributos
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                session.getAttributes().put(ATRIBUTO_WEBSOCKET_DIRECTO, !(session instanceof SockJsSession));
+                super.afterConnectionEstablished(session);
+            }
+        };
+    }
+
+    @EventListener
+    public void sesionCerrada(SessionDisconnectEvent evento) {
+        sesionesCbor.remove(evento.getSessionId());
+    }
+
+    private boolean esWebSocketDirecto(Message<?> message) {
+        Map<String, Object> atributos = SimpMessageHeaderAccessor.getSessionAttributes(message.getHeaders());
+        return atributos != null && Boolean.TRUE.equals(atributos.get(ATRIBUTO_WEBSOCKET_DIRECTO));
+    }
+
+    private boolean esJson(Message<?> message) {
+        Object tipoContenido = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        return tipoContenido != null && MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(MimeType.valueOf(tipoContenido.toString()));
+    }
+
+    private byte[] aCbor(byte[] json) {
+        return cborMapper.writeValueAsBytes(jsonMapper.readTree(json));
+    }
+}
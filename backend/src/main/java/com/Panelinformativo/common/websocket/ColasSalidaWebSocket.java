@@ -0,0 +1,244 @@
+package com.Panelinformativo.common.websocket;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cola de salida por sesión WebSocket con conflación. Cada sesión tiene a lo sumo un mensaje en camino
+// (en el executor del canal de salida o escribiéndose en el socket); lo que llega mientras tanto espera
+// en su cola, donde un mensaje nuevo del mismo pedido (o del mismo contador) reemplaza al pendiente:
+// un cliente lento recibe solo el último estado y no retiene hilos ni memoria de los clientes rápidos.
+// Si la cola supera el límite de bytes o su mensaje más viejo el límite de tiempo, se descarta y se
+// cierra la sesión: el cliente se reconecta y recarga todo (resincronización).
+@Component
+public class ColasSalidaWebSocket implements ExecutorChannelInterceptor, WebSocketHandlerDecoratorFactory {
+    // Marca de los mensajes que salen de la cola (ya tienen su turno de envío)
+    private static final String ENCABEZADO_LIBERADO = "colaSalidaLiberado";
+    // Destinos donde cada mensaje trae el estado completo: basta con el último
+    private static final List<String> DESTINOS_ULTIMO_VALOR = List.of("/topic/pedidos/cola", "/topic/mensajes/no-leidos/");
+
+    private final JsonMapper jsonMapper;
+    private final DeltasPedidos deltasPedidos;
+    private final long limiteBytes;
+    private final long limiteTiempoNanos;
+
+    private final Map<String, ColaSesion> colas = new ConcurrentHashMap<>();
+    private final Map<String, WebSocketSession> sesiones = new ConcurrentHashMap<>();
+    // El broker entrega el mismo arreglo a todas las sesiones: la clave se calcula una vez por arreglo
+    private final Map<byte[], String> clavesPorPayload = Collections.synchronizedMap(new WeakHashMap<>());
+    private final AtomicLong secuenciaSinConflacion = new AtomicLong();
+
+    private final AtomicLong enviadosDirecto = new AtomicLong();
+    private final AtomicLong encolados = new AtomicLong();
+    private final AtomicLong conflados = new AtomicLong();
+    private final AtomicLong bytesAhorrados = new AtomicLong();
+    private final AtomicLong resincronizaciones = new AtomicLong();
+
+    public ColasSalidaWebSocket(JsonMapper jsonMapper, DeltasPedidos deltasPedidos,
+                                @Value("${websocket.salida.limite-bytes:524288}") long limiteBytes,
+                                @Value("${websocket.salida.limite-tiempo-ms:15000}") long limiteTiempoMs) {
+        this.jsonMapper = jsonMapper;
+        this.deltasPedidos = deltasPedidos;
+        this.limiteBytes = limiteBytes;
+        this.limiteTiempoNanos = limiteTiempoMs * 1_000_000;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sesion = sesionDeMensaje(message);
+        if (sesion == null || !(message.getPayload() instanceof byte[] payload)
+                || message.getHeaders().containsKey(ENCABEZADO_LIBERADO)) {
+            return message;
+        }
+        ColaSesion cola = colas.computeIfAbsent(sesion, id -> new ColaSesion());
+        boolean resincronizar;
+        synchronized (cola) {
+            if (!cola.enCamino) {
+                cola.enCamino = true;
+                enviadosDirecto.incrementAndGet();
+                return message;
+            }
+            resincronizar = !cola.pendientes.isEmpty()
+                    && (cola.bytes + payload.length > limiteBytes
+                    || System.nanoTime() - cola.pendientes.values().iterator().next().encolado() > limiteTiempoNanos);
+            if (resincronizar) {
+                cola.pendientes.clear();
+                cola.bytes = 0;
+            } else {
+                encolar(cola, MessageBuilder.createMessage(payload, message.getHeaders()));
+            }
+        }
+        if (resincronizar) {
+            resincronizar(sesion);
+        }
+        return null;
+    }
+
+    // Terminó el envío del mensaje en camino (bien o mal): sale el siguiente de la cola, si hay
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        String sesion = sesionDeMensaje(message);
+        ColaSesion cola = sesion != null ? colas.get(sesion) : null;
+        if (cola == null) {
+            return;
+        }
+        Message<byte[]> siguiente;
+        synchronized (cola) {
+            Iterator<Pendiente> primero = cola.pendientes.values().iterator();
+            if (!primero.hasNext()) {
+                cola.enCamino = false;
+                return;
+            }
+            siguiente = primero.next().mensaje();
+            primero.remove();
+            cola.bytes -= siguiente.getPayload().length;
+        }
+        channel.send(MessageBuilder.fromMessage(siguiente).setHeader(ENCABEZADO_LIBERADO, true).build());
+    }
+
+    // Registra las sesiones abiertas para poder cerrar las que quedaron muy atrasadas
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                sesiones.put(session.getId(), session);
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sesiones.remove(session.getId());
+                colas.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    public MetricasSalidaWebSocketDTO obtenerMetricas() {
+        long pendientes = 0;
+        long sesionesConCola = 0;
+        for (ColaSesion cola : colas.values()) {
+            synchronized (cola) {
+                pendientes += cola.pendientes.size();
+                sesionesConCola += cola.pendientes.isEmpty() ? 0 : 1;
+            }
+        }
+        return new MetricasSalidaWebSocketDTO(sesiones.size(), sesionesConCola, pendientes, enviadosDirecto.get(),
+                encolados.get(), conflados.get(), bytesAhorrados.get(), resincronizaciones.get());
+    }
+
+    private void encolar(ColaSesion cola, Message<byte[]> mensaje) {
+        encolados.incrementAndGet();
+        String destino = SimpMessageHeaderAccessor.getDestination(mensaje.getHeaders());
+        String clave = clavesPorPayload.computeIfAbsent(mensaje.getPayload(), payload -> claveConflacion(destino, payload));
+        Pendiente anterior = cola.pendientes.get(clave);
+        if (anterior == null) {
+            cola.pendientes.put(clave, new Pendiente(mensaje, System.nanoTime()));
+            cola.bytes += mensaje.getPayload().length;
+            return;
+        }
+        // Conserva el lugar (y la antigüedad) del pendiente: el cliente recibe el estado más nuevo en ese turno
+        Message<byte[]> combinado = esCanalDeltas(destino) ? combinarDeltas(anterior.mensaje(), mensaje) : mensaje;
+        cola.pendientes.put(clave, new Pendiente(combinado, anterior.encolado()));
+        long diferencia = combinado.getPayload().length - anterior.mensaje().getPayload().length;
+        cola.bytes += diferencia;
+        conflados.incrementAndGet();
+        bytesAhorrados.addAndGet(mensaje.getPayload().length - diferencia);
+    }
+
+    // Mensajes del mismo pedido (o del mismo contador) en el mismo destino comparten clave; el resto, no
+    private String claveConflacion(String destino, byte[] payload) {
+        if (destino != null) {
+            if (DESTINOS_ULTIMO_VALOR.stream().anyMatch(destino::startsWith)) {
+                return destino;
+            }
+            if (esCanalDeltas(destino) || destino.equals(WebSocketService.DESTINO_PANTALLA)) {
+                JsonNode id = jsonMapper.readTree(payload).get("id");
+                if (id != null && id.isNumber()) {
+                    return destino + "#" + id.asLong();
+                }
+            }
+        }
+        return "#" + secuenciaSinConflacion.incrementAndGet();
+    }
+
+    private boolean esCanalDeltas(String destino) {
+        return destino.equals(WebSocketService.DESTINO_TODOS)
+                || destino.startsWith(WebSocketService.DESTINO_ESTADO)
+                || destino.startsWith(WebSocketService.DESTINO_GRUPO);
+    }
+
+    // Dos deltas contiguos del mismo pedido (la base del nuevo es la versión del pendiente) equivalen a uno
+    // desde la base del primero con los campos de ambos. Si no son contiguos, el cliente no podría aplicar
+    // el resultado: se reemplaza por el último estado publicado completo (o, si ya no se recuerda, por el
+    // delta nuevo, y el cliente sin esa base pide el pedido de nuevo).
+    private Message<byte[]> combinarDeltas(Message<byte[]> anterior, Message<byte[]> nuevo) {
+        ObjectNode deltaNuevo = (ObjectNode) jsonMapper.readTree(nuevo.getPayload());
+        if (deltaNuevo.path("versionBase").isNull()) {
+            return nuevo; // Trae el pedido completo
+        }
+        ObjectNode combinado = (ObjectNode) jsonMapper.readTree(anterior.getPayload());
+        if (!deltaNuevo.get("versionBase").equals(combinado.get("version"))) {
+            return deltasPedidos.ultimoPublicado(deltaNuevo.get("id").asLong())
+                    .filter(completo -> completo.getVersion() >= deltaNuevo.get("version").asLong())
+                    .map(completo -> MessageBuilder.createMessage(jsonMapper.writeValueAsBytes(completo), nuevo.getHeaders()))
+                    .orElse(nuevo);
+        }
+        ((ObjectNode) combinado.get("cambios")).setAll((ObjectNode) deltaNuevo.get("cambios"));
+        combinado.set("version", deltaNuevo.get("version"));
+        return MessageBuilder.createMessage(jsonMapper.writeValueAsBytes(combinado), nuevo.getHeaders());
+    }
+
+    private void resincronizar(String sesion) {
+        resincronizaciones.incrementAndGet();
+        WebSocketSession session = sesiones.get(sesion);
+        if (session != null) {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                // La sesión ya estaba cerrándose
+            }
+        }
+    }
+
+    private String sesionDeMensaje(Message<?> message) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return null;
+        }
+        return SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+    }
+
+    private static final class ColaSesion {
+        private final LinkedHashMap<String, Pendiente> pendientes = new LinkedHashMap<>();
+        private boolean enCamino;
+        private long bytes;
+    }
+
+    private record Pendiente(Message<byte[]> mensaje, long encolado) {
+    }
+}
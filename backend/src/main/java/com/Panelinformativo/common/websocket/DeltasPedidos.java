@@ -0,0 +1,92 @@
+package com.Panelinformativo.common.websocket;
+
+import com.Panelinformativo.pedidos.dto.DeltaPedidoDTO;
+import com.Panelinformativo.pedidos.dto.PedidoDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Calcula el delta de cada pedido publicado contra la última versión que se publicó de ese pedido.
+// Guarda solo los pedidos publicados más recientemente: uno que ya no está (o llega con una versión
+// que no es más nueva) se publica completo. En un cluster cada nodo compara contra lo que él publicó:
+// el cliente que no tiene la versión base pide el pedido de nuevo.
+@Component
+public class DeltasPedidos {
+    // Duplicado de transportistaNombre que el DTO mantiene por compatibilidad: el cliente lo reconstruye
+    private static final String CAMPO_REDUNDANTE = "transportista";
+
+    private final JsonMapper jsonMapper;
+    private final Map<Long, Publicado> publicados;
+
+    public DeltasPedidos(JsonMapper jsonMapper, @Value("${websocket.deltas.capacidad:5000}") int capacidad) {
+        this.jsonMapper = jsonMapper;
+        this.publicados = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Publicado> masViejo) {
+                return size() > capacidad;
+            }
+        };
+    }
+
+    public synchronized DeltaPedidoDTO calcular(PedidoDTO pedido) {
+        ObjectNode actual = jsonMapper.valueToTree(pedido);
+        actual.remove(CAMPO_REDUNDANTE);
+        actual.remove("id");
+        actual.remove("versionCambio");
+        Long version = pedido.getVersionCambio();
+        Publicado anterior = publicados.get(pedido.getId());
+
+        if (version == null) {
+            return new DeltaPedidoDTO(pedido.getId(), null, null, sinNulos(actual));
+        }
+        if (anterior == null || anterior.version() >= version) {
+            // Sin base, o llegó después de una versión más nueva (no se pisa lo recordado)
+            if (anterior == null) {
+                publicados.put(pedido.getId(), new Publicado(version, actual));
+            }
+            return new DeltaPedidoDTO(pedido.getId(), version, null, sinNulos(actual));
+        }
+
+        ObjectNode cambios = jsonMapper.createObjectNode();
+        for (Map.Entry<String, JsonNode> campo : actual.properties()) {
+            if (!campo.getValue().equals(anterior.estado().get(campo.getKey()))) {
+                cambios.set(campo.getKey(), campo.getValue());
+            }
+        }
+        publicados.put(pedido.getId(), new Publicado(version, actual));
+        return new DeltaPedidoDTO(pedido.getId(), version, anterior.version(), cambios);
+    }
+
+    // Último estado publicado del pedido como mensaje completo (versionBase null), si todavía se recuerda
+    public synchronized Optional<DeltaPedidoDTO> ultimoPublicado(Long pedidoId) {
+        Publicado publicado = publicados.get(pedidoId);
+        if (publicado == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new DeltaPedidoDTO(pedidoId, publicado.version(), null, sinNulos(publicado.estado())));
+    }
+
+    public synchronized void olvidar(Long pedidoId) {
+        publicados.remove(pedidoId);
+    }
+
+    // El pedido completo no necesita los campos vacíos
+    private ObjectNode sinNulos(ObjectNode estado) {
+        ObjectNode completo = jsonMapper.createObjectNode();
+        estado.properties().forEach(campo -> {
+            if (!campo.getValue().isNull()) {
+                completo.set(campo.getKey(), campo.getValue());
+            }
+        });
+        return completo;
+    }
+
+    private record Publicado(Long version, ObjectNode estado) {
+    }
+}
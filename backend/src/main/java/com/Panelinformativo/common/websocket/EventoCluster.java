@@ -0,0 +1,36 @@
+package com.Panelinformativo.common.websocket;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Notificación (o aviso de cambios) publicada por un nodo para que la reenvíen los demás (ver BusEventosBaseDatos).
+// Los registros se borran a los pocos minutos.
+@Entity
+@Table(name = "eventos_cluster", indexes = {
+        @Index(name = "idx_eventos_cluster_fecha", columnList = "fecha")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventoCluster {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 36)
+    private String nodo; // Nodo que publicó el evento (él mismo ya lo entregó)
+
+    @Column(nullable = false)
+    private String destino;
+
+    @Lob
+    @Column(nullable = false)
+    private String contenido; // JSON tal como se envía a los clientes
+
+    @Column(nullable = false)
+    private LocalDateTime fecha;
+}
@@ -0,0 +1,20 @@
+package com.Panelinformativo.common.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Estado de las colas de salida WebSocket; los contadores son acumulados desde el arranque del nodo
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MetricasSalidaWebSocketDTO {
+    private long sesionesAbiertas;
+    private long sesionesConCola; // Sesiones con mensajes esperando (clientes que no dan abasto)
+    private long mensajesPendientes;
+    private long enviadosDirecto; // Salieron sin esperar
+    private long encolados; // Esperaron a que la sesión terminara el envío anterior
+    private long conflados; // Reemplazados por un mensaje más nuevo del mismo pedido o contador
+    private long bytesAhorrados;
+    private long resincronizaciones; // Sesiones cerradas por quedar muy atrasadas
+}
@@ -1,58 +1,123 @@
 package com.Panelinformativo.common.websocket;
 
 import com.Panelinformativo.mensajes.dto.MensajeDTO;
+import com.Panelinformativo.pedidos.dto.ColaPrioridadCargaDTO;
+import com.Panelinformativo.pedidos.dto.DeltaPedidoDTO;
 import com.Panelinformativo.pedidos.dto.PedidoDTO;
+import com.Panelinformativo.pedidos.dto.PedidoPantallaDTO;
+import com.Panelinformativo.pedidos.model.Pedido;
 import com.Panelinformativo.usuarios.model.Rol;
 import lombok.RequiredArgsConstructor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 public class WebSocketService {
-    private final SimpMessagingTemplate messagingTemplate;
+    // Destinos de pedidos: /topic/pedidos recibe todos los cambios (paneles de administración);
+    // los demás solo los pedidos de su estado o grupo, y la pantalla pública una vista reducida.
+    // Así cada cambio llega solo a los clientes que muestran ese pedido.
+    static final String DESTINO_TODOS = "/topic/pedidos";
+    static final String DESTINO_ESTADO = "/topic/pedidos/estado/";
+    static final String DESTINO_GRUPO = "/topic/pedidos/grupo/";
+    static final String DESTINO_PANTALLA = "/topic/pedidos/pantalla";
+
+    // Las notificaciones pasan por el bus para llegar a los clientes de todos los nodos
+    private final BusEventos busEventos;
+    // Los canales de pedidos reciben solo los campos que cambiaron (la pantalla pública, su vista reducida)
+    private final DeltasPedidos deltasPedidos;
+    private final ColasSalidaWebSocket colasSalida;
 
     public void notificarNuevoPedido(PedidoDTO pedido) {
-        messagingTemplate.convertAndSend("/topic/pedidos", pedido);
-        messagingTemplate.convertAndSend("/topic/pedidos/nuevo", pedido);
+        notificarPedido(pedido, Set.of(), null, true);
     }
 
+    // Cambio que no mueve el pedido de estado ni de grupo
     public void notificarActualizacionPedido(PedidoDTO pedido) {
-        messagingTemplate.convertAndSend("/topic/pedidos", pedido);
-        messagingTemplate.convertAndSend("/topic/pedidos/actualizado", pedido);
+        notificarPedido(pedido, Set.of(), null, true);
+    }
+
+    // Cambio de estado: también avisa a los estados de partida posibles para que lo quiten de su lista
+    public void notificarTransicionPedido(PedidoDTO pedido, Set<Pedido.EstadoPedido> estadosAnteriores) {
+        notificarPedido(pedido, estadosAnteriores, null, true);
+    }
+
+    // Cambio de grupo: avisa al grupo anterior; la pantalla pública no muestra grupos
+    public void notificarCambioGrupoPedido(PedidoDTO pedido, Long grupoAnteriorId) {
+        notificarPedido(pedido, Set.of(), grupoAnteriorId, false);
+    }
+
+    private void notificarPedido(PedidoDTO pedido, Set<Pedido.EstadoPedido> estadosAnteriores,
+                                 Long grupoAnteriorId, boolean afectaPantalla) {
+        DeltaPedidoDTO delta = deltasPedidos.calcular(pedido);
+        busEventos.publicar(DESTINO_TODOS, delta);
+
+        Set<Pedido.EstadoPedido> estados = EnumSet.of(pedido.getEstado());
+        estados.addAll(estadosAnteriores);
+        estados.forEach(estado -> busEventos.publicar(DESTINO_ESTADO + estado.name().toLowerCase(), delta));
+
+        if (pedido.getGrupoId() != null) {
+            busEventos.publicar(DESTINO_GRUPO + pedido.getGrupoId(), delta);
+        }
+        if (grupoAnteriorId != null && !grupoAnteriorId.equals(pedido.getGrupoId())) {
+            busEventos.publicar(DESTINO_GRUPO + grupoAnteriorId, delta);
+        }
+
+        if (afectaPantalla) {
+            busEventos.publicar(DESTINO_PANTALLA, PedidoPantallaDTO.de(pedido));
+        }
+    }
+
+    // Una sola notificación con todos los pedidos creados en una importación masiva
+    public void notificarPedidosImportados(List<PedidoDTO> pedidos) {
+        busEventos.publicar("/topic/pedidos/importados", pedidos);
+    }
+
+    // Un solo mensaje con el nuevo orden de la cola de prioridad de carga
+    public void notificarCambioColaPrioridad(ColaPrioridadCargaDTO cola) {
+        busEventos.publicar("/topic/pedidos/cola", cola);
     }
 
     public void notificarEliminacionPedido(Long pedidoId) {
-        messagingTemplate.convertAndSend("/topic/pedidos/eliminado", pedidoId);
+        deltasPedidos.olvidar(pedidoId);
+        busEventos.publicar("/topic/pedidos/eliminado", pedidoId);
     }
 
     public void notificarNuevoMensaje(MensajeDTO mensaje) {
         // Enviar al destinatario específico según su rol
         String destino = "/topic/mensajes/" + mensaje.getRolDestinatario().name().toLowerCase();
-        messagingTemplate.convertAndSend(destino, mensaje);
-        messagingTemplate.convertAndSend("/topic/mensajes/nuevo", mensaje);
+        busEventos.publicar(destino, mensaje);
+        busEventos.publicar("/topic/mensajes/nuevo", mensaje);
+    }
+
+    // Cantidad de mensajes no leídos del día para un rol destinatario (reemplaza la consulta periódica del contador)
+    public void notificarCantidadNoLeidos(Rol.TipoRol rolDestinatario, long cantidad) {
+        busEventos.publicar("/topic/mensajes/no-leidos/" + rolDestinatario.name().toLowerCase(), cantidad);
     }
 
     public void notificarMensajeLeido(Long mensajeId, Rol.TipoRol rolDestinatario, MensajeDTO mensaje) {
         // Notificar al destinatario que su mensaje fue leído (para actualizar su UI)
-        messagingTemplate.convertAndSend("/topic/mensajes/leido/" + rolDestinatario.name().toLowerCase(), mensajeId);
+        busEventos.publicar("/topic/mensajes/leido/" + rolDestinatario.name().toLowerCase(), mensajeId);
         
         // Notificar al remitente que su mensaje fue leído (para mostrar indicador de leído)
         Rol.TipoRol rolRemitente = mensaje.getRolRemitente();
-        messagingTemplate.convertAndSend("/topic/mensajes/leido-remitente/" + rolRemitente.name().toLowerCase(), mensaje);
+        busEventos.publicar("/topic/mensajes/leido-remitente/" + rolRemitente.name().toLowerCase(), mensaje);
     }
 
-    public void notificarMensajesLeidos(Rol.TipoRol rolDestinatario, List<MensajeDTO> mensajes) {
+    public void notificarMensajesLeidos(Rol.TipoRol rolDestinatario, Map<Rol.TipoRol, List<Long>> idsPorRolRemitente) {
         // Notificar al destinatario
-        messagingTemplate.convertAndSend("/topic/mensajes/todos-leidos/" + rolDestinatario.name().toLowerCase(), true);
+        busEventos.publicar("/topic/mensajes/todos-leidos/" + rolDestinatario.name().toLowerCase(), true);
         
-        // Notificar a cada remitente que sus mensajes fueron leídos
-        mensajes.forEach(mensaje -> {
-            Rol.TipoRol rolRemitente = mensaje.getRolRemitente();
-            messagingTemplate.convertAndSend("/topic/mensajes/leido-remitente/" + rolRemitente.name().toLowerCase(), mensaje);
-        });
+        // Un solo aviso por rol remitente con los ids de todos sus mensajes leídos
+        idsPorRolRemitente.forEach((rolRemitente, ids) ->
+            busEventos.publicar("/topic/mensajes/leidos-remitente/" + rolRemitente.name().toLowerCase(), ids));
     }
-}
 
+    public MetricasSalidaWebSocketDTO obtenerMetricasSalida() {
+        return colasSalida.obtenerMetricas();
+    }
+}
@@ -1,8 +1,11 @@
 package com.Panelinformativo.grupos.service;
 
+import com.Panelinformativo.common.websocket.AreaCluster;
+import com.Panelinformativo.common.websocket.BusEventos;
 import com.Panelinformativo.grupos.dto.GrupoDTO;
 import com.Panelinformativo.grupos.model.Grupo;
 import com.Panelinformativo.grupos.repository.GrupoRepository;
+import com.Panelinformativo.pedidos.service.SnapshotPantallaService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -14,6 +17,8 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class GrupoService {
     private final GrupoRepository grupoRepository;
+    private final SnapshotPantallaService snapshotPantallaService;
+    private final BusEventos busEventos;
 
     @Transactional
     public GrupoDTO crearGrupo(String nombre) {
@@ -47,6 +52,9 @@ public class GrupoService {
             grupo.setActivo(activo);
         }
         grupo = grupoRepository.save(grupo);
+        // El nombre se muestra en los pedidos de las pantallas (también las de los demás nodos)
+        snapshotPantallaService.invalidar();
+        busEventos.avisarCambio(AreaCluster.CATALOGOS);
         return convertirADTO(grupo);
     }
 
@@ -3,6 +3,7 @@ package com.Panelinformativo.mensajes.controller;
 import com.Panelinformativo.mensajes.dto.MensajeCreateDTO;
 import com.Panelinformativo.mensajes.dto.MensajeDTO;
 import com.Panelinformativo.mensajes.service.MensajeService;
+import com.Panelinformativo.mensajes.service.PurgaDiariaMensajes;
 import com.Panelinformativo.usuarios.model.Rol;
 import com.Panelinformativo.usuarios.model.Usuario;
 import jakarta.validation.Valid;
@@ -20,6 +21,7 @@ import java.util.List;
 @RequiredArgsConstructor
 public class MensajeController {
     private final MensajeService mensajeService;
+    private final PurgaDiariaMensajes purgaDiariaMensajes;
 
     @PostMapping
     @PreAuthorize("hasAnyRole('ADMIN_PRINCIPAL', 'ADMIN_DEPOSITO')")
@@ -44,7 +46,7 @@ public class MensajeController {
         Rol.TipoRol rolParaMensajes = rolUsuario;
         
         // Limpiar mensajes antiguos antes de obtener los del día
-        mensajeService.limpiarMensajesAntiguosSiEsNuevoDia();
+        purgaDiariaMensajes.purgarSiEsNuevoDia();
         
         List<MensajeDTO> mensajes = mensajeService.obtenerMensajesDelDia(rolParaMensajes, rolUsuario);
         return ResponseEntity.ok(mensajes);
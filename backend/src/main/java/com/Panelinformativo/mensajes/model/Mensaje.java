@@ -5,13 +5,18 @@ import com.Panelinformativo.usuarios.model.Rol;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "mensajes")
+@Table(name = "mensajes", indexes = {
+        // Purga por día en lotes ordenados por id
+        @Index(name = "idx_mensajes_fecha_dia", columnList = "fecha_dia, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -23,7 +28,9 @@ public class Mensaje {
     @Column(nullable = false, length = 1000)
     private String contenido;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @JoinColumn(name = "remitente_id", nullable = false)
     private Usuario remitente;
 
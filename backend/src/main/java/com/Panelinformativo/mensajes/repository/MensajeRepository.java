@@ -2,28 +2,79 @@ package com.Panelinformativo.mensajes.repository;
 
 import com.Panelinformativo.mensajes.model.Mensaje;
 import com.Panelinformativo.usuarios.model.Rol;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface MensajeRepository extends JpaRepository<Mensaje, Long> {
+    // Mensaje con su remitente (y el rol del remitente) cargados en la misma consulta
+    @EntityGraph(attributePaths = {"remitente", "remitente.rol"})
+    Optional<Mensaje> findConRemitenteById(Long id);
+
     // Buscar mensajes del día actual
+    @EntityGraph(attributePaths = {"remitente", "remitente.rol"})
     List<Mensaje> findByFechaDiaOrderByFechaCreacionAsc(LocalDate fechaDia);
 
+    // Mensajes del día visibles para un usuario (misma regla que MensajesDelDiaService.esVisible),
+    // filtrados en la base; se usa cuando el buffer en memoria no tiene el día completo
+    @Query("SELECT m FROM Mensaje m JOIN FETCH m.remitente r JOIN FETCH r.rol rr WHERE m.fechaDia = :fechaDia AND (" +
+           "m.rolDestinatario = :rolDestinatario OR rr.nombre = :rolUsuario OR " +
+           "(:destinatarioDeposito = true AND rr.nombre IN ('ADMIN_DEPOSITO', 'PLANILLERO', 'CONTROL') " +
+           "AND m.rolDestinatario = 'ADMIN_DEPOSITO')) " +
+           "ORDER BY m.fechaCreacion ASC, m.id ASC")
+    List<Mensaje> findVisiblesDelDia(@Param("fechaDia") LocalDate fechaDia,
+                                     @Param("rolDestinatario") Rol.TipoRol rolDestinatario,
+                                     @Param("rolUsuario") Rol.TipoRol rolUsuario,
+                                     @Param("destinatarioDeposito") boolean destinatarioDeposito);
+
     // Buscar mensajes no leídos para un rol destinatario específico
     List<Mensaje> findByRolDestinatarioAndLeidoFalseOrderByFechaCreacionAsc(Rol.TipoRol rolDestinatario);
 
-    // Buscar mensajes no leídos del día actual para un rol
-    List<Mensaje> findByRolDestinatarioAndFechaDiaAndLeidoFalseOrderByFechaCreacionAsc(
-            Rol.TipoRol rolDestinatario, LocalDate fechaDia);
+    // Mensajes no leídos del día para un rol, sin los que envió el propio usuario: id, rol del remitente.
+    // Acotado por la página: solo se usa para avisar a los remitentes
+    @Query("SELECT m.id, rr.nombre FROM Mensaje m JOIN m.remitente r JOIN r.rol rr " +
+           "WHERE m.rolDestinatario = :rolDestinatario AND m.fechaDia = :fechaDia AND m.leido = false " +
+           "AND r.id <> :usuarioId ORDER BY m.id")
+    List<Object[]> findNoLeidosRecibidos(@Param("rolDestinatario") Rol.TipoRol rolDestinatario,
+                                         @Param("fechaDia") LocalDate fechaDia,
+                                         @Param("usuarioId") Long usuarioId,
+                                         Pageable pageable);
+
+    // Marcar como leídos en una sola sentencia; devuelve cuántos seguían sin leer
+    @Modifying
+    @Query("UPDATE Mensaje m SET m.leido = true WHERE m.id IN :ids AND m.leido = false")
+    int marcarLeidos(@Param("ids") Collection<Long> ids);
+
+    // Marca como leídos los mensajes del día recibidos por un rol, sin los que envió el propio usuario,
+    // con un solo UPDATE por criterio (sin lista de ids); devuelve cuántos seguían sin leer
+    @Modifying
+    @Query("UPDATE Mensaje m SET m.leido = true WHERE m.rolDestinatario = :rolDestinatario " +
+           "AND m.fechaDia = :fechaDia AND m.leido = false AND m.remitente.id <> :usuarioId")
+    int marcarLeidosRecibidos(@Param("rolDestinatario") Rol.TipoRol rolDestinatario,
+                              @Param("fechaDia") LocalDate fechaDia,
+                              @Param("usuarioId") Long usuarioId);
+
+    // Mensajes no leídos del día agrupados por rol destinatario: rolDestinatario, cantidad
+    @Query("SELECT m.rolDestinatario, COUNT(m) FROM Mensaje m WHERE m.fechaDia = :fechaDia AND m.leido = false " +
+           "GROUP BY m.rolDestinatario")
+    List<Object[]> contarNoLeidosPorRol(@Param("fechaDia") LocalDate fechaDia);
 
-    // Contar mensajes no leídos del día actual para un rol
-    long countByRolDestinatarioAndFechaDiaAndLeidoFalse(Rol.TipoRol rolDestinatario, LocalDate fechaDia);
+    // Ids de mensajes de días anteriores, para borrarlos de a lotes
+    @Query("SELECT m.id FROM Mensaje m WHERE m.fechaDia < :fecha ORDER BY m.id")
+    List<Long> findIdsAnterioresA(@Param("fecha") LocalDate fecha, Pageable pageable);
 
-    // Eliminar mensajes de días anteriores
-    void deleteByFechaDiaBefore(LocalDate fecha);
+    @Modifying
+    @Query("DELETE FROM Mensaje m WHERE m.id IN :ids")
+    int eliminarPorIds(@Param("ids") Collection<Long> ids);
 }
 
@@ -0,0 +1,84 @@
+package com.Panelinformativo.mensajes.service;
+
+import com.Panelinformativo.common.websocket.AreaCluster;
+import com.Panelinformativo.common.websocket.CambiosDeOtroNodo;
+import com.Panelinformativo.common.websocket.WebSocketService;
+import com.Panelinformativo.mensajes.repository.MensajeRepository;
+import com.Panelinformativo.usuarios.model.Rol;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// Cantidad de mensajes no leídos del día por rol destinatario, mantenida en memoria.
+// MensajeService la ajusta después de confirmar cada alta o lectura y cada cambio se envía por WebSocket,
+// así los paneles no necesitan consultar el contador periódicamente.
+// Se reconcilia con la base al iniciar, al cambiar el día y cuando otro nodo avisa cambios en mensajes.
+@Service
+@RequiredArgsConstructor
+public class ContadoresNoLeidosService {
+    private final MensajeRepository mensajeRepository;
+    private final WebSocketService webSocketService;
+
+    private final Map<Rol.TipoRol, Long> contadores = new EnumMap<>(Rol.TipoRol.class);
+    private LocalDate dia;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconciliar() {
+        LocalDate hoy = LocalDate.now();
+        List<Object[]> filas = mensajeRepository.contarNoLeidosPorRol(hoy);
+        synchronized (contadores) {
+            contadores.clear();
+            for (Object[] fila : filas) {
+                contadores.put((Rol.TipoRol) fila[0], (Long) fila[1]);
+            }
+            dia = hoy;
+            for (Rol.TipoRol rol : Rol.TipoRol.values()) {
+                webSocketService.notificarCantidadNoLeidos(rol, contadores.getOrDefault(rol, 0L));
+            }
+        }
+    }
+
+    @EventListener
+    public void cambiosDeOtroNodo(CambiosDeOtroNodo cambios) {
+        if (cambios.incluye(AreaCluster.MENSAJES)) {
+            reconciliar();
+        }
+    }
+
+    public long obtener(Rol.TipoRol rolDestinatario) {
+        if (!LocalDate.now().equals(diaActual())) {
+            reconciliar();
+        }
+        synchronized (contadores) {
+            return contadores.getOrDefault(rolDestinatario, 0L);
+        }
+    }
+
+    // Suma (o resta) mensajes no leídos del día indicado; los cambios de otro día se ignoran
+    public void sumar(Rol.TipoRol rolDestinatario, LocalDate fechaDia, long delta) {
+        if (!LocalDate.now().equals(diaActual())) {
+            reconciliar();
+        }
+        synchronized (contadores) {
+            if (!fechaDia.equals(dia)) {
+                return;
+            }
+            long cantidad = Math.max(0, contadores.getOrDefault(rolDestinatario, 0L) + delta);
+            contadores.put(rolDestinatario, cantidad);
+            // Se envía dentro del bloqueo para que los clientes reciban los valores en orden
+            webSocketService.notificarCantidadNoLeidos(rolDestinatario, cantidad);
+        }
+    }
+
+    private LocalDate diaActual() {
+        synchronized (contadores) {
+            return dia;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.Panelinformativo.mensajes.service;
 
+import com.Panelinformativo.common.util.TransaccionUtil;
+import com.Panelinformativo.common.websocket.AreaCluster;
+import com.Panelinformativo.common.websocket.BusEventos;
+import com.Panelinformativo.common.websocket.CambiosDeOtroNodo;
 import com.Panelinformativo.common.websocket.WebSocketService;
 import com.Panelinformativo.mensajes.dto.MensajeCreateDTO;
 import com.Panelinformativo.mensajes.dto.MensajeDTO;
@@ -8,19 +12,47 @@ import com.Panelinformativo.mensajes.repository.MensajeRepository;
 import com.Panelinformativo.usuarios.model.Rol;
 import com.Panelinformativo.usuarios.model.Usuario;
 import lombok.RequiredArgsConstructor;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class MensajeService {
+    // Máximo de ids que se avisan a los remitentes al marcar todos como leídos
+    private static final int MAXIMO_IDS_AVISO_LEIDOS = 500;
+
     private final MensajeRepository mensajeRepository;
     private final WebSocketService webSocketService;
+    private final MensajesDelDiaService mensajesDelDiaService;
+    private final ContadoresNoLeidosService contadoresNoLeidosService;
+    private final BusEventos busEventos;
+
+    // Carga en memoria los mensajes del día (al iniciar y al cambiar el día)
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarMensajesDelDia() {
+        LocalDate hoy = LocalDate.now();
+        List<MensajeDTO> mensajes = mensajeRepository.findByFechaDiaOrderByFechaCreacionAsc(hoy).stream()
+                .map(this::convertirADTO)
+                .collect(Collectors.toList());
+        mensajesDelDiaService.cargar(hoy, mensajes);
+    }
+
+    @EventListener
+    public void cambiosDeOtroNodo(CambiosDeOtroNodo cambios) {
+        if (cambios.incluye(AreaCluster.MENSAJES)) {
+            mensajesDelDiaService.marcarDesactualizado();
+        }
+    }
 
     @Transactional
     public MensajeDTO crearMensaje(MensajeCreateDTO dto, Usuario remitente) {
@@ -34,6 +66,12 @@ public class MensajeService {
         mensaje = mensajeRepository.save(mensaje);
 
         MensajeDTO mensajeDTO = convertirADTO(mensaje);
+        LocalDate fechaDia = mensaje.getFechaDia();
+        TransaccionUtil.despuesDelCommit(() -> {
+            mensajesDelDiaService.agregar(mensajeDTO);
+            contadoresNoLeidosService.sumar(mensajeDTO.getRolDestinatario(), fechaDia, 1);
+        });
+        busEventos.avisarCambio(AreaCluster.MENSAJES);
         
         // Notificar vía WebSocket al destinatario
         webSocketService.notificarNuevoMensaje(mensajeDTO);
@@ -41,37 +79,27 @@ public class MensajeService {
         return mensajeDTO;
     }
 
+    // Servido desde el buffer en memoria; solo consulta la base si el día superó la capacidad del buffer
     public List<MensajeDTO> obtenerMensajesDelDia(Rol.TipoRol rolDestinatario, Rol.TipoRol rolUsuario) {
-        LocalDate hoy = LocalDate.now();
-        List<Mensaje> mensajes = mensajeRepository.findByFechaDiaOrderByFechaCreacionAsc(hoy);
-        
-        // Filtrar mensajes donde el usuario es destinatario o remitente
-        // Si el usuario es de depósito, también incluir mensajes donde es remitente aunque el destinatario sea otro rol de depósito
-        return mensajes.stream()
-                .filter(m -> {
-                    boolean esDestinatario = m.getRolDestinatario().equals(rolDestinatario);
-                    boolean esRemitente = m.getRemitente().getRol().getNombre().equals(rolUsuario);
-                    // También incluir si el remitente es de depósito y el destinatario es de depósito (para compatibilidad)
-                    boolean esRemitenteDeposito = (m.getRemitente().getRol().getNombre() == Rol.TipoRol.ADMIN_DEPOSITO || 
-                                                   m.getRemitente().getRol().getNombre() == Rol.TipoRol.PLANILLERO || 
-                                                   m.getRemitente().getRol().getNombre() == Rol.TipoRol.CONTROL) &&
-                                                  (rolDestinatario == Rol.TipoRol.ADMIN_DEPOSITO || 
-                                                   rolDestinatario == Rol.TipoRol.PLANILLERO || 
-                                                   rolDestinatario == Rol.TipoRol.CONTROL);
-                    return esDestinatario || esRemitente || (esRemitenteDeposito && m.getRolDestinatario() == Rol.TipoRol.ADMIN_DEPOSITO);
-                })
-                .map(this::convertirADTO)
-                .collect(Collectors.toList());
+        if (mensajesDelDiaService.necesitaCarga()) {
+            cargarMensajesDelDia();
+        }
+        return mensajesDelDiaService.obtenerVisibles(rolDestinatario, rolUsuario)
+                .orElseGet(() -> mensajeRepository.findVisiblesDelDia(
+                                LocalDate.now(), rolDestinatario, rolUsuario, MensajesDelDiaService.esRolDeposito(rolDestinatario))
+                        .stream()
+                        .map(this::convertirADTO)
+                        .collect(Collectors.toList()));
     }
 
+    // Servido desde los contadores en memoria
     public long contarMensajesNoLeidos(Rol.TipoRol rolDestinatario) {
-        LocalDate hoy = LocalDate.now();
-        return mensajeRepository.countByRolDestinatarioAndFechaDiaAndLeidoFalse(rolDestinatario, hoy);
+        return contadoresNoLeidosService.obtener(rolDestinatario);
     }
 
     @Transactional
     public void marcarMensajeComoLeido(Long mensajeId, Rol.TipoRol rolUsuario, Usuario usuarioActual) {
-        Mensaje mensaje = mensajeRepository.findById(mensajeId)
+        Mensaje mensaje = mensajeRepository.findConRemitenteById(mensajeId)
                 .orElseThrow(() -> new IllegalArgumentException("Mensaje no encontrado"));
 
         // Solo el destinatario puede marcar como leído
@@ -86,11 +114,23 @@ public class MensajeService {
         boolean esRemitente = mensaje.getRemitente().getId().equals(usuarioActual.getId());
         
         if (puedeMarcar && !esRemitente && !mensaje.getLeido()) {
-            mensaje.setLeido(true);
-            mensajeRepository.save(mensaje);
+            // Mismo UPDATE condicionado que marcarTodosComoLeidos: si otro usuario (o el marcado masivo)
+            // lo marcó mientras tanto, no se descuenta dos veces
+            int marcados = mensajeRepository.marcarLeidos(List.of(mensajeId));
+            if (marcados == 0) {
+                return;
+            }
+            Rol.TipoRol rolDestinatarioMensaje = mensaje.getRolDestinatario();
+            LocalDate fechaDia = mensaje.getFechaDia();
+            TransaccionUtil.despuesDelCommit(() -> {
+                mensajesDelDiaService.marcarLeidos(List.of(mensajeId));
+                contadoresNoLeidosService.sumar(rolDestinatarioMensaje, fechaDia, -marcados);
+            });
+            busEventos.avisarCambio(AreaCluster.MENSAJES);
             
             // Convertir a DTO para enviar al remitente
             MensajeDTO mensajeDTO = convertirADTO(mensaje);
+            mensajeDTO.setLeido(true);
             
             // Notificar actualización vía WebSocket (tanto al destinatario como al remitente)
             webSocketService.notificarMensajeLeido(mensajeId, rolUsuario, mensajeDTO);
@@ -100,46 +140,43 @@ public class MensajeService {
     @Transactional
     public void marcarTodosComoLeidos(Rol.TipoRol rolDestinatario, Usuario usuarioActual) {
         LocalDate hoy = LocalDate.now();
-        List<Mensaje> mensajesNoLeidos = mensajeRepository
-                .findByRolDestinatarioAndFechaDiaAndLeidoFalseOrderByFechaCreacionAsc(rolDestinatario, hoy);
-        
-        // Filtrar: solo marcar como leídos los mensajes donde el usuario actual NO es el remitente
-        // (es decir, solo los mensajes que el usuario recibió, no los que envió)
-        List<Mensaje> mensajesParaMarcar = mensajesNoLeidos.stream()
-                .filter(m -> !m.getRemitente().getId().equals(usuarioActual.getId()))
-                .collect(Collectors.toList());
-        
-        // Solo procesar si hay mensajes para marcar
-        if (!mensajesParaMarcar.isEmpty()) {
-            mensajesParaMarcar.forEach(m -> m.setLeido(true));
-            mensajeRepository.saveAll(mensajesParaMarcar);
-            
-            // Convertir a DTOs para enviar a los remitentes
-            List<MensajeDTO> mensajesDTO = mensajesParaMarcar.stream()
-                    .map(this::convertirADTO)
-                    .collect(Collectors.toList());
-            
-            // Notificar actualización vía WebSocket (tanto al destinatario como a los remitentes)
-            webSocketService.notificarMensajesLeidos(rolDestinatario, mensajesDTO);
+        // Ids y rol del remitente solo para avisar a los remitentes, acotados: el resto ve sus mensajes
+        // leídos al volver a cargar el chat
+        List<Object[]> noLeidos = mensajeRepository.findNoLeidosRecibidos(rolDestinatario, hoy, usuarioActual.getId(),
+                PageRequest.of(0, MAXIMO_IDS_AVISO_LEIDOS));
+        if (noLeidos.isEmpty()) {
+            return;
         }
-    }
 
-    // Limpiar mensajes de días anteriores (ejecutar al inicio de cada día)
-    @Scheduled(cron = "0 0 0 * * ?") // Todos los días a medianoche
-    @Transactional
-    public void limpiarMensajesAntiguos() {
-        LocalDate hoy = LocalDate.now();
-        mensajeRepository.deleteByFechaDiaBefore(hoy);
+        Map<Rol.TipoRol, List<Long>> idsPorRolRemitente = new EnumMap<>(Rol.TipoRol.class);
+        for (Object[] fila : noLeidos) {
+            idsPorRolRemitente.computeIfAbsent((Rol.TipoRol) fila[1], k -> new ArrayList<>()).add((Long) fila[0]);
+        }
+
+        // Un solo UPDATE por criterio (solo los mensajes que el usuario recibió, no los que envió);
+        // los que otro usuario marcó mientras tanto no se descuentan dos veces
+        int marcados = mensajeRepository.marcarLeidosRecibidos(rolDestinatario, hoy, usuarioActual.getId());
+        Long usuarioId = usuarioActual.getId();
+        TransaccionUtil.despuesDelCommit(() -> {
+            mensajesDelDiaService.marcarLeidosRecibidos(rolDestinatario, hoy, usuarioId);
+            contadoresNoLeidosService.sumar(rolDestinatario, hoy, -marcados);
+        });
+        busEventos.avisarCambio(AreaCluster.MENSAJES);
+
+        // Notificar al destinatario y una vez a cada rol remitente con los ids de sus mensajes leídos
+        webSocketService.notificarMensajesLeidos(rolDestinatario, idsPorRolRemitente);
     }
 
-    // También podemos ejecutar esta limpieza cuando se accede a los mensajes
+    // Borra un lote de mensajes de días anteriores en su propia transacción; devuelve true si el lote
+    // salió completo (puede haber más). Lo usa PurgaDiariaMensajes para que la purga no mantenga la tabla bloqueada.
     @Transactional
-    public void limpiarMensajesAntiguosSiEsNuevoDia() {
-        LocalDate hoy = LocalDate.now();
-        // Verificar si hay mensajes de días anteriores
-        if (mensajeRepository.count() > 0) {
-            mensajeRepository.deleteByFechaDiaBefore(hoy);
+    public boolean eliminarLoteAnteriorA(LocalDate fecha, int tamanioLote) {
+        List<Long> ids = mensajeRepository.findIdsAnterioresA(fecha, PageRequest.of(0, tamanioLote));
+        if (ids.isEmpty()) {
+            return false;
         }
+        mensajeRepository.eliminarPorIds(ids);
+        return ids.size() >= tamanioLote;
     }
 
     private MensajeDTO convertirADTO(Mensaje mensaje) {
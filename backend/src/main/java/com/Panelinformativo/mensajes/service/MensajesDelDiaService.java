@@ -0,0 +1,147 @@
+package com.Panelinformativo.mensajes.service;
+
+import com.Panelinformativo.mensajes.dto.MensajeDTO;
+import com.Panelinformativo.usuarios.model.Rol;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+
+// Mensajes del día en memoria, ordenados por id (orden de creación).
+// Lo llena MensajeService después de confirmar cada alta o lectura y se descarta al cambiar el día,
+// así cargar el historial del chat no consulta la base.
+// Si el día supera la capacidad se descartan los más antiguos y el buffer queda desbordado:
+// hasta el día siguiente MensajeService vuelve a filtrar en la base.
+@Service
+public class MensajesDelDiaService {
+    private static final int CAPACIDAD = 5000;
+
+    private static final EnumSet<Rol.TipoRol> ROLES_DEPOSITO =
+            EnumSet.of(Rol.TipoRol.ADMIN_DEPOSITO, Rol.TipoRol.PLANILLERO, Rol.TipoRol.CONTROL);
+
+    private final NavigableMap<Long, MensajeDTO> mensajes = new TreeMap<>();
+    private LocalDate dia;
+    private boolean cargado; // Se leyó el día completo de la base
+    private boolean desbordado;
+
+    // Incorpora los mensajes del día leídos de la base. Conserva lo que se agregó o marcó como leído
+    // mientras se hacía la consulta, por eso no reemplaza el contenido si el día es el mismo.
+    public void cargar(LocalDate fecha, List<MensajeDTO> mensajesDelDia) {
+        synchronized (mensajes) {
+            cambiarDia(fecha);
+            for (MensajeDTO mensaje : mensajesDelDia) {
+                mensajes.merge(mensaje.getId(), copiar(mensaje),
+                        (actual, leido) -> Boolean.TRUE.equals(actual.getLeido()) ? actual : leido);
+            }
+            descartarExcedente();
+            cargado = true;
+        }
+    }
+
+    public void agregar(MensajeDTO mensaje) {
+        synchronized (mensajes) {
+            cambiarDia(LocalDate.now());
+            mensajes.put(mensaje.getId(), copiar(mensaje));
+            descartarExcedente();
+        }
+    }
+
+    public void marcarLeidos(Collection<Long> ids) {
+        synchronized (mensajes) {
+            for (Long id : ids) {
+                MensajeDTO mensaje = mensajes.get(id);
+                if (mensaje != null) {
+                    MensajeDTO leido = copiar(mensaje);
+                    leido.setLeido(true);
+                    mensajes.put(id, leido);
+                }
+            }
+        }
+    }
+
+    // Mismo criterio que MensajeRepository.marcarLeidosRecibidos
+    public void marcarLeidosRecibidos(Rol.TipoRol rolDestinatario, LocalDate fecha, Long usuarioId) {
+        synchronized (mensajes) {
+            if (!fecha.equals(dia)) {
+                return;
+            }
+            for (Map.Entry<Long, MensajeDTO> entrada : mensajes.entrySet()) {
+                MensajeDTO mensaje = entrada.getValue();
+                if (mensaje.getRolDestinatario() == rolDestinatario && !Boolean.TRUE.equals(mensaje.getLeido())
+                        && !usuarioId.equals(mensaje.getRemitenteId())) {
+                    MensajeDTO leido = copiar(mensaje);
+                    leido.setLeido(true);
+                    entrada.setValue(leido);
+                }
+            }
+        }
+    }
+
+    // Otro nodo cambió mensajes: el día se vuelve a leer de la base en la próxima consulta
+    public void marcarDesactualizado() {
+        synchronized (mensajes) {
+            cargado = false;
+        }
+    }
+
+    // true si hay que cargar el día desde la base (al iniciar, después de medianoche o tras cambios en otro nodo)
+    public boolean necesitaCarga() {
+        synchronized (mensajes) {
+            return !LocalDate.now().equals(dia) || (!cargado && !desbordado);
+        }
+    }
+
+    // Mensajes visibles para el usuario, o empty si el buffer no tiene el día completo y hay que ir a la base
+    public Optional<List<MensajeDTO>> obtenerVisibles(Rol.TipoRol rolDestinatario, Rol.TipoRol rolUsuario) {
+        synchronized (mensajes) {
+            if (!LocalDate.now().equals(dia) || !cargado || desbordado) {
+                return Optional.empty();
+            }
+            List<MensajeDTO> resultado = new ArrayList<>();
+            for (MensajeDTO mensaje : mensajes.values()) {
+                if (esVisible(mensaje, rolDestinatario, rolUsuario)) {
+                    resultado.add(copiar(mensaje));
+                }
+            }
+            return Optional.of(resultado);
+        }
+    }
+
+    // Regla de visibilidad del chat: el usuario ve lo que recibe su rol y lo que envió su rol; además,
+    // en depósito, los mensajes que cualquier rol de depósito le manda a ADMIN_DEPOSITO
+    static boolean esVisible(MensajeDTO mensaje, Rol.TipoRol rolDestinatario, Rol.TipoRol rolUsuario) {
+        boolean esDestinatario = mensaje.getRolDestinatario() == rolDestinatario;
+        boolean esRemitente = mensaje.getRolRemitente() == rolUsuario;
+        boolean esRemitenteDeposito = ROLES_DEPOSITO.contains(mensaje.getRolRemitente())
+                && ROLES_DEPOSITO.contains(rolDestinatario);
+        return esDestinatario || esRemitente
+                || (esRemitenteDeposito && mensaje.getRolDestinatario() == Rol.TipoRol.ADMIN_DEPOSITO);
+    }
+
+    static boolean esRolDeposito(Rol.TipoRol rol) {
+        return ROLES_DEPOSITO.contains(rol);
+    }
+
+    private void cambiarDia(LocalDate fecha) {
+        if (!fecha.equals(dia)) {
+            mensajes.clear();
+            dia = fecha;
+            cargado = false;
+            desbordado = false;
+        }
+    }
+
+    private void descartarExcedente() {
+        while (mensajes.size() > CAPACIDAD) {
+            mensajes.pollFirstEntry();
+            desbordado = true;
+        }
+    }
+
+    // Copias para que nadie modifique el contenido del buffer desde afuera
+    private static MensajeDTO copiar(MensajeDTO mensaje) {
+        return new MensajeDTO(mensaje.getId(), mensaje.getContenido(), mensaje.getRemitenteId(),
+                mensaje.getRemitenteNombre(), mensaje.getRolRemitente(), mensaje.getRolDestinatario(),
+                mensaje.getLeido(), mensaje.getFechaCreacion());
+    }
+}
@@ -0,0 +1,61 @@
+package com.Panelinformativo.mensajes.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Purga de los mensajes de días anteriores al cambiar el día.
+// Recuerda el último día purgado, así las llamadas dentro del mismo día no consultan la base,
+// y borra de a lotes chicos, cada uno en su propia transacción, para no bloquear la tabla
+// mientras se siguen enviando mensajes.
+@Component
+@RequiredArgsConstructor
+public class PurgaDiariaMensajes {
+    private static final int TAMANIO_LOTE = 500;
+
+    private final MensajeService mensajeService;
+    private final ContadoresNoLeidosService contadoresNoLeidosService;
+
+    private final ReentrantLock purgando = new ReentrantLock();
+    private volatile LocalDate ultimaPurga;
+
+    // Todos los días a medianoche: purgar y empezar el día con el buffer y los contadores reconciliados
+    @Scheduled(cron = "0 0 0 * * ?")
+    public void renovarDia() {
+        purgando.lock();
+        try {
+            purgar(LocalDate.now());
+            mensajeService.cargarMensajesDelDia();
+            contadoresNoLeidosService.reconciliar();
+        } finally {
+            purgando.unlock();
+        }
+    }
+
+    // Para llamar al acceder a los mensajes: no hace nada si hoy ya se purgó o si otra purga está en curso
+    public void purgarSiEsNuevoDia() {
+        LocalDate hoy = LocalDate.now();
+        if (hoy.equals(ultimaPurga) || !purgando.tryLock()) {
+            return;
+        }
+        try {
+            if (!hoy.equals(ultimaPurga)) {
+                purgar(hoy);
+            }
+        } finally {
+            purgando.unlock();
+        }
+    }
+
+    private void purgar(LocalDate hoy) {
+        // Un lote incompleto indica que ya no quedan mensajes viejos
+        boolean loteCompleto;
+        do {
+            loteCompleto = mensajeService.eliminarLoteAnteriorA(hoy, TAMANIO_LOTE);
+        } while (loteCompleto);
+        ultimaPurga = hoy;
+    }
+}
@@ -1,20 +1,39 @@
 package com.Panelinformativo.pedidos.controller;
 
+import com.Panelinformativo.common.websocket.MetricasSalidaWebSocketDTO;
 import com.Panelinformativo.common.websocket.WebSocketService;
+import com.Panelinformativo.pedidos.dto.CambiosPedidosDTO;
+import com.Panelinformativo.pedidos.dto.DuracionTramoDTO;
 import com.Panelinformativo.pedidos.dto.PedidoCreateDTO;
 import com.Panelinformativo.pedidos.dto.PedidoDTO;
+import com.Panelinformativo.pedidos.dto.ResultadoImportacionDTO;
 import com.Panelinformativo.pedidos.dto.TransportistaVueltasDTO;
 import com.Panelinformativo.pedidos.model.Pedido;
+import com.Panelinformativo.pedidos.service.AnaliticaTramosService;
+import com.Panelinformativo.pedidos.service.ArchivoPedidosService;
+import com.Panelinformativo.pedidos.service.CambiosPedidosService;
+import com.Panelinformativo.pedidos.service.ImportacionPedidosService;
 import com.Panelinformativo.pedidos.service.PedidoService;
+import com.Panelinformativo.pedidos.service.SnapshotPantallaService;
 import com.Panelinformativo.usuarios.model.Usuario;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/pedidos")
@@ -22,6 +41,11 @@ import java.util.List;
 @CrossOrigin(origins = "*")
 public class PedidoController {
     private final PedidoService pedidoService;
+    private final ImportacionPedidosService importacionPedidosService;
+    private final CambiosPedidosService cambiosPedidosService;
+    private final AnaliticaTramosService analiticaTramosService;
+    private final ArchivoPedidosService archivoPedidosService;
+    private final SnapshotPantallaService snapshotPantallaService;
     private final WebSocketService webSocketService;
 
     @PostMapping
@@ -37,17 +61,115 @@ public class PedidoController {
         }
     }
 
+    // Importación masiva de planillas (JSON): devuelve el resultado de cada fila
+    @PostMapping(value = "/importar", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN_PRINCIPAL')")
+    public ResponseEntity<?> importarPedidos(@RequestBody List<PedidoCreateDTO> pedidos, Authentication authentication) {
+        try {
+            Usuario usuario = (Usuario) authentication.getPrincipal();
+            return ResponseEntity.ok(notificarImportados(importacionPedidosService.importarPedidos(pedidos, usuario)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Importación masiva de planillas (CSV)
+    @PostMapping(value = "/importar", consumes = "text/csv")
+    @PreAuthorize("hasRole('ADMIN_PRINCIPAL')")
+    public ResponseEntity<?> importarPedidosCsv(@RequestBody String csv, Authentication authentication) {
+        try {
+            Usuario usuario = (Usuario) authentication.getPrincipal();
+            return ResponseEntity.ok(notificarImportados(importacionPedidosService.importarPedidosCsv(csv, usuario)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    private List<ResultadoImportacionDTO> notificarImportados(List<ResultadoImportacionDTO> resultados) {
+        List<PedidoDTO> creados = resultados.stream()
+                .filter(ResultadoImportacionDTO::getExito)
+                .map(ResultadoImportacionDTO::getPedido)
+                .collect(Collectors.toList());
+        if (!creados.isEmpty()) {
+            webSocketService.notificarPedidosImportados(creados);
+        }
+        return resultados;
+    }
+
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMIN_PRINCIPAL', 'ADMIN_DEPOSITO', 'PLANILLERO', 'CONTROL')")
     public ResponseEntity<List<PedidoDTO>> obtenerTodosLosPedidos() {
         return ResponseEntity.ok(pedidoService.obtenerTodosLosPedidos());
     }
 
+    // Listado paginado por cursor: reemplaza la descarga completa de pedidos
+    @GetMapping("/pagina")
+    @PreAuthorize("hasAnyRole('ADMIN_PRINCIPAL', 'ADMIN_DEPOSITO', 'PLANILLERO', 'CONTROL')")
+    public ResponseEntity<?> obtenerPaginaPedidos(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer tamanio) {
+        try {
+            return ResponseEntity.ok(pedidoService.obtenerPaginaPedidos(cursor, tamanio));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Histórico de pedidos archivados, paginado por cursor y filtrable por fecha de finalización (hasta exclusivo)
+    @GetMapping("/archivados")
+    @PreAuthorize("hasAnyRole('ADMIN_PRINCIPAL', 'ADMIN_DEPOSITO')")
+    public ResponseEntity<?> obtenerPaginaArchivados(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer tamanio,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        try {
+            return ResponseEntity.ok(archivoPedidosService.obtenerPaginaArchivados(cursor, tamanio, desde, hasta));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Sincronización incremental: pedidos creados/modificados y eliminados desde la versión indicada.
+    // Sin "since" devuelve la lista completa junto con la versión actual.
+    @GetMapping("/changes")
+    @PreAuthorize("hasAnyRole('ADMIN_PRINCIPAL', 'ADMIN_DEPOSITO', 'PLANILLERO', 'CONTROL')")
+    public ResponseEntity<CambiosPedidosDTO> obtenerCambios(@RequestParam(name = "since", required = false) Long desdeVersion) {
+        return ResponseEntity.ok(cambiosPedidosService.obtenerCambiosDesde(desdeVersion));
+    }
+
+    // Solo la versión actual de los cambios, sin pedidos: le alcanza a la pantalla pública (sin sesión)
+    // para saber si tiene que recargar
+    @GetMapping("/changes/version")
+    public ResponseEntity<Map<String, Long>> obtenerVersionCambios() {
+        Map<String, Long> response = new HashMap<>();
+        response.put("version", cambiosPedidosService.versionActual());
+        return ResponseEntity.ok(response);
+    }
+
+    // Percentiles (p50/p90/p99, en segundos) de la duración de cada tramo de la preparación,
+    // agrupados por la dimensión indicada; "valor" filtra un grupo, zona, transporte o día (yyyy-MM-dd)
+    @GetMapping("/analitica/tramos")
+    @PreAuthorize("hasAnyRole('ADMIN_PRINCIPAL', 'ADMIN_DEPOSITO')")
+    public ResponseEntity<List<DuracionTramoDTO>> obtenerDuracionesTramos(
+            @RequestParam(defaultValue = "GENERAL") AnaliticaTramosService.Dimension dimension,
+            @RequestParam(required = false) String valor) {
+        return ResponseEntity.ok(analiticaTramosService.obtenerDuraciones(dimension, valor));
+    }
+
+    // Colas de salida WebSocket de este nodo: cuántas actualizaciones se conflaron y cuántos clientes se resincronizaron
+    @GetMapping("/notificaciones/metricas")
+    @PreAuthorize("hasRole('ADMIN_PRINCIPAL')")
+    public ResponseEntity<MetricasSalidaWebSocketDTO> obtenerMetricasNotificaciones() {
+        return ResponseEntity.ok(webSocketService.obtenerMetricasSalida());
+    }
+
+    // Servido desde el snapshot en memoria; responde 304 si el cliente ya tiene la versión actual
     @GetMapping("/estado/{estado}")
-    public ResponseEntity<List<PedidoDTO>> obtenerPedidosPorEstado(@PathVariable String estado) {
+    public ResponseEntity<byte[]> obtenerPedidosPorEstado(@PathVariable String estado, WebRequest request) {
         try {
             Pedido.EstadoPedido estadoPedido = Pedido.EstadoPedido.valueOf(estado.toUpperCase());
-            return ResponseEntity.ok(pedidoService.obtenerPedidosPorEstado(estadoPedido));
+            return responderSnapshot(snapshotPantallaService.obtenerPorEstado(estadoPedido), request);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
         }
@@ -75,7 +197,7 @@ public class PedidoController {
             Pedido.EstadoPedido estado = Pedido.EstadoPedido.valueOf(estadoLimpio.toUpperCase());
             Usuario usuario = (Usuario) authentication.getPrincipal();
             PedidoDTO pedido = pedidoService.actualizarEstadoPedido(id, estado, usuario);
-            webSocketService.notificarActualizacionPedido(pedido);
+            webSocketService.notificarTransicionPedido(pedido, PedidoService.estadosDePartida(estado));
             return ResponseEntity.ok(pedido);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body("Estado inválido: " + nuevoEstado);
@@ -84,11 +206,15 @@ public class PedidoController {
 
     @PutMapping("/{id}/avanzar-etapa")
     @PreAuthorize("hasAnyRole('PLANILLERO', 'CONTROL')")
-    public ResponseEntity<?> avanzarEtapaPreparacion(@PathVariable Long id, Authentication authentication) {
+    public ResponseEntity<?> avanzarEtapaPreparacion(@PathVariable Long id,
+                                                     @RequestParam(required = false) Pedido.EtapaPreparacion etapa,
+                                                     Authentication authentication) {
         try {
+            // "etapa" es la etapa actual que ve el usuario (sin etapa si todavía no pasó a CONTROL)
             Usuario usuario = (Usuario) authentication.getPrincipal();
-            PedidoDTO pedido = pedidoService.avanzarEtapaPreparacion(id, usuario);
-            webSocketService.notificarActualizacionPedido(pedido);
+            PedidoDTO pedido = pedidoService.avanzarEtapaPreparacion(id, etapa, usuario);
+            // Todas las etapas son del estado EN_PREPARACION (la última lo deja REALIZADO)
+            webSocketService.notificarTransicionPedido(pedido, EnumSet.of(Pedido.EstadoPedido.EN_PREPARACION));
             return ResponseEntity.ok(pedido);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -99,8 +225,9 @@ public class PedidoController {
     @PreAuthorize("hasRole('ADMIN_DEPOSITO')")
     public ResponseEntity<?> asignarGrupo(@PathVariable Long id, @RequestBody Long grupoId) {
         try {
+            Long grupoAnteriorId = pedidoService.obtenerGrupoAsignadoId(id);
             PedidoDTO pedido = pedidoService.asignarGrupo(id, grupoId);
-            webSocketService.notificarActualizacionPedido(pedido);
+            webSocketService.notificarCambioGrupoPedido(pedido, grupoAnteriorId);
             return ResponseEntity.ok(pedido);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -111,8 +238,9 @@ public class PedidoController {
     @PreAuthorize("hasRole('ADMIN_DEPOSITO')")
     public ResponseEntity<?> quitarGrupo(@PathVariable Long id) {
         try {
+            Long grupoAnteriorId = pedidoService.obtenerGrupoAsignadoId(id);
             PedidoDTO pedido = pedidoService.quitarGrupo(id);
-            webSocketService.notificarActualizacionPedido(pedido);
+            webSocketService.notificarCambioGrupoPedido(pedido, grupoAnteriorId);
             return ResponseEntity.ok(pedido);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -152,8 +280,8 @@ public class PedidoController {
 
     // Obtener pedidos pendientes con orden de prioridad de carga (para Pantalla Pública)
     @GetMapping("/pendientes/con-orden")
-    public ResponseEntity<List<PedidoDTO>> obtenerPedidosConOrdenPrioridadCarga() {
-        return ResponseEntity.ok(pedidoService.obtenerPedidosConOrdenPrioridadCarga());
+    public ResponseEntity<byte[]> obtenerPedidosConOrdenPrioridadCarga(WebRequest request) {
+        return responderSnapshot(snapshotPantallaService.obtenerColaPrioridadCarga(), request);
     }
 
     // Actualizar el orden de prioridad de carga de múltiples pedidos
@@ -162,8 +290,43 @@ public class PedidoController {
     public ResponseEntity<?> actualizarOrdenPrioridadCarga(@RequestBody List<Long> pedidoIds) {
         try {
             List<PedidoDTO> pedidos = pedidoService.actualizarOrdenPrioridadCarga(pedidoIds);
-            // Notificar a todos los clientes sobre el cambio de orden
-            pedidos.forEach(pedido -> webSocketService.notificarActualizacionPedido(pedido));
+            // El servicio publica un único evento con el nuevo orden de la cola (/topic/pedidos/cola)
+            return ResponseEntity.ok(pedidos);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Mover un pedido antes de otro en la cola de prioridad de carga (solo se actualiza el pedido movido)
+    @PutMapping("/{id}/prioridad-carga/mover-antes/{referenciaId}")
+    @PreAuthorize("hasAnyRole('ADMIN_PRINCIPAL', 'ADMIN_DEPOSITO')")
+    public ResponseEntity<?> moverAntesEnColaPrioridadCarga(@PathVariable Long id, @PathVariable Long referenciaId) {
+        try {
+            List<PedidoDTO> pedidos = pedidoService.moverAntesEnColaPrioridadCarga(id, referenciaId);
+            return ResponseEntity.ok(pedidos);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Mover un pedido después de otro en la cola de prioridad de carga
+    @PutMapping("/{id}/prioridad-carga/mover-despues/{referenciaId}")
+    @PreAuthorize("hasAnyRole('ADMIN_PRINCIPAL', 'ADMIN_DEPOSITO')")
+    public ResponseEntity<?> moverDespuesEnColaPrioridadCarga(@PathVariable Long id, @PathVariable Long referenciaId) {
+        try {
+            List<PedidoDTO> pedidos = pedidoService.moverDespuesEnColaPrioridadCarga(id, referenciaId);
+            return ResponseEntity.ok(pedidos);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Mover un pedido al principio de la cola de prioridad de carga
+    @PutMapping("/{id}/prioridad-carga/mover-al-inicio")
+    @PreAuthorize("hasAnyRole('ADMIN_PRINCIPAL', 'ADMIN_DEPOSITO')")
+    public ResponseEntity<?> moverAlInicioColaPrioridadCarga(@PathVariable Long id) {
+        try {
+            List<PedidoDTO> pedidos = pedidoService.moverAlInicioColaPrioridadCarga(id);
             return ResponseEntity.ok(pedidos);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -204,10 +367,24 @@ public class PedidoController {
     }
 
     // Obtener resumen de transportistas con vueltas asignadas en el día
+    // (opcionalmente limitado a un rango de fechas de entrega)
     @GetMapping("/transportistas-vueltas/del-dia")
     @PreAuthorize("hasAnyRole('ADMIN_PRINCIPAL', 'ADMIN_DEPOSITO')")
-    public ResponseEntity<List<TransportistaVueltasDTO>> obtenerResumenTransportistasVueltasDelDia() {
-        return ResponseEntity.ok(pedidoService.obtenerResumenTransportistasVueltasDelDia());
+    public ResponseEntity<List<TransportistaVueltasDTO>> obtenerResumenTransportistasVueltasDelDia(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        return ResponseEntity.ok(pedidoService.obtenerResumenTransportistasVueltasDelDia(desde, hasta));
     }
-}
 
+    // JSON ya serializado con ETag fuerte: el cliente revalida en cada petición y recibe 304 si no cambió
+    private ResponseEntity<byte[]> responderSnapshot(SnapshotPantallaService.Snapshot snapshot, WebRequest request) {
+        if (request.checkNotModified(snapshot.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.etag()).cacheControl(CacheControl.noCache()).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(snapshot.etag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.json());
+    }
+}
@@ -0,0 +1,17 @@
+package com.Panelinformativo.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CambiosPedidosDTO {
+    private Long version; // Versión a enviar como "since" en la próxima consulta
+    private Boolean completo; // true si "pedidos" es la lista completa (el cliente debe reemplazar la suya)
+    private List<PedidoDTO> pedidos; // Pedidos creados o modificados desde la versión pedida
+    private List<Long> eliminados; // Ids de pedidos eliminados desde la versión pedida
+}
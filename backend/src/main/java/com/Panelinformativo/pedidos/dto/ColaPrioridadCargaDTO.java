@@ -0,0 +1,15 @@
+package com.Panelinformativo.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ColaPrioridadCargaDTO {
+    private Long secuencia; // Creciente: el cliente descarta eventos con secuencia menor a la última recibida
+    private List<Long> pedidoIds; // Ids de la cola en orden de prioridad
+}
@@ -0,0 +1,17 @@
+package com.Panelinformativo.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import tools.jackson.databind.node.ObjectNode;
+
+// Cambio de un pedido para los clientes WebSocket: solo los campos que cambiaron desde la última versión publicada
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeltaPedidoDTO {
+    private Long id;
+    private Long version; // versionCambio del pedido después del cambio
+    private Long versionBase; // Versión sobre la que se aplican los cambios; null si 'cambios' trae el pedido completo
+    private ObjectNode cambios; // Campos modificados (null = el campo quedó vacío)
+}
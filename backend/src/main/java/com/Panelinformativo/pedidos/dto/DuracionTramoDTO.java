@@ -0,0 +1,17 @@
+package com.Panelinformativo.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DuracionTramoDTO {
+    private String tramo; // PREPARACION, CONTROL o CARGA
+    private String valor; // Grupo, zona, transporte o día (vacío para el total general)
+    private Long muestras;
+    private Long p50Segundos;
+    private Long p90Segundos;
+    private Long p99Segundos;
+}
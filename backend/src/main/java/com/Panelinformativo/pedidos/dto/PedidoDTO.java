@@ -39,5 +39,6 @@ public class PedidoDTO {
     private Boolean controlado; // Indica si el pedido ha sido controlado cuando está en etapa CONTROL
     private String controladoPor; // Nombre del usuario que hizo el control
     private String finalizadoPor; // Nombre del usuario que finalizó el pedido
+    private Long versionCambio; // Versión del último cambio: base de los deltas que reciben los clientes WebSocket
 }
 
@@ -0,0 +1,16 @@
+package com.Panelinformativo.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PedidoPaginaDTO {
+    private List<PedidoDTO> pedidos;
+    private String siguienteCursor; // Cursor opaco para pedir la página siguiente (null si no hay más)
+    private Boolean hayMas;
+}
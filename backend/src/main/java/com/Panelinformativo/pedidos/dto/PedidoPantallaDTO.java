@@ -0,0 +1,28 @@
+package com.Panelinformativo.pedidos.dto;
+
+import com.Panelinformativo.pedidos.model.Pedido;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Vista reducida de un pedido para la Pantalla Pública: solo los campos que muestra la cola
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PedidoPantallaDTO {
+    private Long id;
+    private String numeroPlanilla;
+    private Pedido.EstadoPedido estado;
+    private Pedido.EtapaPreparacion etapaPreparacion;
+    private Integer ordenPrioridadCarga;
+    private LocalDateTime fechaCreacion; // Orden de las listas en preparación
+    private LocalDateTime fechaActualizacion; // Para separar los realizados del día
+
+    public static PedidoPantallaDTO de(PedidoDTO pedido) {
+        return new PedidoPantallaDTO(pedido.getId(), pedido.getNumeroPlanilla(), pedido.getEstado(),
+                pedido.getEtapaPreparacion(), pedido.getOrdenPrioridadCarga(), pedido.getFechaCreacion(),
+                pedido.getFechaActualizacion());
+    }
+}
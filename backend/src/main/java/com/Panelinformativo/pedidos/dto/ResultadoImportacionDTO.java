@@ -0,0 +1,16 @@
+package com.Panelinformativo.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoImportacionDTO {
+    private Integer fila; // Número de fila en la importación (empezando en 1)
+    private String numeroPlanilla;
+    private Boolean exito;
+    private String mensaje; // Motivo del rechazo cuando exito es false
+    private PedidoDTO pedido; // Pedido creado cuando exito es true
+}
@@ -0,0 +1,22 @@
+package com.Panelinformativo.pedidos.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Contador compartido en la base (por ejemplo, la secuencia de los eventos de la cola de prioridad).
+// Se incrementa con un UPDATE que bloquea la fila hasta el final de la transacción: ver ContadoresPedidosService
+@Entity
+@Table(name = "contadores_pedidos")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContadorPedidos {
+    @Id
+    @Column(length = 50)
+    private String nombre;
+
+    @Column(nullable = false)
+    private Long valor;
+}
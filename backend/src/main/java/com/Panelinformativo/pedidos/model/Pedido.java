@@ -1,6 +1,7 @@
 package com.Panelinformativo.pedidos.model;
 
 import com.Panelinformativo.grupos.model.Grupo;
+import com.Panelinformativo.pedidos.service.VersionCambiosListener;
 import com.Panelinformativo.transportistas.model.Transportista;
 import com.Panelinformativo.usuarios.model.Usuario;
 import com.Panelinformativo.zonas.model.Zona;
@@ -8,17 +9,46 @@ import com.Panelinformativo.vueltas.model.Vuelta;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "pedidos")
+// Índices según las consultas de PedidoRepository:
+// - cola de prioridad y pendientes sin orden: estado + ordenPrioridadCarga (+ fechaCreacion para el orden)
+// - listados por estado: estado + fechaCreacion / estado + fechaActualizacion
+// - paginación, listado completo y planillas del día: fechaCreacion + id
+// - conflicto de vuelta y resumen de vueltas: la restricción única transporte + vuelta + fecha de entrega
+//   (también sirve a las búsquedas por transporte y a la clave foránea de transportista_id)
+@Table(name = "pedidos", indexes = {
+        @Index(name = "idx_pedidos_estado_orden", columnList = "estado, orden_prioridad_carga, fecha_creacion"),
+        @Index(name = "idx_pedidos_estado_fecha_creacion", columnList = "estado, fecha_creacion"),
+        @Index(name = "idx_pedidos_estado_fecha_actualizacion", columnList = "estado, fecha_actualizacion"),
+        @Index(name = "idx_pedidos_fecha_creacion", columnList = "fecha_creacion, id"),
+        @Index(name = "idx_pedidos_version_cambio", columnList = "version_cambio")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = Pedido.RESTRICCION_VUELTA_POR_FECHA, columnNames = {"transportista_id", "vuelta_id", "fecha_entrega"})
+})
+@EntityListeners(VersionCambiosListener.class)
+// Grafo usado cuando se necesita el pedido completo para convertirlo a DTO (una sola consulta con joins)
+@NamedEntityGraph(name = "Pedido.detalle", attributeNodes = {
+        @NamedAttributeNode("transportista"),
+        @NamedAttributeNode("grupoAsignado"),
+        @NamedAttributeNode("zona"),
+        @NamedAttributeNode("vuelta"),
+        @NamedAttributeNode("usuarioCreador")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Pedido {
+    // Un transporte no puede tener la misma vuelta dos veces en una fecha de entrega
+    public static final String RESTRICCION_VUELTA_POR_FECHA = "uk_pedidos_transportista_vuelta_fecha";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -26,7 +56,9 @@ public class Pedido {
     @Column(nullable = false, unique = true)
     private String numeroPlanilla;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @JoinColumn(name = "transportista_id")
     private Transportista transportista;
 
@@ -38,22 +70,30 @@ public class Pedido {
     @Column(nullable = true)
     private EtapaPreparacion etapaPreparacion;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @JoinColumn(name = "grupo_id")
     private Grupo grupoAsignado;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @JoinColumn(name = "zona_id")
     private Zona zona;
 
     @Column(nullable = true)
     private Integer cantidad; // Cantidad de bultos
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @JoinColumn(name = "vuelta_id")
     private Vuelta vuelta;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @JoinColumn(name = "usuario_creador_id", nullable = false)
     private Usuario usuarioCreador;
 
@@ -92,6 +132,17 @@ public class Pedido {
     @Column(nullable = true)
     private String finalizadoPor; // Nombre del usuario que finalizó el pedido
 
+    @Column(nullable = true)
+    private Long versionCambio; // Versión global del último cambio (la asigna VersionCambiosListener)
+
+    // Control de concurrencia optimista: lo incrementa cada modificación (también los UPDATE condicionados
+    // de PedidoRepository); un guardado sobre una versión vieja falla en lugar de pisar el cambio ajeno.
+    // Sin valor inicial: Spring Data usa version == null para saber que el pedido es nuevo (persist, no merge)
+    @Version
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private Long version;
+
     @PreUpdate
     protected void onUpdate() {
         fechaActualizacion = LocalDateTime.now();
@@ -0,0 +1,67 @@
+package com.Panelinformativo.pedidos.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Pedido REALIZADO movido fuera de la tabla de pedidos por ArchivoPedidosService.
+// Guarda los nombres de transporte, zona, vuelta, grupo y creador tal como estaban al archivar,
+// así el histórico no depende de los catálogos ni necesita joins para consultarse.
+@Entity
+@Table(name = "pedidos_archivados", indexes = {
+        @Index(name = "idx_pedidos_archivados_fecha_finalizado", columnList = "fecha_finalizado, id"),
+        // Los números de planilla siguen siendo únicos con el archivo: las altas también los buscan acá
+        @Index(name = "idx_pedidos_archivados_numero_planilla", columnList = "numero_planilla")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PedidoArchivado {
+    @Id
+    private Long id; // Mismo id que tenía en la tabla de pedidos
+
+    @Column(nullable = false)
+    private String numeroPlanilla;
+
+    private Long transportistaId;
+    private String transportistaNombre;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Pedido.EstadoPedido estado;
+
+    private Long grupoId;
+    private String grupoNombre;
+    private Long zonaId;
+    private String zonaNombre;
+    private Integer cantidad;
+    private Long vueltaId;
+    private String vueltaNombre;
+    private String usuarioCreadorNombre;
+
+    @Column(nullable = false)
+    private LocalDateTime fechaCreacion;
+
+    private LocalDateTime fechaActualizacion;
+    private LocalDateTime fechaPreparacion;
+    private LocalDateTime fechaControl;
+    private LocalDateTime fechaPendienteCarga;
+
+    // Clave de orden del histórico: los pedidos finalizados antes de existir el campo usan la última
+    // actualización (o la creación), igual que el criterio para archivarlos
+    @Column(nullable = false)
+    private LocalDateTime fechaFinalizado;
+
+    private LocalDate fechaEntrega;
+    private LocalDateTime fechaEntradaColaPrioridad;
+    private Boolean controlado;
+    private String controladoPor;
+    private String finalizadoPor;
+
+    @Column(nullable = false)
+    private LocalDateTime fechaArchivado;
+}
@@ -0,0 +1,31 @@
+package com.Panelinformativo.pedidos.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Registro de un pedido eliminado, para que los clientes que sincronizan por versión puedan quitarlo
+@Entity
+@Table(name = "pedidos_eliminados", indexes = {
+        @Index(name = "idx_pedidos_eliminados_version_cambio", columnList = "version_cambio")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PedidoEliminado {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long pedidoId;
+
+    @Column(nullable = false)
+    private Long versionCambio;
+
+    @Column(nullable = false)
+    private LocalDateTime fechaEliminacion = LocalDateTime.now();
+}
@@ -0,0 +1,62 @@
+package com.Panelinformativo.pedidos.repository;
+
+import com.Panelinformativo.pedidos.model.PedidoArchivado;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PedidoArchivadoRepository extends JpaRepository<PedidoArchivado, Long> {
+    // Copia los pedidos indicados al archivo en una sola sentencia, resolviendo los nombres de los catálogos.
+    // La fecha de finalización nunca queda vacía: es la clave del cursor y de los filtros desde/hasta
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO pedidos_archivados (id, numero_planilla, transportista_id, transportista_nombre, estado, " +
+           "grupo_id, grupo_nombre, zona_id, zona_nombre, cantidad, vuelta_id, vuelta_nombre, usuario_creador_nombre, " +
+           "fecha_creacion, fecha_actualizacion, fecha_preparacion, fecha_control, fecha_pendiente_carga, fecha_finalizado, " +
+           "fecha_entrega, fecha_entrada_cola_prioridad, controlado, controlado_por, finalizado_por, fecha_archivado) " +
+           "SELECT p.id, p.numero_planilla, p.transportista_id, t.nombre, p.estado, p.grupo_id, g.nombre, p.zona_id, z.nombre, " +
+           "p.cantidad, p.vuelta_id, v.nombre, u.nombre_completo, p.fecha_creacion, p.fecha_actualizacion, p.fecha_preparacion, " +
+           "p.fecha_control, p.fecha_pendiente_carga, COALESCE(p.fecha_finalizado, p.fecha_actualizacion, p.fecha_creacion), " +
+           "p.fecha_entrega, p.fecha_entrada_cola_prioridad, " +
+           "p.controlado, p.controlado_por, p.finalizado_por, :ahora " +
+           "FROM pedidos p LEFT JOIN transportistas t ON t.id = p.transportista_id LEFT JOIN grupos g ON g.id = p.grupo_id " +
+           "LEFT JOIN zonas z ON z.id = p.zona_id LEFT JOIN vueltas v ON v.id = p.vuelta_id " +
+           "LEFT JOIN usuarios u ON u.id = p.usuario_creador_id " +
+           "WHERE p.id IN (:ids)", nativeQuery = true)
+    int copiarDesdePedidos(@Param("ids") Collection<Long> ids, @Param("ahora") LocalDateTime ahora);
+
+    boolean existsByNumeroPlanilla(String numeroPlanilla);
+
+    // Números de planilla archivados entre los indicados (validación de importaciones masivas)
+    @Query("SELECT a.numeroPlanilla FROM PedidoArchivado a WHERE a.numeroPlanilla IN :numeros")
+    List<String> findNumerosPlanillaExistentes(@Param("numeros") Collection<String> numeros);
+
+    // Paginación por cursor sobre (fechaFinalizado, id), de los más recientes a los más antiguos.
+    // desde/hasta acotan la fecha de finalización y pueden ser null.
+    @Query("SELECT a FROM PedidoArchivado a " +
+           "WHERE (:desde IS NULL OR a.fechaFinalizado >= :desde) AND (:hasta IS NULL OR a.fechaFinalizado < :hasta) " +
+           "ORDER BY a.fechaFinalizado DESC, a.id DESC")
+    List<PedidoArchivado> findPrimeraPagina(@Param("desde") LocalDateTime desde, @Param("hasta") LocalDateTime hasta,
+                                            Pageable pageable);
+
+    @Query("SELECT a FROM PedidoArchivado a " +
+           "WHERE (a.fechaFinalizado < :fecha OR (a.fechaFinalizado = :fecha AND a.id < :id)) " +
+           "AND (:desde IS NULL OR a.fechaFinalizado >= :desde) AND (:hasta IS NULL OR a.fechaFinalizado < :hasta) " +
+           "ORDER BY a.fechaFinalizado DESC, a.id DESC")
+    List<PedidoArchivado> findPaginaDespuesDe(@Param("fecha") LocalDateTime fecha, @Param("id") Long id,
+                                              @Param("desde") LocalDateTime desde, @Param("hasta") LocalDateTime hasta,
+                                              Pageable pageable);
+
+    // Mismas columnas que PedidoRepository.findTiemposTramos (sin la versión), para reconstruir la analítica
+    // de tramos con el histórico
+    @Query("SELECT a.fechaPreparacion, a.fechaControl, a.fechaPendienteCarga, a.fechaFinalizado, " +
+           "a.grupoNombre, a.zonaNombre, a.transportistaNombre, a.id FROM PedidoArchivado a WHERE a.fechaControl IS NOT NULL")
+    List<Object[]> findTiemposTramos();
+}
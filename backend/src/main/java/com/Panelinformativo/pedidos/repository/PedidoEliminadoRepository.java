@@ -0,0 +1,37 @@
+package com.Panelinformativo.pedidos.repository;
+
+import com.Panelinformativo.pedidos.model.PedidoEliminado;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PedidoEliminadoRepository extends JpaRepository<PedidoEliminado, Long> {
+    @Query("SELECT e.pedidoId FROM PedidoEliminado e WHERE e.versionCambio > :version")
+    List<Long> findPedidoIdsEliminadosDespuesDe(@Param("version") Long version);
+
+    // Bajas (pedidoId, versión) posteriores a la versión indicada, para reconstruir los agregados en memoria
+    @Query("SELECT e.pedidoId, e.versionCambio FROM PedidoEliminado e WHERE e.versionCambio > :version")
+    List<Object[]> findBajasDespuesDe(@Param("version") Long version);
+
+    // Registro de baja para varios pedidos en una sola sentencia (los pedidos todavía deben existir)
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO pedidos_eliminados (pedido_id, version_cambio, fecha_eliminacion) " +
+           "SELECT p.id, :version, :ahora FROM pedidos p WHERE p.id IN (:ids)", nativeQuery = true)
+    int registrarEliminaciones(@Param("ids") Collection<Long> ids, @Param("version") Long version,
+                               @Param("ahora") LocalDateTime ahora);
+
+    // Mayor versión entre los registros de baja anteriores a la fecha indicada (null si no hay)
+    @Query("SELECT MAX(e.versionCambio) FROM PedidoEliminado e WHERE e.fechaEliminacion < :limite")
+    Long findMaxVersionEliminadaAntesDe(@Param("limite") LocalDateTime limite);
+
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM PedidoEliminado e WHERE e.versionCambio <= :version")
+    int eliminarHastaVersion(@Param("version") Long version);
+}
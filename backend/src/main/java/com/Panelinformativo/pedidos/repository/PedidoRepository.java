@@ -1,56 +1,210 @@
 package com.Panelinformativo.pedidos.repository;
 
+import com.Panelinformativo.pedidos.dto.PedidoDTO;
 import com.Panelinformativo.pedidos.model.Pedido;
 import com.Panelinformativo.pedidos.model.Pedido.EstadoPedido;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.Panelinformativo.transportistas.model.Transportista;
-import com.Panelinformativo.vueltas.model.Vuelta;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface PedidoRepository extends JpaRepository<Pedido, Long> {
+    // Proyección directa a PedidoDTO con un único SELECT y joins explícitos: evita cargar entidades
+    // (y sus relaciones) en el contexto de persistencia para los listados de solo lectura.
+    // El orden de los argumentos debe coincidir con el constructor de PedidoDTO.
+    String SELECT_PEDIDO_DTO = "SELECT new com.Panelinformativo.pedidos.dto.PedidoDTO(" +
+            "p.id, p.numeroPlanilla, t.id, t.nombre, COALESCE(t.nombre, 'Sin transporte asignado'), " +
+            "p.estado, p.etapaPreparacion, g.id, g.nombre, z.id, z.nombre, p.cantidad, v.id, v.nombre, " +
+            "u.nombreCompleto, p.fechaCreacion, p.fechaActualizacion, p.fechaPreparacion, p.fechaControl, " +
+            "p.fechaPendienteCarga, p.fechaFinalizado, p.fechaEntrega, p.ordenPrioridadCarga, " +
+            "p.fechaEntradaColaPrioridad, p.controlado, p.controladoPor, p.finalizadoPor, p.versionCambio) " +
+            "FROM Pedido p LEFT JOIN p.transportista t LEFT JOIN p.grupoAsignado g LEFT JOIN p.zona z " +
+            "LEFT JOIN p.vuelta v JOIN p.usuarioCreador u ";
+
     Optional<Pedido> findByNumeroPlanilla(String numeroPlanilla);
+    
+    // Pedido con todas sus relaciones cargadas en una sola consulta (para convertir a DTO)
+    @EntityGraph("Pedido.detalle")
+    Optional<Pedido> findDetalleById(Long id);
+    
+    @EntityGraph("Pedido.detalle")
+    List<Pedido> findDetalleByIdIn(Collection<Long> ids);
+    
+    @Query(SELECT_PEDIDO_DTO + "WHERE p.id = :id")
+    Optional<PedidoDTO> findDTOById(@Param("id") Long id);
+    
+    @Query(SELECT_PEDIDO_DTO + "WHERE p.id IN :ids")
+    List<PedidoDTO> findDTOByIdIn(@Param("ids") Collection<Long> ids);
+    
+    // Solo la columna del grupo (para avisar al grupo anterior cuando se reasigna)
+    @Query("SELECT p.grupoAsignado.id FROM Pedido p WHERE p.id = :id")
+    Optional<Long> findGrupoAsignadoIdById(@Param("id") Long id);
+    
+    // Solo el estado (para validar una transición antes del UPDATE condicionado)
+    @Query("SELECT p.estado FROM Pedido p WHERE p.id = :id")
+    Optional<Pedido.EstadoPedido> findEstadoById(@Param("id") Long id);
+    
+    // Números de planilla que ya existen entre los indicados (validación de importaciones masivas)
+    @Query("SELECT p.numeroPlanilla FROM Pedido p WHERE p.numeroPlanilla IN :numeros")
+    List<String> findNumerosPlanillaExistentes(@Param("numeros") Collection<String> numeros);
     List<Pedido> findByEstado(EstadoPedido estado);
     
-    @Query("SELECT p FROM Pedido p WHERE p.estado = :estado ORDER BY p.fechaCreacion ASC")
-    List<Pedido> findByEstadoOrderByFechaCreacionAsc(@Param("estado") EstadoPedido estado);
+    @Query(SELECT_PEDIDO_DTO + "ORDER BY p.fechaCreacion DESC")
+    List<PedidoDTO> findAllDTOOrderByFechaCreacionDesc();
+    
+    @Query(SELECT_PEDIDO_DTO + "WHERE p.estado = :estado ORDER BY p.fechaCreacion ASC")
+    List<PedidoDTO> findDTOByEstadoOrderByFechaCreacionAsc(@Param("estado") EstadoPedido estado);
     
-    @Query("SELECT p FROM Pedido p WHERE p.estado = :estado ORDER BY p.fechaActualizacion DESC, p.fechaCreacion DESC")
-    List<Pedido> findByEstadoOrderByFechaActualizacionDesc(@Param("estado") EstadoPedido estado);
+    @Query(SELECT_PEDIDO_DTO + "WHERE p.estado = :estado ORDER BY p.fechaActualizacion DESC, p.fechaCreacion DESC")
+    List<PedidoDTO> findDTOByEstadoOrderByFechaActualizacionDesc(@Param("estado") EstadoPedido estado);
     
-    List<Pedido> findAllByOrderByFechaCreacionDesc();
+    // Primera página del listado paginado por cursor (más recientes primero)
+    @Query(SELECT_PEDIDO_DTO + "ORDER BY p.fechaCreacion DESC, p.id DESC")
+    List<PedidoDTO> findPrimeraPagina(Pageable pageable);
+    
+    // Página siguiente a partir del cursor (fechaCreacion, id) del último pedido entregado
+    @Query(SELECT_PEDIDO_DTO + "WHERE p.fechaCreacion < :fechaCreacion OR (p.fechaCreacion = :fechaCreacion AND p.id < :id) " +
+           "ORDER BY p.fechaCreacion DESC, p.id DESC")
+    List<PedidoDTO> findPaginaDespuesDe(
+        @Param("fechaCreacion") LocalDateTime fechaCreacion,
+        @Param("id") Long id,
+        Pageable pageable
+    );
+    
+    // Pedidos modificados después de una versión de cambio (sincronización incremental)
+    @Query(SELECT_PEDIDO_DTO + "WHERE p.versionCambio > :version ORDER BY p.versionCambio ASC")
+    List<PedidoDTO> findDTOByVersionCambioGreaterThan(@Param("version") Long version);
     
     // Obtener pedidos pendientes sin orden de prioridad de carga asignado
-    @Query("SELECT p FROM Pedido p WHERE p.estado = 'PENDIENTE' AND p.ordenPrioridadCarga IS NULL ORDER BY p.fechaCreacion ASC")
-    List<Pedido> findPendientesSinOrdenPrioridadCarga();
+    @Query(SELECT_PEDIDO_DTO + "WHERE p.estado = 'PENDIENTE' AND p.ordenPrioridadCarga IS NULL ORDER BY p.fechaCreacion ASC")
+    List<PedidoDTO> findDTOPendientesSinOrdenPrioridadCarga();
     
     // Obtener pedidos pendientes con orden de prioridad de carga asignado, ordenados por ese orden
     @Query("SELECT p FROM Pedido p WHERE p.estado = 'PENDIENTE' AND p.ordenPrioridadCarga IS NOT NULL ORDER BY p.ordenPrioridadCarga ASC")
     List<Pedido> findPendientesConOrdenPrioridadCarga();
     
-    // Obtener el máximo orden de prioridad de carga
-    @Query("SELECT COALESCE(MAX(p.ordenPrioridadCarga), 0) FROM Pedido p WHERE p.ordenPrioridadCarga IS NOT NULL")
-    Integer findMaxOrdenPrioridadCarga();
+    @Query(SELECT_PEDIDO_DTO + "WHERE p.estado = 'PENDIENTE' AND p.ordenPrioridadCarga IS NOT NULL ORDER BY p.ordenPrioridadCarga ASC")
+    List<PedidoDTO> findDTOPendientesConOrdenPrioridadCarga();
     
-    // Validar si un transporte ya tiene una vuelta asignada en la fecha de entrega
-    @Query("SELECT p FROM Pedido p WHERE p.transportista = :transportista AND p.vuelta = :vuelta AND p.fechaEntrega = :fechaEntrega")
-    List<Pedido> findByTransportistaAndVueltaAndFechaEntrega(
-        @Param("transportista") Transportista transportista,
-        @Param("vuelta") Vuelta vuelta,
-        @Param("fechaEntrega") LocalDate fechaEntrega
+    // Transiciones de estado y etapa como UPDATE condicionado, sin leer el pedido antes:
+    // solo se aplican si el pedido sigue en el estado/etapa de partida y devuelven 0 si otro
+    // usuario ya lo cambió. Como no pasan por el ciclo de vida de JPA, asignan a mano la fecha
+    // de actualización, la versión de cambio y la versión optimista.
+    String CAMPOS_COMUNES_TRANSICION = "p.fechaActualizacion = :ahora, p.versionCambio = :versionCambio, p.version = p.version + 1 ";
+    
+    // Etapa null -> CONTROL
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Pedido p SET p.etapaPreparacion = 'CONTROL', p.controlado = false, p.controladoPor = NULL, " +
+           "p.fechaControl = :ahora, " + CAMPOS_COMUNES_TRANSICION +
+           "WHERE p.id = :id AND p.estado = 'EN_PREPARACION' AND p.etapaPreparacion IS NULL")
+    int pasarAControl(@Param("id") Long id, @Param("ahora") LocalDateTime ahora, @Param("versionCambio") Long versionCambio);
+    
+    // CONTROL -> PENDIENTE_CARGA (queda registrado quién controló)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Pedido p SET p.etapaPreparacion = 'PENDIENTE_CARGA', p.controlado = true, p.controladoPor = :usuario, " +
+           "p.fechaPendienteCarga = :ahora, " + CAMPOS_COMUNES_TRANSICION +
+           "WHERE p.id = :id AND p.estado = 'EN_PREPARACION' AND p.etapaPreparacion = 'CONTROL'")
+    int pasarAPendienteCarga(@Param("id") Long id, @Param("usuario") String usuario,
+                             @Param("ahora") LocalDateTime ahora, @Param("versionCambio") Long versionCambio);
+    
+    // PENDIENTE_CARGA -> REALIZADO (controladoPor se mantiene para el historial)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Pedido p SET p.estado = 'REALIZADO', p.etapaPreparacion = NULL, p.controlado = false, " +
+           "p.finalizadoPor = :usuario, p.fechaFinalizado = :ahora, " + CAMPOS_COMUNES_TRANSICION +
+           "WHERE p.id = :id AND p.estado = 'EN_PREPARACION' AND p.etapaPreparacion = 'PENDIENTE_CARGA'")
+    int finalizarDesdePendienteCarga(@Param("id") Long id, @Param("usuario") String usuario,
+                                     @Param("ahora") LocalDateTime ahora, @Param("versionCambio") Long versionCambio);
+    
+    // PENDIENTE -> EN_PREPARACION: sale de la cola; el grupo solo se asigna si no tenía uno.
+    // Es SQL nativo porque JPQL no admite COALESCE sobre una relación en el SET.
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE pedidos SET estado = 'EN_PREPARACION', orden_prioridad_carga = NULL, fecha_preparacion = :ahora, " +
+           "grupo_id = COALESCE(grupo_id, :grupoId), fecha_actualizacion = :ahora, version_cambio = :versionCambio, " +
+           "version = version + 1 WHERE id = :id AND estado = 'PENDIENTE'", nativeQuery = true)
+    int iniciarPreparacion(@Param("id") Long id, @Param("grupoId") Long grupoId,
+                           @Param("ahora") LocalDateTime ahora, @Param("versionCambio") Long versionCambio);
+    
+    // EN_PREPARACION -> PENDIENTE: se limpia la preparación y vuelve al final de la cola de prioridad
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Pedido p SET p.estado = 'PENDIENTE', p.etapaPreparacion = NULL, p.fechaPreparacion = NULL, " +
+           "p.fechaControl = NULL, p.fechaPendienteCarga = NULL, p.controlado = false, " +
+           "p.ordenPrioridadCarga = COALESCE(p.ordenPrioridadCarga, :posicion), " +
+           "p.fechaEntradaColaPrioridad = COALESCE(p.fechaEntradaColaPrioridad, :ahora), " + CAMPOS_COMUNES_TRANSICION +
+           "WHERE p.id = :id AND p.estado = 'EN_PREPARACION'")
+    int volverAPendiente(@Param("id") Long id, @Param("posicion") Integer posicion,
+                         @Param("ahora") LocalDateTime ahora, @Param("versionCambio") Long versionCambio);
+    
+    // Cualquier estado no realizado -> REALIZADO
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Pedido p SET p.estado = 'REALIZADO', p.etapaPreparacion = NULL, p.ordenPrioridadCarga = NULL, " +
+           "p.controlado = false, p.finalizadoPor = :usuario, p.fechaFinalizado = :ahora, " + CAMPOS_COMUNES_TRANSICION +
+           "WHERE p.id = :id AND p.estado <> 'REALIZADO'")
+    int finalizar(@Param("id") Long id, @Param("usuario") String usuario,
+                  @Param("ahora") LocalDateTime ahora, @Param("versionCambio") Long versionCambio);
+    
+    // Solo los ids de la cola de prioridad, en orden (para notificar cambios de la cola)
+    @Query("SELECT p.id FROM Pedido p WHERE p.estado = 'PENDIENTE' AND p.ordenPrioridadCarga IS NOT NULL ORDER BY p.ordenPrioridadCarga ASC")
+    List<Long> findIdsColaPrioridadCarga();
+    
+    // Orden del vecino anterior / siguiente en la cola de prioridad (excluyendo el pedido que se mueve)
+    @Query("SELECT MAX(p.ordenPrioridadCarga) FROM Pedido p WHERE p.estado = 'PENDIENTE' AND p.ordenPrioridadCarga < :orden AND p.id <> :excluirId")
+    Integer findOrdenAnteriorEnCola(@Param("orden") Integer orden, @Param("excluirId") Long excluirId);
+    
+    @Query("SELECT MIN(p.ordenPrioridadCarga) FROM Pedido p WHERE p.estado = 'PENDIENTE' AND p.ordenPrioridadCarga > :orden AND p.id <> :excluirId")
+    Integer findOrdenSiguienteEnCola(@Param("orden") Integer orden, @Param("excluirId") Long excluirId);
+    
+    // Primer orden de la cola de prioridad (excluyendo el pedido que se mueve)
+    @Query("SELECT MIN(p.ordenPrioridadCarga) FROM Pedido p WHERE p.estado = 'PENDIENTE' AND p.ordenPrioridadCarga IS NOT NULL AND p.id <> :excluirId")
+    Integer findMinOrdenEnCola(@Param("excluirId") Long excluirId);
+    
+    // Claves (transportistaId, vueltaId, fechaEntrega) ocupadas para un conjunto de transportes y fechas
+    @Query("SELECT p.transportista.id, p.vuelta.id, p.fechaEntrega FROM Pedido p " +
+           "WHERE p.transportista.id IN :transportistaIds AND p.fechaEntrega IN :fechas AND p.vuelta IS NOT NULL")
+    List<Object[]> findClavesVueltaPorTransportistasYFechas(
+        @Param("transportistaIds") Collection<Long> transportistaIds,
+        @Param("fechas") Collection<LocalDate> fechas
     );
     
+    // Claves (transportistaId, vueltaId, fechaEntrega) de todos los pedidos con su id y versión de cambio,
+    // para reconstruir el resumen de vueltas
+    @Query("SELECT p.transportista.id, p.vuelta.id, p.fechaEntrega, p.id, p.versionCambio FROM Pedido p " +
+           "WHERE p.transportista IS NOT NULL AND p.vuelta IS NOT NULL")
+    List<Object[]> findClavesTransportistaVueltaFecha();
+    
+    // Fechas de cada tramo de la preparación con grupo, zona, transporte, id y versión de cambio,
+    // para reconstruir la analítica de tramos
+    @Query("SELECT p.fechaPreparacion, p.fechaControl, p.fechaPendienteCarga, p.fechaFinalizado, g.nombre, z.nombre, t.nombre, " +
+           "p.id, p.versionCambio " +
+           "FROM Pedido p LEFT JOIN p.grupoAsignado g LEFT JOIN p.zona z LEFT JOIN p.transportista t " +
+           "WHERE p.fechaControl IS NOT NULL")
+    List<Object[]> findTiemposTramos();
+    
+    // Lote de pedidos REALIZADOS antes del límite, para archivar: id, transportistaId, vueltaId, fechaEntrega
+    // (los pedidos sin fecha de finalización, anteriores a ese campo, usan la última actualización)
+    @Query("SELECT p.id, p.transportista.id, p.vuelta.id, p.fechaEntrega FROM Pedido p " +
+           "WHERE p.estado = 'REALIZADO' AND COALESCE(p.fechaFinalizado, p.fechaActualizacion, p.fechaCreacion) < :limite " +
+           "ORDER BY p.id")
+    List<Object[]> findLoteParaArchivar(@Param("limite") LocalDateTime limite, Pageable pageable);
+    
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM Pedido p WHERE p.id IN :ids AND p.estado = 'REALIZADO'")
+    int eliminarArchivados(@Param("ids") Collection<Long> ids);
+    
     // Obtener pedidos creados en el día actual
-    @Query("SELECT p FROM Pedido p WHERE p.fechaCreacion >= :inicioDia AND p.fechaCreacion < :finDia ORDER BY p.fechaCreacion DESC")
-    List<Pedido> findByFechaCreacionBetween(
+    @Query(SELECT_PEDIDO_DTO + "WHERE p.fechaCreacion >= :inicioDia AND p.fechaCreacion < :finDia ORDER BY p.fechaCreacion DESC")
+    List<PedidoDTO> findDTOByFechaCreacionBetween(
         @Param("inicioDia") LocalDateTime inicioDia,
         @Param("finDia") LocalDateTime finDia
     );
@@ -0,0 +1,219 @@
+package com.Panelinformativo.pedidos.service;
+
+import com.Panelinformativo.common.websocket.BusEventos;
+import com.Panelinformativo.pedidos.dto.DuracionTramoDTO;
+import com.Panelinformativo.pedidos.dto.PedidoDTO;
+import com.Panelinformativo.pedidos.repository.PedidoArchivadoRepository;
+import com.Panelinformativo.pedidos.repository.PedidoEliminadoRepository;
+import com.Panelinformativo.pedidos.repository.PedidoRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Duración de cada tramo de la preparación, acumulada en histogramas en memoria por grupo, zona,
+// transporte y día. Se reconstruye al iniciar la aplicación y luego se actualiza con cada transición,
+// de modo que consultar percentiles no requiere recorrer los pedidos realizados. Con varios nodos, cada uno suma
+// también los tramos que relevan los demás. Cada tramo lleva el pedido y la versión que lo terminó, así uno que
+// ya contó la reconstrucción no se suma dos veces.
+@Service
+@RequiredArgsConstructor
+public class AnaliticaTramosService {
+    // Días que se conservan en la dimensión DIA (las demás acumulan todo el historial)
+    private static final int DIAS_CONSERVADOS = 90;
+    private static final String SIN_ASIGNAR = "Sin asignar";
+
+    public enum Tramo {
+        PREPARACION,    // EN_PREPARACION -> CONTROL
+        CONTROL,        // CONTROL -> PENDIENTE_CARGA
+        CARGA           // PENDIENTE_CARGA -> REALIZADO
+    }
+
+    public enum Dimension {
+        GENERAL,
+        GRUPO,
+        ZONA,
+        TRANSPORTISTA,
+        DIA
+    }
+
+    private record Clave(Dimension dimension, String valor, Tramo tramo) {}
+
+    private final PedidoRepository pedidoRepository;
+    private final PedidoArchivadoRepository pedidoArchivadoRepository;
+    private final PedidoEliminadoRepository pedidoEliminadoRepository;
+    private final VersionCambiosService versionCambiosService;
+    private final BusEventos busEventos;
+
+    // Tramo terminado por un pedido, con la versión de la transacción que lo terminó.
+    // Se releva a los demás nodos, que lo suman a sus histogramas
+    public record TramoTerminado(Long pedidoId, long version, Tramo tramo, LocalDateTime inicio, LocalDateTime fin,
+                                 String grupo, String zona, String transportista) {}
+
+    private final Map<Clave, HistogramaDuraciones> histogramas = new HashMap<>();
+    // Días con histogramas, para descartar los que salen de la ventana sin recorrer todas las claves
+    private final NavigableSet<LocalDate> dias = new TreeSet<>();
+    // Qué tramos ya contó la última reconstrucción: los que llegan después y ya estaban en lo leído se descartan
+    private LecturaPedidos ultimaLectura = LecturaPedidos.NINGUNA;
+    // Tramos registrados mientras se lee la base para reconstruir (null fuera de una reconstrucción):
+    // se vuelven a sumar sobre lo leído, salvo los que la lectura ya vio
+    private List<TramoTerminado> registrosDuranteReconstruccion;
+
+    // Se puede llamar con la aplicación atendiendo peticiones; dos reconstrucciones no se solapan
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void reconstruir() {
+        synchronized (histogramas) {
+            registrosDuranteReconstruccion = new ArrayList<>();
+        }
+        LecturaPedidos lectura;
+        List<Object[]> filas;
+        try {
+            // La versión antes de leer: lo confirmado hasta ella ya está en lo que se lee
+            lectura = new LecturaPedidos(versionCambiosService.versionConfirmada());
+            filas = new ArrayList<>(pedidoRepository.findTiemposTramos());
+            Set<Long> leidos = new HashSet<>();
+            for (Object[] fila : filas) {
+                lectura.leido((Long) fila[7], (Long) fila[8]);
+                leidos.add((Long) fila[7]);
+            }
+            // Los pedidos archivados siguen contando para el historial. Uno que se archivó entre las dos
+            // lecturas aparece en ambas: se cuenta el de la tabla de pedidos
+            for (Object[] fila : pedidoArchivadoRepository.findTiemposTramos()) {
+                if (!leidos.contains((Long) fila[7])) {
+                    filas.add(fila);
+                }
+            }
+            lectura.bajas(pedidoEliminadoRepository.findBajasDespuesDe(lectura.versionBase()));
+        } catch (RuntimeException e) {
+            synchronized (histogramas) {
+                registrosDuranteReconstruccion = null;
+            }
+            throw e;
+        }
+        synchronized (histogramas) {
+            histogramas.clear();
+            dias.clear();
+            for (Object[] fila : filas) {
+                LocalDateTime preparacion = (LocalDateTime) fila[0];
+                LocalDateTime control = (LocalDateTime) fila[1];
+                LocalDateTime pendienteCarga = (LocalDateTime) fila[2];
+                LocalDateTime finalizado = (LocalDateTime) fila[3];
+                String grupo = (String) fila[4];
+                String zona = (String) fila[5];
+                String transportista = (String) fila[6];
+                sumar(Tramo.PREPARACION, preparacion, control, grupo, zona, transportista);
+                sumar(Tramo.CONTROL, control, pendienteCarga, grupo, zona, transportista);
+                sumar(Tramo.CARGA, pendienteCarga, finalizado, grupo, zona, transportista);
+            }
+            ultimaLectura = lectura;
+            for (TramoTerminado registro : registrosDuranteReconstruccion) {
+                if (!lectura.incluye(registro.pedidoId(), registro.version())) {
+                    sumar(registro);
+                }
+            }
+            registrosDuranteReconstruccion = null;
+            descartarDiasViejos();
+        }
+    }
+
+    // Registra el tramo que terminó con la transición; el pedido debe reflejar el estado ya actualizado
+    // (y confirmado), con la versión de la transacción que lo cambió
+    public void registrar(Tramo tramo, PedidoDTO pedido) {
+        LocalDateTime inicio = switch (tramo) {
+            case PREPARACION -> pedido.getFechaPreparacion();
+            case CONTROL -> pedido.getFechaControl();
+            case CARGA -> pedido.getFechaPendienteCarga();
+        };
+        LocalDateTime fin = switch (tramo) {
+            case PREPARACION -> pedido.getFechaControl();
+            case CONTROL -> pedido.getFechaPendienteCarga();
+            case CARGA -> pedido.getFechaFinalizado();
+        };
+        TramoTerminado registro = new TramoTerminado(pedido.getId(), pedido.getVersionCambio(), tramo, inicio, fin,
+                pedido.getGrupoNombre(), pedido.getZonaNombre(), pedido.getTransportistaNombre());
+        aplicar(registro);
+        busEventos.relevar(registro);
+    }
+
+    // Tramo terminado en otro nodo: se suma igual que uno propio, sin leer la base
+    @EventListener
+    public void tramoDeOtroNodo(TramoTerminado registro) {
+        aplicar(registro);
+    }
+
+    private void aplicar(TramoTerminado registro) {
+        synchronized (histogramas) {
+            if (ultimaLectura.incluye(registro.pedidoId(), registro.version())) {
+                return;
+            }
+            sumar(registro);
+            if (registrosDuranteReconstruccion != null) {
+                registrosDuranteReconstruccion.add(registro);
+            }
+            descartarDiasViejos();
+        }
+    }
+
+    // Percentiles de cada tramo para todos los valores de una dimensión (o solo para el valor indicado)
+    public List<DuracionTramoDTO> obtenerDuraciones(Dimension dimension, String valor) {
+        List<DuracionTramoDTO> resultado = new ArrayList<>();
+        synchronized (histogramas) {
+            histogramas.forEach((clave, histograma) -> {
+                if (clave.dimension() != dimension || (valor != null && !valor.equals(clave.valor()))) {
+                    return;
+                }
+                resultado.add(new DuracionTramoDTO(clave.tramo().name(), clave.valor(), histograma.getMuestras(),
+                        histograma.percentil(0.50), histograma.percentil(0.90), histograma.percentil(0.99)));
+            });
+        }
+        // Por valor y, dentro de cada valor, en el orden de la preparación
+        resultado.sort(Comparator.comparing(DuracionTramoDTO::getValor)
+                .thenComparing(duracion -> Tramo.valueOf(duracion.getTramo())));
+        return resultado;
+    }
+
+    private void sumar(Tramo tramo, LocalDateTime inicio, LocalDateTime fin,
+                       String grupo, String zona, String transportista) {
+        if (inicio == null || fin == null || fin.isBefore(inicio)) {
+            return;
+        }
+        long segundos = Duration.between(inicio, fin).getSeconds();
+        LocalDate dia = fin.toLocalDate();
+
+        histograma(Dimension.GENERAL, "", tramo).registrar(segundos);
+        histograma(Dimension.GRUPO, valorOSinAsignar(grupo), tramo).registrar(segundos);
+        histograma(Dimension.ZONA, valorOSinAsignar(zona), tramo).registrar(segundos);
+        histograma(Dimension.TRANSPORTISTA, valorOSinAsignar(transportista), tramo).registrar(segundos);
+        if (!dia.isBefore(LocalDate.now().minusDays(DIAS_CONSERVADOS))) {
+            histograma(Dimension.DIA, dia.toString(), tramo).registrar(segundos);
+            dias.add(dia);
+        }
+    }
+
+    private void sumar(TramoTerminado registro) {
+        sumar(registro.tramo(), registro.inicio(), registro.fin(), registro.grupo(), registro.zona(), registro.transportista());
+    }
+
+    private HistogramaDuraciones histograma(Dimension dimension, String valor, Tramo tramo) {
+        return histogramas.computeIfAbsent(new Clave(dimension, valor, tramo), k -> new HistogramaDuraciones());
+    }
+
+    private void descartarDiasViejos() {
+        LocalDate limite = LocalDate.now().minusDays(DIAS_CONSERVADOS);
+        while (!dias.isEmpty() && dias.first().isBefore(limite)) {
+            String dia = dias.pollFirst().toString();
+            for (Tramo tramo : Tramo.values()) {
+                histogramas.remove(new Clave(Dimension.DIA, dia, tramo));
+            }
+        }
+    }
+
+    private static String valorOSinAsignar(String valor) {
+        return valor == null || valor.isBlank() ? SIN_ASIGNAR : valor;
+    }
+}
@@ -0,0 +1,25 @@
+package com.Panelinformativo.pedidos.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Ejecuta el archivo de pedidos periódicamente. Cada lote es una transacción corta,
+// así el archivo nunca bloquea por mucho tiempo a las pantallas que escriben en la tabla de pedidos.
+// También purga los registros de baja vencidos, que en su mayoría genera el propio archivo.
+@Component
+@RequiredArgsConstructor
+public class ArchivadorPedidos {
+    private final ArchivoPedidosService archivoPedidosService;
+    private final CambiosPedidosService cambiosPedidosService;
+
+    @Scheduled(fixedDelayString = "${pedidos.archivo.intervalo-ms:900000}",
+               initialDelayString = "${pedidos.archivo.intervalo-ms:900000}")
+    public void archivarPendientes() {
+        boolean loteCompleto;
+        do {
+            loteCompleto = archivoPedidosService.archivarLote();
+        } while (loteCompleto);
+        cambiosPedidosService.purgarEliminaciones();
+    }
+}
@@ -0,0 +1,137 @@
+package com.Panelinformativo.pedidos.service;
+
+import com.Panelinformativo.common.util.TransaccionUtil;
+import com.Panelinformativo.pedidos.dto.PedidoDTO;
+import com.Panelinformativo.pedidos.dto.PedidoPaginaDTO;
+import com.Panelinformativo.pedidos.model.PedidoArchivado;
+import com.Panelinformativo.pedidos.repository.PedidoArchivadoRepository;
+import com.Panelinformativo.pedidos.repository.PedidoRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Mueve los pedidos REALIZADOS hace más de unos días a la tabla pedidos_archivados, de a lotes chicos,
+// para que la tabla de pedidos conserve solo el trabajo en curso y las consultas de las pantallas no crezcan
+// con el historial. El histórico se consulta aparte, paginado por cursor.
+@Service
+@RequiredArgsConstructor
+public class ArchivoPedidosService {
+    private static final int TAMANIO_PAGINA_POR_DEFECTO = 50;
+    private static final int TAMANIO_PAGINA_MAXIMO = 200;
+
+    private final PedidoRepository pedidoRepository;
+    private final PedidoArchivadoRepository pedidoArchivadoRepository;
+    private final CambiosPedidosService cambiosPedidosService;
+    private final ResumenVueltasService resumenVueltasService;
+    private final VersionCambiosService versionCambiosService;
+
+    // Días que un pedido finalizado permanece en la tabla de pedidos
+    @Value("${pedidos.archivo.dias:1}")
+    private int diasAntesDeArchivar;
+
+    @Value("${pedidos.archivo.tamanio-lote:200}")
+    private int tamanioLote;
+
+    // Archiva un lote en una transacción propia. Devuelve true si el lote salió completo
+    // (puede haber más pendientes); un lote incompleto significa que no quedan.
+    @Transactional
+    public boolean archivarLote() {
+        LocalDateTime limite = LocalDate.now().minusDays(diasAntesDeArchivar).atStartOfDay();
+        List<Object[]> filas = pedidoRepository.findLoteParaArchivar(limite, PageRequest.of(0, tamanioLote));
+        if (filas.isEmpty()) {
+            return false;
+        }
+
+        List<Long> ids = new ArrayList<>(filas.size());
+        for (Object[] fila : filas) {
+            ids.add((Long) fila[0]);
+        }
+
+        // Los clientes con sincronización incremental deben quitarlos de su lista. Va antes de copiar:
+        // la copia lee (y puede bloquear) las filas de pedidos, y la versión se toma antes que esos bloqueos
+        cambiosPedidosService.registrarEliminaciones(ids);
+        pedidoArchivadoRepository.copiarDesdePedidos(ids, LocalDateTime.now());
+        pedidoRepository.eliminarArchivados(ids);
+
+        long versionCambio = versionCambiosService.versionDeLaTransaccion();
+        TransaccionUtil.despuesDelCommit(() -> {
+            for (Object[] fila : filas) {
+                resumenVueltasService.quitar((Long) fila[0], versionCambio, (Long) fila[1], (Long) fila[2], (LocalDate) fila[3]);
+            }
+        });
+        return filas.size() >= tamanioLote;
+    }
+
+    // Histórico paginado por cursor (keyset sobre fechaFinalizado, id), de lo más reciente a lo más antiguo.
+    // desde/hasta filtran por fecha de finalización (hasta es exclusivo).
+    @Transactional(readOnly = true)
+    public PedidoPaginaDTO obtenerPaginaArchivados(String cursor, Integer tamanio, LocalDate desde, LocalDate hasta) {
+        int tamanioPagina = tamanio == null ? TAMANIO_PAGINA_POR_DEFECTO
+                : Math.max(1, Math.min(tamanio, TAMANIO_PAGINA_MAXIMO));
+        // Se pide un elemento extra para saber si existe una página siguiente
+        Pageable limite = PageRequest.of(0, tamanioPagina + 1);
+        LocalDateTime fechaDesde = desde != null ? desde.atStartOfDay() : null;
+        LocalDateTime fechaHasta = hasta != null ? hasta.atStartOfDay() : null;
+
+        List<PedidoArchivado> archivados;
+        if (cursor == null || cursor.isBlank()) {
+            archivados = pedidoArchivadoRepository.findPrimeraPagina(fechaDesde, fechaHasta, limite);
+        } else {
+            CursorPedido posicion = CursorPedido.decodificar(cursor);
+            archivados = pedidoArchivadoRepository.findPaginaDespuesDe(
+                    posicion.fecha(), posicion.id(), fechaDesde, fechaHasta, limite);
+        }
+
+        boolean hayMas = archivados.size() > tamanioPagina;
+        if (hayMas) {
+            archivados = archivados.subList(0, tamanioPagina);
+        }
+
+        String siguienteCursor = null;
+        if (hayMas) {
+            PedidoArchivado ultimo = archivados.get(archivados.size() - 1);
+            siguienteCursor = CursorPedido.codificar(ultimo.getFechaFinalizado(), ultimo.getId());
+        }
+
+        List<PedidoDTO> pedidos = archivados.stream().map(this::convertirADTO).toList();
+        return new PedidoPaginaDTO(pedidos, siguienteCursor, hayMas);
+    }
+
+    private PedidoDTO convertirADTO(PedidoArchivado archivado) {
+        PedidoDTO dto = new PedidoDTO();
+        dto.setId(archivado.getId());
+        dto.setNumeroPlanilla(archivado.getNumeroPlanilla());
+        dto.setTransportistaId(archivado.getTransportistaId());
+        dto.setTransportistaNombre(archivado.getTransportistaNombre());
+        dto.setTransportista(archivado.getTransportistaNombre());
+        dto.setEstado(archivado.getEstado());
+        dto.setGrupoId(archivado.getGrupoId());
+        dto.setGrupoNombre(archivado.getGrupoNombre());
+        dto.setZonaId(archivado.getZonaId());
+        dto.setZonaNombre(archivado.getZonaNombre());
+        dto.setCantidad(archivado.getCantidad());
+        dto.setVueltaId(archivado.getVueltaId());
+        dto.setVueltaNombre(archivado.getVueltaNombre());
+        dto.setUsuarioCreadorNombre(archivado.getUsuarioCreadorNombre());
+        dto.setFechaCreacion(archivado.getFechaCreacion());
+        dto.setFechaActualizacion(archivado.getFechaActualizacion());
+        dto.setFechaPreparacion(archivado.getFechaPreparacion());
+        dto.setFechaControl(archivado.getFechaControl());
+        dto.setFechaPendienteCarga(archivado.getFechaPendienteCarga());
+        dto.setFechaFinalizado(archivado.getFechaFinalizado());
+        dto.setFechaEntrega(archivado.getFechaEntrega());
+        dto.setFechaEntradaColaPrioridad(archivado.getFechaEntradaColaPrioridad());
+        dto.setControlado(archivado.getControlado());
+        dto.setControladoPor(archivado.getControladoPor());
+        dto.setFinalizadoPor(archivado.getFinalizadoPor());
+        return dto;
+    }
+}
@@ -0,0 +1,91 @@
+package com.Panelinformativo.pedidos.service;
+
+import com.Panelinformativo.pedidos.dto.CambiosPedidosDTO;
+import com.Panelinformativo.pedidos.model.PedidoEliminado;
+import com.Panelinformativo.pedidos.repository.PedidoEliminadoRepository;
+import com.Panelinformativo.pedidos.repository.PedidoRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+// Sincronización incremental: devuelve solo lo que cambió desde una versión dada
+@Service
+@RequiredArgsConstructor
+public class CambiosPedidosService {
+    // Versión hasta la cual ya se borraron registros de baja
+    private static final String CONTADOR_ELIMINADOS_PURGADOS = "eliminados_purgados_hasta";
+
+    private final PedidoRepository pedidoRepository;
+    private final PedidoEliminadoRepository pedidoEliminadoRepository;
+    private final VersionCambiosService versionCambiosService;
+    private final ContadoresPedidosService contadoresPedidosService;
+
+    // Días que se conservan los registros de baja: un cliente que no sincroniza hace más tiempo recibe la lista completa
+    @Value("${pedidos.eliminados.retencion-dias:7}")
+    private int diasRetencionEliminados;
+
+    @Transactional(readOnly = true)
+    public CambiosPedidosDTO obtenerCambiosDesde(Long desdeVersion) {
+        // Tomar la versión antes de consultar: lo que se confirme mientras tanto se vuelve a enviar la próxima vez
+        long version = versionCambiosService.versionConfirmada();
+
+        // Sin versión previa, o con una versión que el servidor no conoce (base reiniciada): lista completa
+        if (desdeVersion == null || desdeVersion > version) {
+            return new CambiosPedidosDTO(version, true,
+                    pedidoRepository.findAllDTOOrderByFechaCreacionDesc(), Collections.emptyList());
+        }
+
+        // Las bajas se leen antes que el límite de purga: si una purga confirma entre las dos lecturas,
+        // se responde la lista completa en lugar de omitir bajas
+        List<Long> eliminados = pedidoEliminadoRepository.findPedidoIdsEliminadosDespuesDe(desdeVersion);
+        if (desdeVersion < contadoresPedidosService.obtener(CONTADOR_ELIMINADOS_PURGADOS)) {
+            // Ya se borraron bajas posteriores a la versión del cliente
+            return new CambiosPedidosDTO(version, true,
+                    pedidoRepository.findAllDTOOrderByFechaCreacionDesc(), Collections.emptyList());
+        }
+
+        return new CambiosPedidosDTO(version, false,
+                pedidoRepository.findDTOByVersionCambioGreaterThan(desdeVersion), eliminados);
+    }
+
+    // Versión hasta la cual este nodo sabe que hay cambios confirmados, sin consultar la base
+    public long versionActual() {
+        return versionCambiosService.versionConocida();
+    }
+
+    // Borra los registros de baja con más días que la retención y guarda hasta qué versión borró.
+    // Se borra por versión y no por fecha, así todo lo que queda es posterior al límite guardado.
+    @Transactional
+    public int purgarEliminaciones() {
+        Long hastaVersion = pedidoEliminadoRepository.findMaxVersionEliminadaAntesDe(
+                LocalDateTime.now().minusDays(diasRetencionEliminados));
+        if (hastaVersion == null) {
+            return 0;
+        }
+        contadoresPedidosService.elevar(CONTADOR_ELIMINADOS_PURGADOS, hastaVersion);
+        return pedidoEliminadoRepository.eliminarHastaVersion(hastaVersion);
+    }
+
+    // Dejar constancia de la baja de un pedido con la versión de la transacción actual
+    public void registrarEliminacion(Long pedidoId) {
+        PedidoEliminado eliminado = new PedidoEliminado();
+        eliminado.setPedidoId(pedidoId);
+        eliminado.setVersionCambio(versionCambiosService.versionDeLaTransaccion());
+        pedidoEliminadoRepository.save(eliminado);
+    }
+
+    // Igual que registrarEliminacion, para un lote de pedidos; debe llamarse antes de borrarlos
+    public void registrarEliminaciones(Collection<Long> pedidoIds) {
+        if (pedidoIds.isEmpty()) {
+            return;
+        }
+        pedidoEliminadoRepository.registrarEliminaciones(
+                pedidoIds, versionCambiosService.versionDeLaTransaccion(), LocalDateTime.now());
+    }
+}
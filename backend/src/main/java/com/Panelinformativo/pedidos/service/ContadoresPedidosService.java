@@ -0,0 +1,55 @@
+package com.Panelinformativo.pedidos.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+// Contadores de la tabla contadores_pedidos. Usa JdbcTemplate y no repositorios JPA para poder
+// llamarse desde listeners de entidades y sincronizaciones de transacción.
+@Service
+@RequiredArgsConstructor
+public class ContadoresPedidosService {
+    private final JdbcTemplate jdbcTemplate;
+
+    // Suma 'incremento' al contador y devuelve el nuevo valor. Debe llamarse dentro de una transacción:
+    // la fila queda bloqueada hasta que termina, así que quien incrementa después ve todo lo que
+    // confirmó quien incrementó antes. Si el contador no existe se crea con 'valorInicial'.
+    public long incrementar(String nombre, long incremento, LongSupplier valorInicial) {
+        actualizarOCrear("UPDATE contadores_pedidos SET valor = valor + ? WHERE nombre = ?", incremento, nombre,
+                () -> valorInicial.getAsLong() + incremento);
+        return obtener(nombre);
+    }
+
+    // Lleva el contador a 'valor' si está por debajo (nunca lo baja)
+    public void elevar(String nombre, long valor) {
+        actualizarOCrear("UPDATE contadores_pedidos SET valor = GREATEST(valor, ?) WHERE nombre = ?", valor, nombre,
+                () -> valor);
+    }
+
+    // Deja el contador en 'valor' (puede bajarlo)
+    public void fijar(String nombre, long valor) {
+        actualizarOCrear("UPDATE contadores_pedidos SET valor = ? WHERE nombre = ?", valor, nombre, () -> valor);
+    }
+
+    // Valor actual del contador; 0 si todavía no existe
+    public long obtener(String nombre) {
+        List<Long> valores = jdbcTemplate.queryForList("SELECT valor FROM contadores_pedidos WHERE nombre = ?", Long.class, nombre);
+        return valores.isEmpty() ? 0 : valores.get(0);
+    }
+
+    private void actualizarOCrear(String update, long argumento, String nombre, LongSupplier valorSiNoExiste) {
+        if (jdbcTemplate.update(update, argumento, nombre) == 0) {
+            try {
+                jdbcTemplate.update("INSERT INTO contadores_pedidos (nombre, valor) VALUES (?, ?)",
+                        nombre, valorSiNoExiste.getAsLong());
+            } catch (DuplicateKeyException e) {
+                // Otra transacción lo creó al mismo tiempo
+                jdbcTemplate.update(update, argumento, nombre);
+            }
+        }
+    }
+}
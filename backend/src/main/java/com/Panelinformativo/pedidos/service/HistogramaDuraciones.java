@@ -0,0 +1,65 @@
+package com.Panelinformativo.pedidos.service;
+
+// Histograma de duraciones (en segundos) con buckets log-lineales de tamaño fijo:
+// 16 sub-buckets por cada potencia de 2, lo que da un error relativo menor al 7 %.
+// Registrar y calcular percentiles cuesta lo mismo sin importar cuántas muestras haya.
+// No es thread-safe: lo sincroniza AnaliticaTramosService.
+class HistogramaDuraciones {
+    private static final int BITS_SUB_BUCKET = 4;
+    private static final int SUB_BUCKETS = 1 << BITS_SUB_BUCKET;
+    // Duraciones mayores (unos 8 años) se acumulan en el último bucket
+    private static final int MAXIMO_EXPONENTE = 28;
+    private static final int CANTIDAD_BUCKETS = SUB_BUCKETS + (MAXIMO_EXPONENTE - BITS_SUB_BUCKET + 1) * SUB_BUCKETS;
+
+    private final long[] conteos = new long[CANTIDAD_BUCKETS];
+    private long muestras;
+
+    void registrar(long segundos) {
+        conteos[indice(Math.max(0, segundos))]++;
+        muestras++;
+    }
+
+    long getMuestras() {
+        return muestras;
+    }
+
+    // Duración (segundos) por debajo de la cual queda la fracción indicada de las muestras; null sin muestras
+    Long percentil(double fraccion) {
+        if (muestras == 0) {
+            return null;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(fraccion * muestras));
+        long acumulado = 0;
+        for (int i = 0; i < conteos.length; i++) {
+            acumulado += conteos[i];
+            if (acumulado >= objetivo) {
+                return valorRepresentativo(i);
+            }
+        }
+        return valorRepresentativo(conteos.length - 1);
+    }
+
+    private static int indice(long valor) {
+        if (valor < SUB_BUCKETS) {
+            return (int) valor;
+        }
+        int exponente = Math.min(63 - Long.numberOfLeadingZeros(valor), MAXIMO_EXPONENTE);
+        if (exponente == MAXIMO_EXPONENTE && valor >= (1L << (MAXIMO_EXPONENTE + 1))) {
+            return CANTIDAD_BUCKETS - 1;
+        }
+        int subBucket = (int) ((valor >> (exponente - BITS_SUB_BUCKET)) & (SUB_BUCKETS - 1));
+        return SUB_BUCKETS + (exponente - BITS_SUB_BUCKET) * SUB_BUCKETS + subBucket;
+    }
+
+    // Punto medio del rango de valores que cae en el bucket
+    private static long valorRepresentativo(int indice) {
+        if (indice < SUB_BUCKETS) {
+            return indice;
+        }
+        int exponente = (indice - SUB_BUCKETS) / SUB_BUCKETS + BITS_SUB_BUCKET;
+        int subBucket = (indice - SUB_BUCKETS) % SUB_BUCKETS;
+        long ancho = 1L << (exponente - BITS_SUB_BUCKET);
+        long inicio = (1L << exponente) + subBucket * ancho;
+        return inicio + ancho / 2;
+    }
+}
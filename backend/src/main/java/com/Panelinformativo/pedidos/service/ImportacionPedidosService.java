@@ -0,0 +1,332 @@
+package com.Panelinformativo.pedidos.service;
+
+import com.Panelinformativo.common.util.RestriccionesUtil;
+import com.Panelinformativo.common.util.TransaccionUtil;
+import com.Panelinformativo.pedidos.dto.PedidoCreateDTO;
+import com.Panelinformativo.pedidos.dto.PedidoDTO;
+import com.Panelinformativo.pedidos.dto.ResultadoImportacionDTO;
+import com.Panelinformativo.pedidos.model.Pedido;
+import com.Panelinformativo.pedidos.repository.PedidoArchivadoRepository;
+import com.Panelinformativo.pedidos.repository.PedidoRepository;
+import com.Panelinformativo.transportistas.model.Transportista;
+import com.Panelinformativo.transportistas.service.TransportistaService;
+import com.Panelinformativo.usuarios.model.Usuario;
+import com.Panelinformativo.vueltas.model.Vuelta;
+import com.Panelinformativo.vueltas.service.VueltaService;
+import com.Panelinformativo.zonas.model.Zona;
+import com.Panelinformativo.zonas.service.ZonaService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Importación masiva de planillas: valida todo el lote con pocas consultas por conjuntos
+// e inserta los pedidos válidos en un único batch JDBC
+@Service
+@RequiredArgsConstructor
+public class ImportacionPedidosService {
+    private static final int MAXIMO_FILAS_POR_IMPORTACION = 500;
+
+    private static final String INSERT_PEDIDO = "INSERT INTO pedidos (numero_planilla, transportista_id, estado, zona_id, " +
+            "cantidad, vuelta_id, usuario_creador_id, fecha_creacion, fecha_entrega, controlado, version_cambio, version) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private final PedidoRepository pedidoRepository;
+    private final PedidoArchivadoRepository pedidoArchivadoRepository;
+    private final TransportistaService transportistaService;
+    private final ZonaService zonaService;
+    private final VueltaService vueltaService;
+    private final ResumenVueltasService resumenVueltasService;
+    private final VersionCambiosService versionCambiosService;
+    private final JdbcTemplate jdbcTemplate;
+
+    // Fila en proceso: datos de entrada, entidades resueltas y resultado
+    private static class FilaImportacion {
+        private final int numero;
+        private final PedidoCreateDTO dto;
+        private String error;
+        private Transportista transportista;
+        private Zona zona;
+        private Vuelta vuelta;
+        private LocalDate fechaEntrega;
+        private Long idCreado;
+
+        private FilaImportacion(int numero, PedidoCreateDTO dto, String error) {
+            this.numero = numero;
+            this.dto = dto;
+            this.error = error;
+        }
+
+        private boolean esValida() {
+            return error == null;
+        }
+    }
+
+    @Transactional
+    public List<ResultadoImportacionDTO> importarPedidos(List<PedidoCreateDTO> pedidos, Usuario usuarioCreador) {
+        List<FilaImportacion> filas = new ArrayList<>();
+        for (int i = 0; i < pedidos.size(); i++) {
+            filas.add(new FilaImportacion(i + 1, pedidos.get(i), null));
+        }
+        return importar(filas, usuarioCreador);
+    }
+
+    // Formato CSV (separado por coma o punto y coma), una planilla por línea:
+    // numeroPlanilla, transporte, zona, cantidad, vuelta, fechaEntrega (yyyy-MM-dd, opcional)
+    // Si la primera línea contiene "planilla" se toma como encabezado
+    @Transactional
+    public List<ResultadoImportacionDTO> importarPedidosCsv(String csv, Usuario usuarioCreador) {
+        List<FilaImportacion> filas = new ArrayList<>();
+        String[] lineas = csv == null ? new String[0] : csv.split("\\r?\\n");
+        int numero = 0;
+        for (int i = 0; i < lineas.length; i++) {
+            String linea = lineas[i].trim();
+            if (linea.isEmpty() || (i == 0 && linea.toLowerCase(Locale.ROOT).contains("planilla"))) {
+                continue;
+            }
+            numero++;
+            filas.add(parsearLineaCsv(numero, linea));
+        }
+        return importar(filas, usuarioCreador);
+    }
+
+    private List<ResultadoImportacionDTO> importar(List<FilaImportacion> filas, Usuario usuarioCreador) {
+        if (filas.isEmpty()) {
+            throw new IllegalArgumentException("No hay planillas para importar");
+        }
+        if (filas.size() > MAXIMO_FILAS_POR_IMPORTACION) {
+            throw new IllegalArgumentException("No se pueden importar más de " + MAXIMO_FILAS_POR_IMPORTACION + " planillas a la vez");
+        }
+
+        filas.forEach(this::validarCampos);
+        validarNumerosPlanilla(filas);
+        resolverCatalogos(filas);
+        validarConflictosDeVuelta(filas);
+        insertar(filas, usuarioCreador);
+
+        return armarResultados(filas);
+    }
+
+    // Mismas validaciones que el alta individual de pedidos
+    private void validarCampos(FilaImportacion fila) {
+        if (!fila.esValida()) {
+            return;
+        }
+        PedidoCreateDTO dto = fila.dto;
+        if (dto == null || dto.getNumeroPlanilla() == null || dto.getNumeroPlanilla().trim().isEmpty()) {
+            fila.error = "El número de planilla es obligatorio";
+        } else if (dto.getTransportistaNombre() == null || dto.getTransportistaNombre().trim().isEmpty()) {
+            fila.error = "El transporte es obligatorio";
+        } else if (dto.getCantidad() == null || dto.getCantidad() <= 0) {
+            fila.error = "La cantidad es obligatoria y debe ser mayor a 0";
+        } else if (dto.getVueltaNombre() == null || dto.getVueltaNombre().trim().isEmpty()) {
+            fila.error = "La vuelta es obligatoria";
+        }
+    }
+
+    // Duplicados dentro del lote y contra la base, con una consulta por tabla
+    private void validarNumerosPlanilla(List<FilaImportacion> filas) {
+        Set<String> numeros = filas.stream()
+                .filter(FilaImportacion::esValida)
+                .map(fila -> fila.dto.getNumeroPlanilla())
+                .collect(Collectors.toSet());
+        if (numeros.isEmpty()) {
+            return;
+        }
+
+        // También los archivados; primero la tabla de pedidos, igual que el alta individual
+        Set<String> existentes = new HashSet<>(pedidoRepository.findNumerosPlanillaExistentes(numeros));
+        existentes.addAll(pedidoArchivadoRepository.findNumerosPlanillaExistentes(numeros));
+        Set<String> vistos = new HashSet<>();
+        for (FilaImportacion fila : filas) {
+            if (!fila.esValida()) {
+                continue;
+            }
+            String numeroPlanilla = fila.dto.getNumeroPlanilla();
+            if (existentes.contains(numeroPlanilla)) {
+                fila.error = "Ya existe un pedido con ese número de planilla";
+            } else if (!vistos.add(numeroPlanilla)) {
+                fila.error = "El número de planilla está repetido en la importación";
+            }
+        }
+    }
+
+    // Cada nombre distinto se resuelve una sola vez (y con la caché de catálogos, normalmente sin consultar la base)
+    private void resolverCatalogos(List<FilaImportacion> filas) {
+        Map<String, Transportista> transportistas = new HashMap<>();
+        Map<String, Zona> zonas = new HashMap<>();
+        Map<String, Vuelta> vueltas = new HashMap<>();
+
+        for (FilaImportacion fila : filas) {
+            if (!fila.esValida()) {
+                continue;
+            }
+            PedidoCreateDTO dto = fila.dto;
+            fila.transportista = resolver(transportistas, dto.getTransportistaNombre(), transportistaService::crearObtenerTransportistaEntity);
+            if (dto.getZonaNombre() != null && !dto.getZonaNombre().trim().isEmpty()) {
+                fila.zona = resolver(zonas, dto.getZonaNombre(), zonaService::crearObtenerZonaEntity);
+            }
+            fila.vuelta = resolver(vueltas, dto.getVueltaNombre(), vueltaService::crearObtenerVueltaEntity);
+            fila.fechaEntrega = dto.getFechaEntrega() != null ? dto.getFechaEntrega() : LocalDate.now();
+        }
+    }
+
+    private <T> T resolver(Map<String, T> resueltos, String nombre, Function<String, T> crearObtener) {
+        String nombreLimpio = nombre.trim();
+        return resueltos.computeIfAbsent(nombreLimpio.toLowerCase(Locale.ROOT), k -> crearObtener.apply(nombreLimpio));
+    }
+
+    // Un transporte no puede repetir vuelta en la misma fecha de entrega: se consulta una vez para todo el lote
+    private void validarConflictosDeVuelta(List<FilaImportacion> filas) {
+        List<FilaImportacion> validas = filas.stream().filter(FilaImportacion::esValida).collect(Collectors.toList());
+        if (validas.isEmpty()) {
+            return;
+        }
+
+        Set<Long> transportistaIds = validas.stream().map(f -> f.transportista.getId()).collect(Collectors.toSet());
+        Set<LocalDate> fechas = validas.stream().map(f -> f.fechaEntrega).collect(Collectors.toSet());
+        Set<String> ocupadas = pedidoRepository.findClavesVueltaPorTransportistasYFechas(transportistaIds, fechas).stream()
+                .map(clave -> claveVuelta((Long) clave[0], (Long) clave[1], (LocalDate) clave[2]))
+                .collect(Collectors.toCollection(HashSet::new));
+
+        for (FilaImportacion fila : validas) {
+            String clave = claveVuelta(fila.transportista.getId(), fila.vuelta.getId(), fila.fechaEntrega);
+            if (!ocupadas.add(clave)) {
+                fila.error = String.format("El transporte '%s' ya tiene asignada la vuelta '%s' para la fecha %s",
+                        fila.transportista.getNombre(), fila.vuelta.getNombre(), fila.fechaEntrega.toString());
+            }
+        }
+    }
+
+    private String claveVuelta(Long transportistaId, Long vueltaId, LocalDate fechaEntrega) {
+        return transportistaId + "|" + vueltaId + "|" + fechaEntrega;
+    }
+
+    // Inserción de todas las filas válidas en un solo batch JDBC, recuperando los ids generados
+    private void insertar(List<FilaImportacion> filas, Usuario usuarioCreador) {
+        List<FilaImportacion> validas = filas.stream().filter(FilaImportacion::esValida).collect(Collectors.toList());
+        if (validas.isEmpty()) {
+            return;
+        }
+
+        Timestamp fechaCreacion = Timestamp.valueOf(LocalDateTime.now());
+        // El insert no pasa por JPA: asignar aquí la versión de cambio que pondría el listener
+        long versionCambio = versionCambiosService.versionDeLaTransaccion();
+        KeyHolder claves = new GeneratedKeyHolder();
+        try {
+            jdbcTemplate.batchUpdate(
+                    con -> con.prepareStatement(INSERT_PEDIDO, Statement.RETURN_GENERATED_KEYS),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            FilaImportacion fila = validas.get(i);
+                            ps.setString(1, fila.dto.getNumeroPlanilla());
+                            ps.setLong(2, fila.transportista.getId());
+                            ps.setString(3, Pedido.EstadoPedido.PENDIENTE.name());
+                            if (fila.zona != null) {
+                                ps.setLong(4, fila.zona.getId());
+                            } else {
+                                ps.setNull(4, Types.BIGINT);
+                            }
+                            ps.setInt(5, fila.dto.getCantidad());
+                            ps.setLong(6, fila.vuelta.getId());
+                            ps.setLong(7, usuarioCreador.getId());
+                            ps.setTimestamp(8, fechaCreacion);
+                            ps.setDate(9, Date.valueOf(fila.fechaEntrega));
+                            ps.setBoolean(10, false);
+                            ps.setLong(11, versionCambio);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return validas.size();
+                        }
+                    },
+                    claves);
+        } catch (DataIntegrityViolationException e) {
+            if (RestriccionesUtil.violaRestriccion(e, Pedido.RESTRICCION_VUELTA_POR_FECHA)) {
+                // Otro usuario asignó alguna de estas vueltas mientras se validaba el lote
+                throw new IllegalArgumentException("Alguna vuelta fue asignada por otro usuario durante la importación, vuelva a intentarlo");
+            }
+            // Otro usuario cargó alguna de estas planillas mientras se validaba el lote
+            throw new IllegalArgumentException("Alguna planilla fue cargada por otro usuario durante la importación, vuelva a intentarlo");
+        }
+
+        List<Map<String, Object>> idsGenerados = claves.getKeyList();
+        for (int i = 0; i < validas.size(); i++) {
+            FilaImportacion fila = validas.get(i);
+            fila.idCreado = ((Number) idsGenerados.get(i).values().iterator().next()).longValue();
+
+            Long transportistaId = fila.transportista.getId();
+            Long vueltaId = fila.vuelta.getId();
+            LocalDate fechaEntrega = fila.fechaEntrega;
+            Long pedidoId = fila.idCreado;
+            TransaccionUtil.despuesDelCommit(() ->
+                    resumenVueltasService.registrar(pedidoId, versionCambio, transportistaId, vueltaId, fechaEntrega));
+        }
+    }
+
+    private List<ResultadoImportacionDTO> armarResultados(List<FilaImportacion> filas) {
+        List<Long> idsCreados = filas.stream()
+                .filter(f -> f.idCreado != null)
+                .map(f -> f.idCreado)
+                .collect(Collectors.toList());
+        Map<Long, PedidoDTO> creados = idsCreados.isEmpty() ? Collections.emptyMap()
+                : pedidoRepository.findDTOByIdIn(idsCreados).stream()
+                        .collect(Collectors.toMap(PedidoDTO::getId, Function.identity()));
+
+        return filas.stream()
+                .map(fila -> new ResultadoImportacionDTO(
+                        fila.numero,
+                        fila.dto != null ? fila.dto.getNumeroPlanilla() : null,
+                        fila.esValida(),
+                        fila.error,
+                        fila.idCreado != null ? creados.get(fila.idCreado) : null))
+                .collect(Collectors.toList());
+    }
+
+    private FilaImportacion parsearLineaCsv(int numero, String linea) {
+        String separador = linea.contains(";") ? ";" : ",";
+        String[] columnas = linea.split(separador, -1);
+        if (columnas.length < 5) {
+            return new FilaImportacion(numero, null,
+                    "Formato inválido: se esperaba numeroPlanilla, transporte, zona, cantidad, vuelta y fecha de entrega opcional");
+        }
+
+        PedidoCreateDTO dto = new PedidoCreateDTO();
+        dto.setNumeroPlanilla(columnas[0].trim());
+        dto.setTransportistaNombre(columnas[1].trim());
+        dto.setZonaNombre(columnas[2].trim());
+        dto.setVueltaNombre(columnas[4].trim());
+        try {
+            dto.setCantidad(Integer.parseInt(columnas[3].trim()));
+        } catch (NumberFormatException e) {
+            return new FilaImportacion(numero, dto, "La cantidad debe ser un número entero");
+        }
+        if (columnas.length > 5 && !columnas[5].trim().isEmpty()) {
+            try {
+                dto.setFechaEntrega(LocalDate.parse(columnas[5].trim()));
+            } catch (DateTimeParseException e) {
+                return new FilaImportacion(numero, dto, "La fecha de entrega debe tener formato yyyy-MM-dd");
+            }
+        }
+        return new FilaImportacion(numero, dto, null);
+    }
+}
@@ -0,0 +1,61 @@
+package com.Panelinformativo.pedidos.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Qué cambios de pedidos refleja una lectura completa de la base. La usan los servicios que reconstruyen
+// agregados en memoria para no sumar dos veces un cambio que les llega después de leer (los cambios se aplican
+// al confirmar cada transacción y pueden llegar cuando la lectura ya los vio).
+//
+// La versión confirmada se toma antes de leer: un cambio con esa versión o una menor ya está en lo leído.
+// De los pedidos con una versión posterior (confirmados entre la toma de la versión y la lectura) se recuerda
+// la versión leída: la de su fila o, si la lectura ya no encontró el pedido, la de su baja.
+final class LecturaPedidos {
+    // Antes de la primera lectura ningún cambio está incluido
+    static final LecturaPedidos NINGUNA = new LecturaPedidos(Long.MIN_VALUE);
+
+    private final long versionBase;
+    private final Map<Long, Long> versionesPosteriores = new HashMap<>();
+    // Pedidos encontrados por la lectura; solo hasta registrar las bajas
+    private Set<Long> leidos = new HashSet<>();
+
+    LecturaPedidos(long versionBase) {
+        this.versionBase = versionBase;
+    }
+
+    // Pedido encontrado en la tabla de pedidos, con su versión (null en filas anteriores al versionado)
+    void leido(Long pedidoId, Long version) {
+        leidos.add(pedidoId);
+        if (version != null && version > versionBase) {
+            versionesPosteriores.put(pedidoId, version);
+        }
+    }
+
+    // Bajas (pedidoId, versión) posteriores a la versión base, leídas después que los pedidos. Si la lectura
+    // todavía encontró el pedido, la baja se confirmó después y no cuenta como leída
+    void bajas(List<Object[]> bajas) {
+        for (Object[] baja : bajas) {
+            Long pedidoId = (Long) baja[0];
+            if (!leidos.contains(pedidoId)) {
+                versionesPosteriores.merge(pedidoId, (Long) baja[1], Math::max);
+            }
+        }
+        leidos = null;
+    }
+
+    long versionBase() {
+        return versionBase;
+    }
+
+    // true si el cambio que 'version' hizo sobre el pedido ya estaba en lo leído
+    boolean incluye(Long pedidoId, long version) {
+        if (version <= versionBase) {
+            return true;
+        }
+        Long leida = versionesPosteriores.get(pedidoId);
+        return leida != null && version <= leida;
+    }
+}
@@ -0,0 +1,75 @@
+package com.Panelinformativo.pedidos.service;
+
+import com.Panelinformativo.common.websocket.WebSocketService;
+import com.Panelinformativo.pedidos.dto.ColaPrioridadCargaDTO;
+import com.Panelinformativo.pedidos.repository.PedidoRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+// Agrupa los cambios de la cola de prioridad de carga hechos en una misma transacción
+// y los publica como un único evento con el orden completo de la cola.
+// La secuencia del evento se toma de la base justo antes de leer el orden, con la fila del contador
+// bloqueada hasta el commit: una secuencia mayor siempre corresponde a un orden leído después de
+// confirmados los anteriores, así los clientes pueden descartar los eventos con secuencia menor.
+// La transacción toma la versión de cambios antes que la secuencia (ver VersionCambiosService).
+@Service
+@RequiredArgsConstructor
+public class NotificacionColaPrioridadService {
+    // Clave del recurso ligado a la transacción: indica que ya hay una notificación pendiente
+    private static final Object CLAVE_CAMBIO_PENDIENTE = new Object();
+    private static final String CONTADOR_SECUENCIA = "secuencia_cola_prioridad";
+
+    private final PedidoRepository pedidoRepository;
+    private final WebSocketService webSocketService;
+    private final ContadoresPedidosService contadoresPedidosService;
+    private final VersionCambiosService versionCambiosService;
+    private final PlatformTransactionManager transactionManager;
+
+    // Marcar que la cola cambió. Se publica una sola vez al confirmar la transacción,
+    // sin importar cuántas veces se llame dentro de ella.
+    public void registrarCambio() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            webSocketService.notificarCambioColaPrioridad(new TransactionTemplate(transactionManager).execute(estado -> leerCola()));
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(CLAVE_CAMBIO_PENDIENTE)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(CLAVE_CAMBIO_PENDIENTE, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private ColaPrioridadCargaDTO cola;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                // La versión antes que la secuencia: si no se tomó todavía, la lectura de la cola la pediría
+                // al escribir los cambios pendientes, con la secuencia ya bloqueada
+                versionCambiosService.versionDeLaTransaccion();
+                // Leer el orden final dentro de la transacción (incluye los cambios pendientes de escribir)
+                cola = leerCola();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(CLAVE_CAMBIO_PENDIENTE);
+                if (status == STATUS_COMMITTED && cola != null) {
+                    webSocketService.notificarCambioColaPrioridad(cola);
+                }
+            }
+        });
+    }
+
+    // Numerar y leer juntos: mientras esta transacción no termine, otra que cambie la cola espera en
+    // el contador y, al seguir, lee un orden que ya incluye estos cambios
+    private ColaPrioridadCargaDTO leerCola() {
+        // Empieza en la hora actual para seguir por encima de las secuencias que asignaba cada nodo
+        long secuencia = contadoresPedidosService.incrementar(CONTADOR_SECUENCIA, 1, System::currentTimeMillis);
+        List<Long> pedidoIds = pedidoRepository.findIdsColaPrioridadCarga();
+        return new ColaPrioridadCargaDTO(secuencia, pedidoIds);
+    }
+}
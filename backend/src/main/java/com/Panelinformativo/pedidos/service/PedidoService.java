@@ -1,20 +1,29 @@
 package com.Panelinformativo.pedidos.service;
 
+import com.Panelinformativo.common.util.RestriccionesUtil;
+import com.Panelinformativo.common.util.TransaccionUtil;
 import com.Panelinformativo.grupos.model.Grupo;
 import com.Panelinformativo.grupos.repository.GrupoRepository;
 import com.Panelinformativo.pedidos.dto.PedidoCreateDTO;
 import com.Panelinformativo.pedidos.dto.PedidoDTO;
+import com.Panelinformativo.pedidos.dto.PedidoPaginaDTO;
 import com.Panelinformativo.pedidos.dto.TransportistaVueltasDTO;
 import com.Panelinformativo.pedidos.model.Pedido;
+import com.Panelinformativo.pedidos.repository.PedidoArchivadoRepository;
 import com.Panelinformativo.pedidos.repository.PedidoRepository;
 import com.Panelinformativo.transportistas.model.Transportista;
 import com.Panelinformativo.transportistas.service.TransportistaService;
 import com.Panelinformativo.usuarios.model.Usuario;
 import com.Panelinformativo.zonas.model.Zona;
 import com.Panelinformativo.zonas.service.ZonaService;
+import com.Panelinformativo.vueltas.dto.VueltaDTO;
 import com.Panelinformativo.vueltas.model.Vuelta;
 import com.Panelinformativo.vueltas.service.VueltaService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -26,15 +35,30 @@ import java.util.stream.Collectors;
 @Service
 @RequiredArgsConstructor
 public class PedidoService {
+    // Límites del listado paginado por cursor
+    private static final int TAMANIO_PAGINA_POR_DEFECTO = 50;
+    private static final int TAMANIO_PAGINA_MAXIMO = 200;
+    // Separación entre posiciones consecutivas de la cola de prioridad de carga: deja lugar para
+    // insertar pedidos entre dos existentes sin renumerar el resto de la cola
+    private static final int ESPACIO_ORDEN_PRIORIDAD = PosicionesColaPrioridadService.ESPACIO_POSICIONES;
+    private static final long LIMITE_ORDEN_PRIORIDAD = PosicionesColaPrioridadService.LIMITE_POSICIONES;
+
     private final PedidoRepository pedidoRepository;
+    private final PedidoArchivadoRepository pedidoArchivadoRepository;
     private final GrupoRepository grupoRepository;
     private final TransportistaService transportistaService;
     private final ZonaService zonaService;
     private final VueltaService vueltaService;
+    private final ResumenVueltasService resumenVueltasService;
+    private final NotificacionColaPrioridadService notificacionColaPrioridadService;
+    private final PosicionesColaPrioridadService posicionesColaPrioridadService;
+    private final VersionCambiosService versionCambiosService;
+    private final AnaliticaTramosService analiticaTramosService;
+    private final CambiosPedidosService cambiosPedidosService;
 
     @Transactional
     public PedidoDTO crearPedido(PedidoCreateDTO dto, Usuario usuarioCreador) {
-        if (pedidoRepository.findByNumeroPlanilla(dto.getNumeroPlanilla()).isPresent()) {
+        if (existeNumeroPlanilla(dto.getNumeroPlanilla())) {
             throw new IllegalArgumentException("Ya existe un pedido con ese número de planilla");
         }
 
@@ -65,18 +89,6 @@ public class PedidoService {
         // Determinar fecha de entrega: usar la proporcionada o por defecto hoy
         LocalDate fechaEntrega = dto.getFechaEntrega() != null ? dto.getFechaEntrega() : LocalDate.now();
         
-        // Validar que no se duplique la vuelta del mismo transporte en la misma fecha de entrega
-        List<Pedido> pedidosExistentes = pedidoRepository.findByTransportistaAndVueltaAndFechaEntrega(
-            transportista, vuelta, fechaEntrega
-        );
-        
-        if (!pedidosExistentes.isEmpty()) {
-            throw new IllegalArgumentException(
-                String.format("El transporte '%s' ya tiene asignada la vuelta '%s' para la fecha %s", 
-                    transportista.getNombre(), vuelta.getNombre(), fechaEntrega.toString())
-            );
-        }
-
         Pedido pedido = new Pedido();
         pedido.setNumeroPlanilla(dto.getNumeroPlanilla());
         pedido.setTransportista(transportista);
@@ -87,168 +99,212 @@ public class PedidoService {
         pedido.setEstado(Pedido.EstadoPedido.PENDIENTE);
         pedido.setUsuarioCreador(usuarioCreador);
 
-        pedido = pedidoRepository.save(pedido);
-        return convertirADTO(pedido);
+        // Que no se duplique la vuelta del mismo transporte en la misma fecha de entrega lo garantiza
+        // la restricción única de la tabla (sin consulta previa, que no protege ante altas simultáneas)
+        pedido = guardarValidandoVuelta(pedido);
+        registrarEnResumenVueltas(pedido);
+        // Proyección: transporte, zona y vuelta pueden ser referencias de la caché sin cargar
+        return obtenerDTOActualizado(pedido.getId());
+    }
+
+    // El número de planilla no se repite aunque el pedido que lo usaba ya esté archivado. Primero la tabla de
+    // pedidos: si un archivo confirma entre las dos consultas, el pedido ya no está en una pero sí en la otra
+    private boolean existeNumeroPlanilla(String numeroPlanilla) {
+        return pedidoRepository.findByNumeroPlanilla(numeroPlanilla).isPresent()
+                || pedidoArchivadoRepository.existsByNumeroPlanilla(numeroPlanilla);
     }
 
     public List<PedidoDTO> obtenerTodosLosPedidos() {
         // Ordenar por fecha de creación descendente (más recientes primero)
-        return pedidoRepository.findAllByOrderByFechaCreacionDesc().stream()
-                .map(this::convertirADTO)
-                .collect(Collectors.toList());
+        return pedidoRepository.findAllDTOOrderByFechaCreacionDesc();
+    }
+
+    // Listado paginado por cursor (keyset sobre fechaCreacion, id): el costo de cada página
+    // no depende de cuántos pedidos haya en la tabla
+    public PedidoPaginaDTO obtenerPaginaPedidos(String cursor, Integer tamanio) {
+        int tamanioPagina = tamanio == null ? TAMANIO_PAGINA_POR_DEFECTO
+                : Math.max(1, Math.min(tamanio, TAMANIO_PAGINA_MAXIMO));
+        // Se pide un elemento extra para saber si existe una página siguiente
+        Pageable limite = PageRequest.of(0, tamanioPagina + 1);
+
+        List<PedidoDTO> pedidos;
+        if (cursor == null || cursor.isBlank()) {
+            pedidos = pedidoRepository.findPrimeraPagina(limite);
+        } else {
+            CursorPedido posicion = CursorPedido.decodificar(cursor);
+            pedidos = pedidoRepository.findPaginaDespuesDe(posicion.fecha(), posicion.id(), limite);
+        }
+
+        boolean hayMas = pedidos.size() > tamanioPagina;
+        if (hayMas) {
+            pedidos = pedidos.subList(0, tamanioPagina);
+        }
+
+        String siguienteCursor = null;
+        if (hayMas) {
+            PedidoDTO ultimo = pedidos.get(pedidos.size() - 1);
+            siguienteCursor = CursorPedido.codificar(ultimo.getFechaCreacion(), ultimo.getId());
+        }
+
+        return new PedidoPaginaDTO(pedidos, siguienteCursor, hayMas);
     }
 
     public List<PedidoDTO> obtenerPedidosPorEstado(Pedido.EstadoPedido estado) {
         // Para pedidos REALIZADOS, ordenar por fecha de actualización descendente (más recientes primero)
         // Para otros estados, ordenar por fecha de creación ascendente
-        List<Pedido> pedidos;
+        // Se proyecta directamente a DTO para no hidratar entidades en listados de solo lectura
         if (estado == Pedido.EstadoPedido.REALIZADO) {
-            pedidos = pedidoRepository.findByEstadoOrderByFechaActualizacionDesc(estado);
-        } else {
-            pedidos = pedidoRepository.findByEstadoOrderByFechaCreacionAsc(estado);
+            return pedidoRepository.findDTOByEstadoOrderByFechaActualizacionDesc(estado);
         }
-        
-        return pedidos.stream()
-                .map(this::convertirADTO)
-                .collect(Collectors.toList());
+        return pedidoRepository.findDTOByEstadoOrderByFechaCreacionAsc(estado);
     }
 
     public PedidoDTO obtenerPedidoPorId(Long id) {
-        Pedido pedido = pedidoRepository.findById(id)
+        Pedido pedido = pedidoRepository.findDetalleById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
         return convertirADTO(pedido);
     }
 
+    // Una transición que no sale de un estado de partida válido (por ejemplo PENDIENTE -> PENDIENTE o
+    // REALIZADO -> PENDIENTE) se rechaza antes de tocar nada. Después cada transición es un UPDATE condicionado
+    // al estado de partida: si dos usuarios cambian el mismo pedido a la vez, el segundo recibe un conflicto
+    // en lugar de pisar el cambio del primero
     @Transactional
     public PedidoDTO actualizarEstadoPedido(Long id, Pedido.EstadoPedido nuevoEstado, Usuario usuario) {
-        Pedido pedido = pedidoRepository.findById(id)
+        Pedido.EstadoPedido estadoActual = pedidoRepository.findEstadoById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
-        
-        // Guardar el estado anterior antes de cambiarlo
-        Pedido.EstadoPedido estadoAnterior = pedido.getEstado();
-        
-        pedido.setEstado(nuevoEstado);
-        
-        // Si cambia a REALIZADO, limpiar la etapa de preparación y el orden de prioridad
+        if (!estadosDePartida(nuevoEstado).contains(estadoActual)) {
+            throw new IllegalArgumentException("No se puede pasar un pedido de " + estadoActual + " a " + nuevoEstado);
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        Long versionCambio = versionCambiosService.versionDeLaTransaccion();
+
+        int actualizados = switch (nuevoEstado) {
+            // Sale de la cola de prioridad; si lo toma un PLANILLERO sin grupo, se le asigna su grupo
+            case EN_PREPARACION -> pedidoRepository.iniciarPreparacion(id, grupoIdDelPlanillero(usuario), ahora, versionCambio);
+            // Vuelve desde EN_PREPARACION al final de la cola de prioridad
+            case PENDIENTE -> pedidoRepository.volverAPendiente(id, posicionAlFinalDeLaCola(), ahora, versionCambio);
+            case REALIZADO -> pedidoRepository.finalizar(id, usuario.getNombreCompleto(), ahora, versionCambio);
+        };
+        verificarTransicion(id, actualizados);
+
+        // Todas estas transiciones pueden sacar o meter el pedido en la cola de prioridad
+        notificacionColaPrioridadService.registrarCambio();
+        PedidoDTO pedido = obtenerDTOActualizado(id);
         if (nuevoEstado == Pedido.EstadoPedido.REALIZADO) {
-            pedido.setEtapaPreparacion(null);
-            pedido.setOrdenPrioridadCarga(null);
-            pedido.setControlado(false); // Limpiar cuando se realiza
-            pedido.setFinalizadoPor(usuario.getNombreCompleto()); // Guardar quién finalizó
-            pedido.setFechaFinalizado(LocalDateTime.now()); // Guardar fecha cuando se finaliza
+            // Solo suma al tramo de carga si venía de PENDIENTE_CARGA (si no, falta la fecha de inicio)
+            TransaccionUtil.despuesDelCommit(() -> analiticaTramosService.registrar(AnaliticaTramosService.Tramo.CARGA, pedido));
         }
-        
-        // Si vuelve a PENDIENTE desde EN_PREPARACION, solo limpiar la etapa de preparación
-        // Si tiene ordenPrioridadCarga, MANTENERLO para que vuelva a aparecer en la cola de prioridad
-        // Si NO tiene ordenPrioridadCarga (porque se limpió al pasar a EN_PREPARACION), asignarle uno nuevo
-        if (nuevoEstado == Pedido.EstadoPedido.PENDIENTE && estadoAnterior == Pedido.EstadoPedido.EN_PREPARACION) {
-            pedido.setEtapaPreparacion(null);
-            pedido.setFechaPreparacion(null); // Limpiar fecha de preparación
-            pedido.setFechaControl(null); // Limpiar fecha de control
-            pedido.setFechaPendienteCarga(null);
-            pedido.setControlado(false); // Limpiar cuando vuelve a pendiente
-            // Si no tiene ordenPrioridadCarga, asignarle uno nuevo al final de la cola
-            if (pedido.getOrdenPrioridadCarga() == null) {
-                Integer maxOrden = pedidoRepository.findMaxOrdenPrioridadCarga();
-                pedido.setOrdenPrioridadCarga(maxOrden != null ? maxOrden + 1 : 1);
-                // Guardar la fecha de entrada a la cola de prioridad (solo si es null, primera vez)
-                if (pedido.getFechaEntradaColaPrioridad() == null) {
-                    pedido.setFechaEntradaColaPrioridad(LocalDateTime.now());
-                }
-            }
-            // Si ya tiene ordenPrioridadCarga, mantenerlo para que vuelva a la misma posición
+        return pedido;
+    }
+
+    // Estados desde los que sale cada transición de actualizarEstadoPedido (las condiciones de sus UPDATE):
+    // sirve para validar la transición y para avisar a los clientes de esos estados
+    public static Set<Pedido.EstadoPedido> estadosDePartida(Pedido.EstadoPedido nuevoEstado) {
+        return switch (nuevoEstado) {
+            case EN_PREPARACION -> EnumSet.of(Pedido.EstadoPedido.PENDIENTE);
+            case PENDIENTE -> EnumSet.of(Pedido.EstadoPedido.EN_PREPARACION);
+            case REALIZADO -> EnumSet.of(Pedido.EstadoPedido.PENDIENTE, Pedido.EstadoPedido.EN_PREPARACION);
+        };
+    }
+
+    // La etapa que vio el usuario (null = todavía sin etapa) define la transición:
+    // null -> CONTROL -> PENDIENTE_CARGA -> REALIZADO. Un segundo toque sobre la misma
+    // etapa ya no coincide y devuelve conflicto en lugar de saltear una etapa.
+    @Transactional
+    public PedidoDTO avanzarEtapaPreparacion(Long id, Pedido.EtapaPreparacion etapaActual, Usuario usuario) {
+        LocalDateTime ahora = LocalDateTime.now();
+        Long versionCambio = versionCambiosService.versionDeLaTransaccion();
+
+        int actualizados;
+        AnaliticaTramosService.Tramo tramoTerminado;
+        if (etapaActual == null) {
+            actualizados = pedidoRepository.pasarAControl(id, ahora, versionCambio);
+            tramoTerminado = AnaliticaTramosService.Tramo.PREPARACION;
+        } else if (etapaActual == Pedido.EtapaPreparacion.CONTROL) {
+            actualizados = pedidoRepository.pasarAPendienteCarga(id, usuario.getNombreCompleto(), ahora, versionCambio);
+            tramoTerminado = AnaliticaTramosService.Tramo.CONTROL;
+        } else {
+            actualizados = pedidoRepository.finalizarDesdePendienteCarga(id, usuario.getNombreCompleto(), ahora, versionCambio);
+            tramoTerminado = AnaliticaTramosService.Tramo.CARGA;
         }
-        
-        // Si pasa a EN_PREPARACION desde PENDIENTE y es un PLANILLERO, asignar automáticamente el grupo
-        if (nuevoEstado == Pedido.EstadoPedido.EN_PREPARACION && estadoAnterior == Pedido.EstadoPedido.PENDIENTE) {
-            pedido.setOrdenPrioridadCarga(null); // Limpiar el orden de prioridad de carga (ya no está en la cola)
-            pedido.setFechaPreparacion(LocalDateTime.now()); // Guardar fecha cuando pasa a EN_PREPARACION
-            
-            // Si el usuario tiene rol PLANILLERO y no hay grupo asignado, asignar automáticamente
-            if (usuario.getRol().getNombre() == com.Panelinformativo.usuarios.model.Rol.TipoRol.PLANILLERO 
-                    && pedido.getGrupoAsignado() == null) {
-                // Buscar o crear un grupo con el nombre del usuario
-                Grupo grupo = grupoRepository.findByNombre(usuario.getNombreCompleto())
-                        .orElseGet(() -> {
-                            // Crear nuevo grupo si no existe
-                            Grupo nuevoGrupo = new Grupo();
-                            nuevoGrupo.setNombre(usuario.getNombreCompleto());
-                            nuevoGrupo.setActivo(true);
-                            return grupoRepository.save(nuevoGrupo);
-                        });
-                pedido.setGrupoAsignado(grupo);
+        verificarTransicion(id, actualizados);
+
+        PedidoDTO pedido = obtenerDTOActualizado(id);
+        TransaccionUtil.despuesDelCommit(() -> analiticaTramosService.registrar(tramoTerminado, pedido));
+        return pedido;
+    }
+
+    // Id del grupo con el nombre del PLANILLERO (se crea si no existe); null para otros roles
+    private Long grupoIdDelPlanillero(Usuario usuario) {
+        if (usuario.getRol().getNombre() != com.Panelinformativo.usuarios.model.Rol.TipoRol.PLANILLERO) {
+            return null;
+        }
+        return grupoRepository.findByNombre(usuario.getNombreCompleto())
+                .orElseGet(() -> {
+                    // Crear nuevo grupo si no existe
+                    Grupo nuevoGrupo = new Grupo();
+                    nuevoGrupo.setNombre(usuario.getNombreCompleto());
+                    nuevoGrupo.setActivo(true);
+                    return grupoRepository.save(nuevoGrupo);
+                })
+                .getId();
+    }
+
+    // Un UPDATE condicionado que no afectó filas: el pedido no existe o ya no está en el estado de partida
+    private void verificarTransicion(Long id, int actualizados) {
+        if (actualizados == 0) {
+            if (!pedidoRepository.existsById(id)) {
+                throw new IllegalArgumentException("Pedido no encontrado");
             }
+            throw new ObjectOptimisticLockingFailureException(Pedido.class, id);
         }
-        
-        pedido = pedidoRepository.save(pedido);
-        return convertirADTO(pedido);
     }
 
-    @Transactional
-    public PedidoDTO avanzarEtapaPreparacion(Long id, Usuario usuario) {
-        Pedido pedido = pedidoRepository.findById(id)
+    private PedidoDTO obtenerDTOActualizado(Long id) {
+        return pedidoRepository.findDTOById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
-        
-        if (pedido.getEstado() != Pedido.EstadoPedido.EN_PREPARACION) {
-            throw new IllegalArgumentException("El pedido debe estar en preparación para avanzar su etapa");
-        }
-        
-        // Avanzar la etapa: null -> CONTROL -> PENDIENTE_CARGA -> REALIZADO
-        if (pedido.getEtapaPreparacion() == null) {
-            // Cuando pasa a CONTROL, establecer como sin controlar
-            pedido.setEtapaPreparacion(Pedido.EtapaPreparacion.CONTROL);
-            pedido.setControlado(false);
-            pedido.setControladoPor(null); // Limpiar cuando pasa a CONTROL
-            pedido.setFechaControl(LocalDateTime.now()); // Guardar fecha cuando pasa a CONTROL
-        } else if (pedido.getEtapaPreparacion() == Pedido.EtapaPreparacion.CONTROL) {
-            // Cuando pasa a PENDIENTE_CARGA desde CONTROL, establecer como controlado y guardar quién hizo el control
-            pedido.setEtapaPreparacion(Pedido.EtapaPreparacion.PENDIENTE_CARGA);
-            pedido.setControlado(true);
-            pedido.setControladoPor(usuario.getNombreCompleto()); // Guardar el nombre del usuario que hizo el control
-            pedido.setFechaPendienteCarga(LocalDateTime.now()); // Guardar fecha cuando pasa a PENDIENTE_CARGA
-        } else if (pedido.getEtapaPreparacion() == Pedido.EtapaPreparacion.PENDIENTE_CARGA) {
-            pedido.setEstado(Pedido.EstadoPedido.REALIZADO);
-            pedido.setEtapaPreparacion(null);
-            pedido.setControlado(false); // Limpiar cuando se realiza
-            // NO limpiar controladoPor, mantenerlo para el historial
-            pedido.setFinalizadoPor(usuario.getNombreCompleto()); // Guardar quién finalizó
-            pedido.setFechaFinalizado(LocalDateTime.now()); // Guardar fecha cuando se finaliza
-        }
-        
-        pedido = pedidoRepository.save(pedido);
-        return convertirADTO(pedido);
+    }
+
+    public Long obtenerGrupoAsignadoId(Long id) {
+        return pedidoRepository.findGrupoAsignadoIdById(id).orElse(null);
     }
 
     @Transactional
     public PedidoDTO asignarGrupo(Long id, Long grupoId) {
-        Pedido pedido = pedidoRepository.findById(id)
+        Pedido pedido = pedidoRepository.findDetalleById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
         
         Grupo grupo = grupoRepository.findById(grupoId)
                 .orElseThrow(() -> new IllegalArgumentException("Grupo no encontrado"));
 
         pedido.setGrupoAsignado(grupo);
-        pedido = pedidoRepository.save(pedido);
+        pedido = pedidoRepository.saveAndFlush(pedido);
         return convertirADTO(pedido);
     }
 
     @Transactional
     public PedidoDTO quitarGrupo(Long id) {
-        Pedido pedido = pedidoRepository.findById(id)
+        Pedido pedido = pedidoRepository.findDetalleById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
         
         pedido.setGrupoAsignado(null);
-        pedido = pedidoRepository.save(pedido);
+        pedido = pedidoRepository.saveAndFlush(pedido);
         return convertirADTO(pedido);
     }
 
     @Transactional
     public PedidoDTO actualizarPedido(Long id, PedidoCreateDTO dto) {
-        Pedido pedido = pedidoRepository.findById(id)
+        Pedido pedido = pedidoRepository.findDetalleById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
+        // Guardar la clave anterior (transporte, vuelta, fecha) para actualizar el resumen de vueltas
+        Long transportistaAnteriorId = pedido.getTransportista() != null ? pedido.getTransportista().getId() : null;
+        Long vueltaAnteriorId = pedido.getVuelta() != null ? pedido.getVuelta().getId() : null;
+        LocalDate fechaEntregaAnterior = pedido.getFechaEntrega();
 
         if (!pedido.getNumeroPlanilla().equals(dto.getNumeroPlanilla())) {
-            if (pedidoRepository.findByNumeroPlanilla(dto.getNumeroPlanilla()).isPresent()) {
+            if (existeNumeroPlanilla(dto.getNumeroPlanilla())) {
                 throw new IllegalArgumentException("Ya existe un pedido con ese número de planilla");
             }
         }
@@ -282,36 +338,75 @@ public class PedidoService {
             pedido.setVuelta(null);
         }
         
-        pedido = pedidoRepository.save(pedido);
-        return convertirADTO(pedido);
+        pedido = guardarValidandoVuelta(pedido);
+        long versionCambio = versionCambiosService.versionDeLaTransaccion();
+        TransaccionUtil.despuesDelCommit(() -> resumenVueltasService.quitar(
+                id, versionCambio, transportistaAnteriorId, vueltaAnteriorId, fechaEntregaAnterior));
+        registrarEnResumenVueltas(pedido);
+        return obtenerDTOActualizado(pedido.getId());
     }
 
     @Transactional
     public void eliminarPedido(Long id) {
-        if (!pedidoRepository.existsById(id)) {
-            throw new IllegalArgumentException("Pedido no encontrado");
+        // Sin grafo: solo se necesitan los ids de las relaciones, que el proxy lazy ya conoce
+        Pedido pedido = pedidoRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
+        Long transportistaId = pedido.getTransportista() != null ? pedido.getTransportista().getId() : null;
+        Long vueltaId = pedido.getVuelta() != null ? pedido.getVuelta().getId() : null;
+        LocalDate fechaEntrega = pedido.getFechaEntrega();
+        boolean estabaEnCola = estaEnColaPrioridadCarga(pedido);
+
+        pedidoRepository.delete(pedido);
+        cambiosPedidosService.registrarEliminacion(id);
+        if (estabaEnCola) {
+            notificacionColaPrioridadService.registrarCambio();
+        }
+        long versionCambio = versionCambiosService.versionDeLaTransaccion();
+        TransaccionUtil.despuesDelCommit(() ->
+                resumenVueltasService.quitar(id, versionCambio, transportistaId, vueltaId, fechaEntrega));
+    }
+
+    // Guarda y escribe en la base en el momento para traducir la violación de la restricción
+    // transporte + vuelta + fecha de entrega al mismo error de negocio de siempre
+    private Pedido guardarValidandoVuelta(Pedido pedido) {
+        try {
+            return pedidoRepository.saveAndFlush(pedido);
+        } catch (DataIntegrityViolationException e) {
+            if (RestriccionesUtil.violaRestriccion(e, Pedido.RESTRICCION_VUELTA_POR_FECHA)) {
+                throw new IllegalArgumentException(
+                    String.format("El transporte '%s' ya tiene asignada la vuelta '%s' para la fecha %s",
+                        pedido.getTransportista().getNombre(), pedido.getVuelta().getNombre(), pedido.getFechaEntrega().toString())
+                );
+            }
+            throw e;
         }
-        pedidoRepository.deleteById(id);
+    }
+
+    // Registrar la combinación transporte/vuelta/fecha del pedido en el resumen una vez confirmada la transacción
+    private void registrarEnResumenVueltas(Pedido pedido) {
+        Long transportistaId = pedido.getTransportista() != null ? pedido.getTransportista().getId() : null;
+        Long vueltaId = pedido.getVuelta() != null ? pedido.getVuelta().getId() : null;
+        LocalDate fechaEntrega = pedido.getFechaEntrega();
+        Long pedidoId = pedido.getId();
+        long versionCambio = versionCambiosService.versionDeLaTransaccion();
+        TransaccionUtil.despuesDelCommit(() ->
+                resumenVueltasService.registrar(pedidoId, versionCambio, transportistaId, vueltaId, fechaEntrega));
     }
 
     // Obtener pedidos pendientes sin orden de prioridad de carga asignado (para Panel Depósito)
     public List<PedidoDTO> obtenerPedidosPendientesSinOrden() {
-        return pedidoRepository.findPendientesSinOrdenPrioridadCarga().stream()
-                .map(this::convertirADTO)
-                .collect(Collectors.toList());
+        return pedidoRepository.findDTOPendientesSinOrdenPrioridadCarga();
     }
 
     // Obtener pedidos pendientes con orden de prioridad de carga (para Pantalla Pública)
     public List<PedidoDTO> obtenerPedidosConOrdenPrioridadCarga() {
-        return pedidoRepository.findPendientesConOrdenPrioridadCarga().stream()
-                .map(this::convertirADTO)
-                .collect(Collectors.toList());
+        return pedidoRepository.findDTOPendientesConOrdenPrioridadCarga();
     }
 
     // Actualizar el orden de prioridad de carga de múltiples pedidos
     @Transactional
     public List<PedidoDTO> actualizarOrdenPrioridadCarga(List<Long> pedidoIds) {
-        List<Pedido> pedidos = pedidoRepository.findAllById(pedidoIds);
+        List<Pedido> pedidos = pedidoRepository.findDetalleByIdIn(pedidoIds);
         
         if (pedidos.size() != pedidoIds.size()) {
             throw new IllegalArgumentException("Algunos pedidos no fueron encontrados");
@@ -324,14 +419,14 @@ public class PedidoService {
             }
         }
         
-        // Asignar orden según la posición en la lista
-        for (int i = 0; i < pedidoIds.size(); i++) {
-            Long pedidoId = pedidoIds.get(i);
-            Pedido pedido = pedidos.stream()
-                    .filter(p -> p.getId().equals(pedidoId))
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado: " + pedidoId));
-            pedido.setOrdenPrioridadCarga(i + 1);
+        // Asignar orden según la posición en la lista (con separación para futuros movimientos)
+        Map<Long, Pedido> pedidosPorId = pedidos.stream()
+                .collect(Collectors.toMap(Pedido::getId, p -> p));
+        List<Pedido> pedidosOrdenados = pedidoIds.stream()
+                .map(pedidosPorId::get)
+                .collect(Collectors.toList());
+        asignarPosicionesConsecutivas(pedidosOrdenados, 0);
+        for (Pedido pedido : pedidosOrdenados) {
             // Guardar la fecha de entrada a la cola de prioridad (solo si es null, primera vez)
             if (pedido.getFechaEntradaColaPrioridad() == null) {
                 pedido.setFechaEntradaColaPrioridad(LocalDateTime.now());
@@ -339,20 +434,182 @@ public class PedidoService {
         }
         
         pedidoRepository.saveAll(pedidos);
+        notificacionColaPrioridadService.registrarCambio();
         
         return pedidos.stream()
                 .map(this::convertirADTO)
                 .collect(Collectors.toList());
     }
 
+    // Mover un pedido justo antes de otro en la cola de prioridad de carga.
+    // Solo se modifica el pedido movido; devuelve los pedidos cuyo orden cambió.
+    @Transactional
+    public List<PedidoDTO> moverAntesEnColaPrioridadCarga(Long id, Long referenciaId) {
+        Pedido pedido = obtenerPedidoParaMoverEnCola(id);
+        Integer ordenReferencia = obtenerOrdenReferenciaEnCola(id, referenciaId);
+
+        Integer anterior = pedidoRepository.findOrdenAnteriorEnCola(ordenReferencia, id);
+        Integer nuevoOrden = anterior == null
+                ? ordenDentroDeLimites((long) ordenReferencia - ESPACIO_ORDEN_PRIORIDAD)
+                : ordenIntermedio(anterior, ordenReferencia);
+
+        if (nuevoOrden == null) {
+            // No queda lugar entre los vecinos: renumerar la cola y volver a calcular
+            renumerarColaPrioridadCarga(id);
+            ordenReferencia = obtenerOrdenReferenciaEnCola(id, referenciaId);
+            anterior = pedidoRepository.findOrdenAnteriorEnCola(ordenReferencia, id);
+            nuevoOrden = anterior == null ? ordenReferencia - ESPACIO_ORDEN_PRIORIDAD : ordenIntermedio(anterior, ordenReferencia);
+            return asignarOrdenEnCola(pedido, nuevoOrden, true);
+        }
+        return asignarOrdenEnCola(pedido, nuevoOrden, false);
+    }
+
+    // Mover un pedido justo después de otro en la cola de prioridad de carga
+    @Transactional
+    public List<PedidoDTO> moverDespuesEnColaPrioridadCarga(Long id, Long referenciaId) {
+        Pedido pedido = obtenerPedidoParaMoverEnCola(id);
+        Integer ordenReferencia = obtenerOrdenReferenciaEnCola(id, referenciaId);
+
+        Integer siguiente = pedidoRepository.findOrdenSiguienteEnCola(ordenReferencia, id);
+        if (siguiente == null) {
+            // Después del último equivale a agregar al final de la cola
+            return asignarOrdenEnCola(pedido, posicionAlFinalDeLaCola(), false);
+        }
+        Integer nuevoOrden = ordenIntermedio(ordenReferencia, siguiente);
+
+        if (nuevoOrden == null) {
+            renumerarColaPrioridadCarga(id);
+            ordenReferencia = obtenerOrdenReferenciaEnCola(id, referenciaId);
+            siguiente = pedidoRepository.findOrdenSiguienteEnCola(ordenReferencia, id);
+            nuevoOrden = siguiente == null ? posicionAlFinalDeLaCola() : ordenIntermedio(ordenReferencia, siguiente);
+            return asignarOrdenEnCola(pedido, nuevoOrden, true);
+        }
+        return asignarOrdenEnCola(pedido, nuevoOrden, false);
+    }
+
+    // Mover un pedido al principio de la cola de prioridad de carga
+    @Transactional
+    public List<PedidoDTO> moverAlInicioColaPrioridadCarga(Long id) {
+        Pedido pedido = obtenerPedidoParaMoverEnCola(id);
+
+        Integer primero = pedidoRepository.findMinOrdenEnCola(id);
+        if (primero == null) {
+            // Cola vacía: el primero es también el último
+            return asignarOrdenEnCola(pedido, posicionAlFinalDeLaCola(), false);
+        }
+        Integer nuevoOrden = ordenDentroDeLimites((long) primero - ESPACIO_ORDEN_PRIORIDAD);
+
+        if (nuevoOrden == null) {
+            renumerarColaPrioridadCarga(id);
+            primero = pedidoRepository.findMinOrdenEnCola(id);
+            nuevoOrden = primero == null ? posicionAlFinalDeLaCola() : primero - ESPACIO_ORDEN_PRIORIDAD;
+            return asignarOrdenEnCola(pedido, nuevoOrden, true);
+        }
+        return asignarOrdenEnCola(pedido, nuevoOrden, false);
+    }
+
+    private static boolean estaEnColaPrioridadCarga(Pedido pedido) {
+        return pedido.getEstado() == Pedido.EstadoPedido.PENDIENTE && pedido.getOrdenPrioridadCarga() != null;
+    }
+
+    private Pedido obtenerPedidoParaMoverEnCola(Long id) {
+        Pedido pedido = pedidoRepository.findDetalleById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
+        if (pedido.getEstado() != Pedido.EstadoPedido.PENDIENTE) {
+            throw new IllegalArgumentException("Solo se puede asignar orden a pedidos en estado PENDIENTE");
+        }
+        return pedido;
+    }
+
+    private Integer obtenerOrdenReferenciaEnCola(Long id, Long referenciaId) {
+        if (id.equals(referenciaId)) {
+            throw new IllegalArgumentException("El pedido de referencia debe ser distinto del pedido a mover");
+        }
+        Pedido referencia = pedidoRepository.findById(referenciaId)
+                .orElseThrow(() -> new IllegalArgumentException("Pedido de referencia no encontrado"));
+        if (referencia.getEstado() != Pedido.EstadoPedido.PENDIENTE || referencia.getOrdenPrioridadCarga() == null) {
+            throw new IllegalArgumentException("El pedido de referencia no está en la cola de prioridad de carga");
+        }
+        return referencia.getOrdenPrioridadCarga();
+    }
+
+    // Punto medio entre dos órdenes; null si son consecutivos y no hay lugar
+    private Integer ordenIntermedio(int anterior, int siguiente) {
+        long distancia = (long) siguiente - anterior;
+        if (distancia <= 1) {
+            return null;
+        }
+        return (int) (anterior + distancia / 2);
+    }
+
+    private Integer ordenDentroDeLimites(long orden) {
+        return Math.abs(orden) <= LIMITE_ORDEN_PRIORIDAD ? (int) orden : null;
+    }
+
+    // Reasignar órdenes espaciados a toda la cola (solo cuando se agota el espacio entre vecinos).
+    // Se deja libre la primera posición del bloque para poder ubicar un pedido delante de todos.
+    private void renumerarColaPrioridadCarga(Long excluirId) {
+        List<Pedido> cola = new ArrayList<>(pedidoRepository.findPendientesConOrdenPrioridadCarga());
+        cola.removeIf(enCola -> enCola.getId().equals(excluirId));
+        asignarPosicionesConsecutivas(cola, 1);
+        pedidoRepository.saveAll(cola);
+    }
+
+    // Posición al final de la cola de prioridad de carga, reservada en el contador compartido por los nodos
+    private int posicionAlFinalDeLaCola() {
+        Integer posicion = posicionesColaPrioridadService.siguientePosicion();
+        if (posicion == null) {
+            // Se agotó el rango de posiciones: compactar la cola y volver a pedir
+            renumerarColaPrioridadCarga(null);
+            posicion = posicionesColaPrioridadService.siguientePosicion();
+        }
+        return posicion;
+    }
+
+    // Asigna a los pedidos (en el orden de la lista) posiciones de un bloque nuevo del contador,
+    // por lo que no pueden coincidir con las que reciben altas concurrentes en la cola
+    private void asignarPosicionesConsecutivas(List<Pedido> pedidos, int posicionesLibresAlInicio) {
+        int cantidad = pedidos.size() + posicionesLibresAlInicio;
+        Integer primera = posicionesColaPrioridadService.reservarBloque(cantidad);
+        if (primera == null) {
+            // Se agotó el rango: compactar desde el principio. Los pedidos recibidos son toda la cola,
+            // así que ningún otro pedido en cola conserva posiciones del rango reutilizado.
+            primera = ESPACIO_ORDEN_PRIORIDAD;
+            posicionesColaPrioridadService.reiniciar(cantidad * ESPACIO_ORDEN_PRIORIDAD);
+        }
+        for (int i = 0; i < pedidos.size(); i++) {
+            pedidos.get(i).setOrdenPrioridadCarga(primera + (i + posicionesLibresAlInicio) * ESPACIO_ORDEN_PRIORIDAD);
+        }
+    }
+
+    private List<PedidoDTO> asignarOrdenEnCola(Pedido pedido, int nuevoOrden, boolean colaRenumerada) {
+        pedido.setOrdenPrioridadCarga(nuevoOrden);
+        // Guardar la fecha de entrada a la cola de prioridad (solo si es null, primera vez)
+        if (pedido.getFechaEntradaColaPrioridad() == null) {
+            pedido.setFechaEntradaColaPrioridad(LocalDateTime.now());
+        }
+        pedido = pedidoRepository.saveAndFlush(pedido);
+        notificacionColaPrioridadService.registrarCambio();
+
+        // Si hubo que renumerar, cambió el orden de toda la cola
+        if (colaRenumerada) {
+            return pedidoRepository.findDTOPendientesConOrdenPrioridadCarga();
+        }
+        return List.of(convertirADTO(pedido));
+    }
+
     // Remover un pedido de la cola de prioridad de carga (poner orden en null)
     @Transactional
     public PedidoDTO removerDeColaPrioridadCarga(Long id) {
-        Pedido pedido = pedidoRepository.findById(id)
+        Pedido pedido = pedidoRepository.findDetalleById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
         
+        boolean estabaEnCola = estaEnColaPrioridadCarga(pedido);
         pedido.setOrdenPrioridadCarga(null);
-        pedido = pedidoRepository.save(pedido);
+        pedido = pedidoRepository.saveAndFlush(pedido);
+        if (estabaEnCola) {
+            notificacionColaPrioridadService.registrarCambio();
+        }
         
         return convertirADTO(pedido);
     }
@@ -360,7 +617,7 @@ public class PedidoService {
     // Asignar un pedido a la cola de prioridad de carga (agregar al final)
     @Transactional
     public PedidoDTO agregarAColaPrioridadCarga(Long id) {
-        Pedido pedido = pedidoRepository.findById(id)
+        Pedido pedido = pedidoRepository.findDetalleById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
         
         if (pedido.getEstado() != Pedido.EstadoPedido.PENDIENTE) {
@@ -371,14 +628,15 @@ public class PedidoService {
             throw new IllegalArgumentException("El pedido ya está en la cola de prioridad de carga");
         }
         
-        // Obtener el máximo orden y agregar al final
-        Integer maxOrden = pedidoRepository.findMaxOrdenPrioridadCarga();
-        pedido.setOrdenPrioridadCarga(maxOrden + 1);
+        // Agregar al final sin consultar el máximo: la posición se reserva en memoria con un solo nodo
+        // y del contador compartido de contadores_pedidos con varios (websocket.bus=base-datos)
+        pedido.setOrdenPrioridadCarga(posicionAlFinalDeLaCola());
         // Guardar la fecha de entrada a la cola de prioridad (solo si es null, primera vez)
         if (pedido.getFechaEntradaColaPrioridad() == null) {
             pedido.setFechaEntradaColaPrioridad(LocalDateTime.now());
         }
-        pedido = pedidoRepository.save(pedido);
+        pedido = pedidoRepository.saveAndFlush(pedido);
+        notificacionColaPrioridadService.registrarCambio();
         
         return convertirADTO(pedido);
     }
@@ -402,6 +660,9 @@ public class PedidoService {
         dto.setControlado(pedido.getControlado());
         dto.setControladoPor(pedido.getControladoPor());
         dto.setFinalizadoPor(pedido.getFinalizadoPor());
+        // Los cambios hechos por entidad se guardan con saveAndFlush: así @PreUpdate ya asignó
+        // la versión y la fecha de actualización que viajan a los clientes
+        dto.setVersionCambio(pedido.getVersionCambio());
 
         if (pedido.getTransportista() != null) {
             dto.setTransportistaId(pedido.getTransportista().getId());
@@ -438,46 +699,32 @@ public class PedidoService {
         LocalDateTime inicioDia = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
         LocalDateTime finDia = inicioDia.plusDays(1);
         
-        List<Pedido> pedidosDelDia = pedidoRepository.findByFechaCreacionBetween(inicioDia, finDia);
-        
-        return pedidosDelDia.stream()
-                .map(this::convertirADTO)
-                .collect(Collectors.toList());
+        return pedidoRepository.findDTOByFechaCreacionBetween(inicioDia, finDia);
     }
 
-    // Obtener resumen de transportistas con vueltas asignadas agrupadas por fecha de entrega
-    public List<TransportistaVueltasDTO> obtenerResumenTransportistasVueltasDelDia() {
+    // Obtener resumen de transportistas con vueltas asignadas agrupadas por fecha de entrega.
+    // Se arma desde el resumen en memoria, opcionalmente limitado a una ventana de fechas de entrega.
+    public List<TransportistaVueltasDTO> obtenerResumenTransportistasVueltasDelDia(LocalDate desde, LocalDate hasta) {
         // Obtener todos los transportistas activos
         List<com.Panelinformativo.transportistas.dto.TransportistaDTO> transportistas = transportistaService.obtenerTransportistasActivos();
-        
-        // Obtener todos los pedidos (no solo del día, para ver todas las fechas de entrega)
-        List<Pedido> todosLosPedidos = pedidoRepository.findAll();
-        
-        // Agrupar vueltas por transportista y por fecha de entrega
-        // Estructura: transportistaId -> fechaEntrega -> lista de vueltas
-        Map<Long, Map<String, Set<String>>> vueltasPorTransportistaYFecha = new HashMap<>();
-        for (Pedido pedido : todosLosPedidos) {
-            if (pedido.getTransportista() != null && pedido.getVuelta() != null && pedido.getFechaEntrega() != null) {
-                Long transportistaId = pedido.getTransportista().getId();
-                String fechaEntrega = pedido.getFechaEntrega().toString(); // Formato: YYYY-MM-DD
-                String vueltaNombre = pedido.getVuelta().getNombre();
-                
-                vueltasPorTransportistaYFecha
-                    .computeIfAbsent(transportistaId, k -> new HashMap<>())
-                    .computeIfAbsent(fechaEntrega, k -> new HashSet<>())
-                    .add(vueltaNombre);
-            }
-        }
-        
+
+        // Nombres de vueltas por id (incluye desactivadas, ya que pedidos existentes pueden referenciarlas)
+        Map<Long, String> nombresVueltas = vueltaService.obtenerTodasLasVueltas().stream()
+                .collect(Collectors.toMap(VueltaDTO::getId, VueltaDTO::getNombre));
+
         // Construir el resumen
         List<TransportistaVueltasDTO> resumen = new ArrayList<>();
         for (com.Panelinformativo.transportistas.dto.TransportistaDTO transportista : transportistas) {
-            Map<String, Set<String>> vueltasPorFecha = vueltasPorTransportistaYFecha.getOrDefault(transportista.getId(), new HashMap<>());
-            
-            // Convertir Set<String> a List<String> para cada fecha
+            Map<LocalDate, Set<Long>> vueltasPorFecha = resumenVueltasService.obtenerVueltasPorFecha(transportista.getId(), desde, hasta);
+
+            // Convertir a fecha (String, formato YYYY-MM-DD) -> lista de nombres de vueltas
             Map<String, List<String>> vueltasPorFechaList = new HashMap<>();
-            for (Map.Entry<String, Set<String>> entry : vueltasPorFecha.entrySet()) {
-                vueltasPorFechaList.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            for (Map.Entry<LocalDate, Set<Long>> entry : vueltasPorFecha.entrySet()) {
+                List<String> nombres = entry.getValue().stream()
+                        .map(nombresVueltas::get)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList());
+                vueltasPorFechaList.put(entry.getKey().toString(), nombres);
             }
             
             TransportistaVueltasDTO dto = new TransportistaVueltasDTO();
@@ -491,4 +738,3 @@ public class PedidoService {
         return resumen;
     }
 }
-
@@ -0,0 +1,122 @@
+package com.Panelinformativo.pedidos.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Asigna posiciones al final de la cola de prioridad de carga: dos transacciones concurrentes nunca reciben
+// la misma posición. Con un solo nodo el contador está en memoria (se inicializa con el mayor orden guardado
+// y después solo crece). Con varios nodos (websocket.bus=base-datos) es el contador posicion_cola_prioridad de
+// contadores_pedidos y cada reserva es una transacción propia y corta, así nadie retiene la fila hasta terminar.
+// En los dos casos, la reserva de una transacción que después se revierte deja un hueco.
+@Service
+@RequiredArgsConstructor
+public class PosicionesColaPrioridadService {
+    // Separación entre posiciones consecutivas: deja lugar para insertar pedidos entre dos existentes
+    public static final int ESPACIO_POSICIONES = 1024;
+    // Máximo valor absoluto de un orden (margen dentro del rango de int para calcular puntos medios)
+    public static final long LIMITE_POSICIONES = 1_000_000_000L;
+
+    private static final String CONTADOR_POSICION = "posicion_cola_prioridad";
+    // Clave del recurso ligado a la transacción que reinició el contador (y tiene su fila bloqueada)
+    private static final Object CLAVE_CONTADOR_REINICIADO = new Object();
+    private static final long SIN_INICIALIZAR = Long.MIN_VALUE;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ContadoresPedidosService contadoresPedidosService;
+    private final VersionCambiosService versionCambiosService;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${websocket.bus:local}")
+    private String bus;
+
+    // Contador de un solo nodo
+    private final AtomicLong ultimaPosicion = new AtomicLong(SIN_INICIALIZAR);
+
+    // Siguiente posición al final de la cola; null si se agotó el rango y hay que compactar la cola
+    public Integer siguientePosicion() {
+        return reservarBloque(1);
+    }
+
+    // Reserva 'cantidad' posiciones consecutivas y devuelve la primera; null si se agotó el rango
+    public Integer reservarBloque(int cantidad) {
+        long incremento = (long) cantidad * ESPACIO_POSICIONES;
+        if (!compartido()) {
+            return reservarEnMemoria(incremento);
+        }
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        // La transacción que reinició el contador ya tiene la fila bloqueada: sigue reservando dentro de ella
+        if (!TransactionSynchronizationManager.hasResource(CLAVE_CONTADOR_REINICIADO)) {
+            transaccion.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        }
+        return transaccion.execute(estado -> {
+            long ultima = contadoresPedidosService.incrementar(CONTADOR_POSICION, incremento, this::mayorPosicionGuardada);
+            if (ultima > LIMITE_POSICIONES) {
+                // Quien recibe null compacta la cola y reinicia el contador; en una transacción propia,
+                // además, la reserva no queda
+                if (estado.isNewTransaction()) {
+                    estado.setRollbackOnly();
+                }
+                return null;
+            }
+            return (int) (ultima - incremento + ESPACIO_POSICIONES);
+        });
+    }
+
+    // Reinicia el contador después de compactar la cola desde el principio del rango. Con varios nodos va en
+    // la transacción que reescribió la cola (si se revierte, el contador vuelve a su valor) y toma antes la versión,
+    // como todas las transacciones que modifican pedidos.
+    public void reiniciar(int ultimaPosicionAsignada) {
+        if (!compartido()) {
+            ultimaPosicion.set(ultimaPosicionAsignada);
+            return;
+        }
+        versionCambiosService.versionDeLaTransaccion();
+        contadoresPedidosService.fijar(CONTADOR_POSICION, ultimaPosicionAsignada);
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+                && !TransactionSynchronizationManager.hasResource(CLAVE_CONTADOR_REINICIADO)) {
+            TransactionSynchronizationManager.bindResource(CLAVE_CONTADOR_REINICIADO, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CLAVE_CONTADOR_REINICIADO);
+                }
+            });
+        }
+    }
+
+    private Integer reservarEnMemoria(long incremento) {
+        if (ultimaPosicion.get() == SIN_INICIALIZAR) {
+            ultimaPosicion.compareAndSet(SIN_INICIALIZAR, mayorPosicionGuardada());
+        }
+        while (true) {
+            long actual = ultimaPosicion.get();
+            long ultima = actual + incremento;
+            if (ultima > LIMITE_POSICIONES) {
+                return null;
+            }
+            if (ultimaPosicion.compareAndSet(actual, ultima)) {
+                return (int) (actual + ESPACIO_POSICIONES);
+            }
+        }
+    }
+
+    // Una base anterior al contador ya tiene posiciones guardadas: se empieza después de la mayor
+    private long mayorPosicionGuardada() {
+        Long maximo = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(orden_prioridad_carga), 0) FROM pedidos", Long.class);
+        return Math.max(maximo, 0);
+    }
+
+    private boolean compartido() {
+        return "base-datos".equals(bus);
+    }
+}
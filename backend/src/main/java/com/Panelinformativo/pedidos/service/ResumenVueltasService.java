@@ -0,0 +1,154 @@
+package com.Panelinformativo.pedidos.service;
+
+import com.Panelinformativo.common.websocket.BusEventos;
+import com.Panelinformativo.pedidos.repository.PedidoEliminadoRepository;
+import com.Panelinformativo.pedidos.repository.PedidoRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+
+// Resumen materializado en memoria: transportista -> fecha de entrega -> vueltas asignadas.
+// Se reconstruye al iniciar la aplicación y luego se mantiene con cada alta, edición y baja de pedidos,
+// de modo que consultarlo no requiere recorrer la tabla de pedidos. Con varios nodos, cada uno aplica también
+// los cambios que relevan los demás. Cada cambio lleva el pedido y la versión que lo hizo, así uno que ya contó
+// la reconstrucción no se suma dos veces.
+@Service
+@RequiredArgsConstructor
+public class ResumenVueltasService {
+    private final PedidoRepository pedidoRepository;
+    private final PedidoEliminadoRepository pedidoEliminadoRepository;
+    private final VersionCambiosService versionCambiosService;
+    private final BusEventos busEventos;
+
+    // Alta o baja de una combinación por un pedido, con la versión de la transacción que la hizo.
+    // Se releva a los demás nodos, que aplican el mismo cambio
+    public record CambioVuelta(Long pedidoId, long version, Long transportistaId, Long vueltaId,
+                               LocalDate fechaEntrega, int delta) {}
+
+    // transportistaId -> fechaEntrega -> vueltaId -> cantidad de pedidos con esa combinación
+    // (se cuentan los pedidos para que quitar uno no borre la vuelta si otro la sigue usando)
+    private final Map<Long, NavigableMap<LocalDate, Map<Long, Integer>>> resumen = new HashMap<>();
+    // Qué cambios ya contó la última reconstrucción: los que llegan después y ya estaban en lo leído se descartan
+    private LecturaPedidos ultimaLectura = LecturaPedidos.NINGUNA;
+    // Cambios registrados mientras se lee la base para reconstruir (null fuera de una reconstrucción):
+    // se vuelven a aplicar sobre lo leído, salvo los que la lectura ya vio
+    private List<CambioVuelta> cambiosDuranteReconstruccion;
+
+    // Se puede llamar con la aplicación atendiendo peticiones; dos reconstrucciones no se solapan
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void reconstruir() {
+        synchronized (resumen) {
+            cambiosDuranteReconstruccion = new ArrayList<>();
+        }
+        LecturaPedidos lectura;
+        List<Object[]> claves;
+        try {
+            // La versión antes de leer: lo confirmado hasta ella ya está en lo que se lee
+            lectura = new LecturaPedidos(versionCambiosService.versionConfirmada());
+            claves = pedidoRepository.findClavesTransportistaVueltaFecha();
+            for (Object[] clave : claves) {
+                lectura.leido((Long) clave[3], (Long) clave[4]);
+            }
+            lectura.bajas(pedidoEliminadoRepository.findBajasDespuesDe(lectura.versionBase()));
+        } catch (RuntimeException e) {
+            synchronized (resumen) {
+                cambiosDuranteReconstruccion = null;
+            }
+            throw e;
+        }
+        synchronized (resumen) {
+            resumen.clear();
+            for (Object[] clave : claves) {
+                sumar((Long) clave[0], (Long) clave[1], (LocalDate) clave[2], 1);
+            }
+            ultimaLectura = lectura;
+            for (CambioVuelta cambio : cambiosDuranteReconstruccion) {
+                if (!lectura.incluye(cambio.pedidoId(), cambio.version())) {
+                    sumar(cambio.transportistaId(), cambio.vueltaId(), cambio.fechaEntrega(), cambio.delta());
+                }
+            }
+            cambiosDuranteReconstruccion = null;
+        }
+    }
+
+    // 'version' es la de la transacción que hizo el cambio, ya confirmada
+    public void registrar(Long pedidoId, long version, Long transportistaId, Long vueltaId, LocalDate fechaEntrega) {
+        aplicarYRelevar(new CambioVuelta(pedidoId, version, transportistaId, vueltaId, fechaEntrega, 1));
+    }
+
+    public void quitar(Long pedidoId, long version, Long transportistaId, Long vueltaId, LocalDate fechaEntrega) {
+        aplicarYRelevar(new CambioVuelta(pedidoId, version, transportistaId, vueltaId, fechaEntrega, -1));
+    }
+
+    // Cambio hecho en otro nodo: se aplica igual que uno propio, sin leer la base
+    @EventListener
+    public void cambioDeOtroNodo(CambioVuelta cambio) {
+        aplicar(cambio);
+    }
+
+    // Vueltas (ids) por fecha de entrega para un transportista, dentro de la ventana [desde, hasta].
+    // Cualquiera de los extremos puede ser null para dejar la ventana abierta.
+    public Map<LocalDate, Set<Long>> obtenerVueltasPorFecha(Long transportistaId, LocalDate desde, LocalDate hasta) {
+        synchronized (resumen) {
+            NavigableMap<LocalDate, Map<Long, Integer>> porFecha = resumen.get(transportistaId);
+            if (porFecha == null) {
+                return Collections.emptyMap();
+            }
+
+            NavigableMap<LocalDate, Map<Long, Integer>> ventana = porFecha;
+            if (desde != null && hasta != null) {
+                ventana = porFecha.subMap(desde, true, hasta, true);
+            } else if (desde != null) {
+                ventana = porFecha.tailMap(desde, true);
+            } else if (hasta != null) {
+                ventana = porFecha.headMap(hasta, true);
+            }
+
+            Map<LocalDate, Set<Long>> resultado = new TreeMap<>();
+            ventana.forEach((fecha, vueltas) -> resultado.put(fecha, new HashSet<>(vueltas.keySet())));
+            return resultado;
+        }
+    }
+
+    private void aplicarYRelevar(CambioVuelta cambio) {
+        aplicar(cambio);
+        busEventos.relevar(cambio);
+    }
+
+    private void aplicar(CambioVuelta cambio) {
+        synchronized (resumen) {
+            if (ultimaLectura.incluye(cambio.pedidoId(), cambio.version())) {
+                return;
+            }
+            sumar(cambio.transportistaId(), cambio.vueltaId(), cambio.fechaEntrega(), cambio.delta());
+            if (cambiosDuranteReconstruccion != null) {
+                cambiosDuranteReconstruccion.add(cambio);
+            }
+        }
+    }
+
+    private void sumar(Long transportistaId, Long vueltaId, LocalDate fechaEntrega, int delta) {
+        if (transportistaId == null || vueltaId == null || fechaEntrega == null) {
+            return;
+        }
+
+        NavigableMap<LocalDate, Map<Long, Integer>> porFecha = resumen.computeIfAbsent(transportistaId, k -> new TreeMap<>());
+        Map<Long, Integer> vueltas = porFecha.computeIfAbsent(fechaEntrega, k -> new HashMap<>());
+        vueltas.merge(vueltaId, delta, Integer::sum);
+
+        // Limpiar entradas vacías para que el resumen no crezca con combinaciones eliminadas
+        if (vueltas.get(vueltaId) <= 0) {
+            vueltas.remove(vueltaId);
+            if (vueltas.isEmpty()) {
+                porFecha.remove(fechaEntrega);
+                if (porFecha.isEmpty()) {
+                    resumen.remove(transportistaId);
+                }
+            }
+        }
+    }
+}
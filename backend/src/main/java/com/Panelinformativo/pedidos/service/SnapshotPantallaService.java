@@ -0,0 +1,104 @@
+package com.Panelinformativo.pedidos.service;
+
+import com.Panelinformativo.common.util.TransaccionUtil;
+import com.Panelinformativo.common.websocket.AreaCluster;
+import com.Panelinformativo.common.websocket.CambiosDeOtroNodo;
+import com.Panelinformativo.pedidos.dto.PedidoDTO;
+import com.Panelinformativo.pedidos.model.Pedido;
+import com.Panelinformativo.pedidos.repository.PedidoRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// JSON ya serializado de las vistas que consultan las pantallas (cola de prioridad y listados por estado).
+// Cada vista se reconstruye solo cuando cambió algún pedido (versión de cambios) o algún catálogo
+// que aparece en el DTO; mientras tanto las pantallas no generan consultas a la base.
+// Los cambios confirmados en otro nodo llegan con su aviso (versión conocida y CambiosDeOtroNodo).
+@Service
+@RequiredArgsConstructor
+public class SnapshotPantallaService {
+    private static final String CLAVE_COLA_PRIORIDAD = "cola-prioridad";
+
+    private final PedidoRepository pedidoRepository;
+    private final VersionCambiosService versionCambiosService;
+    private final JsonMapper jsonMapper;
+
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    // Se incrementa cuando cambia un catálogo (transportes, zonas, vueltas, grupos) cuyo nombre se muestra en los pedidos
+    private final AtomicLong generacionCatalogos = new AtomicLong();
+
+    // JSON listo para enviar y su ETag fuerte (hash del contenido)
+    public record Snapshot(byte[] json, String etag, long version, long generacion) {
+    }
+
+    public Snapshot obtenerColaPrioridadCarga() {
+        return obtener(CLAVE_COLA_PRIORIDAD, pedidoRepository::findDTOPendientesConOrdenPrioridadCarga);
+    }
+
+    public Snapshot obtenerPorEstado(Pedido.EstadoPedido estado) {
+        // Mismo orden que PedidoService.obtenerPedidosPorEstado
+        if (estado == Pedido.EstadoPedido.REALIZADO) {
+            return obtener(estado.name(), () -> pedidoRepository.findDTOByEstadoOrderByFechaActualizacionDesc(estado));
+        }
+        return obtener(estado.name(), () -> pedidoRepository.findDTOByEstadoOrderByFechaCreacionAsc(estado));
+    }
+
+    // Descartar todas las vistas al confirmar la transacción actual (cambios en catálogos)
+    public void invalidar() {
+        TransaccionUtil.despuesDelCommit(generacionCatalogos::incrementAndGet);
+    }
+
+    @EventListener
+    public void cambiosDeOtroNodo(CambiosDeOtroNodo cambios) {
+        if (cambios.incluye(AreaCluster.CATALOGOS)) {
+            generacionCatalogos.incrementAndGet();
+        }
+    }
+
+    private Snapshot obtener(String clave, Supplier<List<PedidoDTO>> consulta) {
+        Snapshot actual = snapshots.get(clave);
+        if (esVigente(actual)) {
+            return actual;
+        }
+        // Una sola reconstrucción a la vez: las demás pantallas esperan y reciben el mismo resultado
+        synchronized (this) {
+            actual = snapshots.get(clave);
+            if (esVigente(actual)) {
+                return actual;
+            }
+            // Tomar versión y generación antes de consultar: si algo cambia durante la consulta,
+            // la próxima petición vuelve a reconstruir
+            long version = versionCambiosService.versionConocida();
+            long generacion = generacionCatalogos.get();
+            byte[] json = jsonMapper.writeValueAsBytes(consulta.get());
+            Snapshot nuevo = new Snapshot(json, calcularEtag(json), version, generacion);
+            snapshots.put(clave, nuevo);
+            return nuevo;
+        }
+    }
+
+    private boolean esVigente(Snapshot snapshot) {
+        return snapshot != null
+                && snapshot.version() == versionCambiosService.versionConocida()
+                && snapshot.generacion() == generacionCatalogos.get();
+    }
+
+    private static String calcularEtag(byte[] json) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
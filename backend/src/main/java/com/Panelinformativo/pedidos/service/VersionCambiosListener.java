@@ -0,0 +1,20 @@
+package com.Panelinformativo.pedidos.service;
+
+import com.Panelinformativo.pedidos.model.Pedido;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+// Asigna la versión de cambio a cada pedido que se crea o modifica por JPA
+@Component
+@RequiredArgsConstructor
+public class VersionCambiosListener {
+    private final VersionCambiosService versionCambiosService;
+
+    @PrePersist
+    @PreUpdate
+    public void asignarVersion(Pedido pedido) {
+        pedido.setVersionCambio(versionCambiosService.versionDeLaTransaccion());
+    }
+}
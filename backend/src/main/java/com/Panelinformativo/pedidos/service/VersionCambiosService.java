@@ -0,0 +1,166 @@
+package com.Panelinformativo.pedidos.service;
+
+import com.Panelinformativo.common.websocket.AreaCluster;
+import com.Panelinformativo.common.websocket.BusEventos;
+import com.Panelinformativo.common.websocket.CambiosDeOtroNodo;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Versión global y creciente de los cambios de pedidos (altas, modificaciones y bajas).
+// Cada transacción que modifica pedidos recibe una sola versión, compartida por todos sus cambios.
+//
+// Con un solo nodo (websocket.bus=local) la versión se asigna en memoria y se recuerdan las versiones de las
+// transacciones en curso: la confirmada es la anterior a la menor en curso. Nadie espera a nadie.
+//
+// Con varios nodos (websocket.bus=base-datos) sale del contador version_cambios de contadores_pedidos y la fila
+// queda bloqueada hasta que la transacción termina: las versiones se confirman en orden, así que si una versión
+// está confirmada, las anteriores también. Los demás contadores (secuencia de la cola, posiciones) se toman
+// siempre después de éste para que dos transacciones no se esperen mutuamente.
+//
+// Usa JdbcTemplate y no repositorios JPA porque lo invoca el listener de la entidad Pedido.
+@Service
+@RequiredArgsConstructor
+public class VersionCambiosService {
+    // Clave del recurso ligado a la transacción con la versión asignada
+    private static final Object CLAVE_VERSION = new Object();
+    private static final String CONTADOR_VERSION = "version_cambios";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ContadoresPedidosService contadoresPedidosService;
+    private final BusEventos busEventos;
+
+    @Value("${websocket.bus:local}")
+    private String bus;
+
+    // Un solo nodo: última versión asignada y versiones asignadas a transacciones que todavía no terminaron
+    private Long ultimaVersion;
+    private final TreeSet<Long> versionesEnCurso = new TreeSet<>();
+
+    // Varios nodos: mayor versión que este nodo sabe confirmada, sin consultar la base (la de cada transacción
+    // propia al confirmarse y la del contador cuando otro nodo avisa cambios en pedidos)
+    private final AtomicLong versionConocida = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializar() {
+        if (!compartida()) {
+            synchronized (versionesEnCurso) {
+                inicializarSiHaceFalta();
+            }
+            return;
+        }
+        // Una base anterior al contador ya tiene versiones guardadas: se sigue por encima de ellas
+        contadoresPedidosService.elevar(CONTADOR_VERSION, mayorVersionGuardada());
+        conocer(contadoresPedidosService.obtener(CONTADOR_VERSION));
+    }
+
+    // Versión de la transacción actual (se asigna la primera vez que se pide)
+    public long versionDeLaTransaccion() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return versionSinTransaccion();
+        }
+
+        Long version = (Long) TransactionSynchronizationManager.getResource(CLAVE_VERSION);
+        if (version != null) {
+            return version;
+        }
+
+        long nuevaVersion = compartida()
+                ? contadoresPedidosService.incrementar(CONTADOR_VERSION, 1, this::mayorVersionGuardada)
+                : asignarEnMemoria();
+        TransactionSynchronizationManager.bindResource(CLAVE_VERSION, nuevaVersion);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                conocer(nuevaVersion);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(CLAVE_VERSION);
+                synchronized (versionesEnCurso) {
+                    versionesEnCurso.remove(nuevaVersion);
+                }
+            }
+        });
+        busEventos.avisarCambio(AreaCluster.PEDIDOS);
+        return nuevaVersion;
+    }
+
+    // Mayor versión hasta la cual todos los cambios ya están confirmados.
+    // Un cliente que sincronizó hasta esta versión no puede perderse cambios de transacciones en curso.
+    public long versionConfirmada() {
+        if (compartida()) {
+            return contadoresPedidosService.obtener(CONTADOR_VERSION);
+        }
+        synchronized (versionesEnCurso) {
+            inicializarSiHaceFalta();
+            return versionesEnCurso.isEmpty() ? ultimaVersion : versionesEnCurso.first() - 1;
+        }
+    }
+
+    // Como versionConfirmada pero sin consultar la base; con varios nodos puede quedar atrás de la real
+    // por lo que tarda en llegar el aviso de otro nodo
+    public long versionConocida() {
+        return compartida() ? versionConocida.get() : versionConfirmada();
+    }
+
+    @EventListener
+    public void cambiosDeOtroNodo(CambiosDeOtroNodo cambios) {
+        if (cambios.incluye(AreaCluster.PEDIDOS)) {
+            conocer(contadoresPedidosService.obtener(CONTADOR_VERSION));
+        }
+    }
+
+    private long versionSinTransaccion() {
+        if (!compartida()) {
+            synchronized (versionesEnCurso) {
+                inicializarSiHaceFalta();
+                return ++ultimaVersion;
+            }
+        }
+        long version = contadoresPedidosService.incrementar(CONTADOR_VERSION, 1, this::mayorVersionGuardada);
+        busEventos.avisarCambio(AreaCluster.PEDIDOS);
+        conocer(version);
+        return version;
+    }
+
+    private long asignarEnMemoria() {
+        synchronized (versionesEnCurso) {
+            inicializarSiHaceFalta();
+            long nuevaVersion = ++ultimaVersion;
+            versionesEnCurso.add(nuevaVersion);
+            return nuevaVersion;
+        }
+    }
+
+    private void conocer(long version) {
+        versionConocida.accumulateAndGet(version, Math::max);
+    }
+
+    // Solo con un solo nodo; se llama con el lock de versionesEnCurso tomado
+    private void inicializarSiHaceFalta() {
+        if (ultimaVersion == null) {
+            ultimaVersion = mayorVersionGuardada();
+        }
+    }
+
+    private long mayorVersionGuardada() {
+        Long maxPedidos = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(version_cambio), 0) FROM pedidos", Long.class);
+        Long maxEliminados = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(version_cambio), 0) FROM pedidos_eliminados", Long.class);
+        return Math.max(maxPedidos, maxEliminados);
+    }
+
+    // La versión se comparte entre nodos solo cuando el bus releva los eventos por la base
+    private boolean compartida() {
+        return "base-datos".equals(bus);
+    }
+}
@@ -1,9 +1,15 @@
 package com.Panelinformativo.transportistas.service;
 
+import com.Panelinformativo.common.cache.CacheCatalogo;
+import com.Panelinformativo.common.websocket.AreaCluster;
+import com.Panelinformativo.common.websocket.BusEventos;
+import com.Panelinformativo.common.websocket.CambiosDeOtroNodo;
+import com.Panelinformativo.pedidos.service.SnapshotPantallaService;
 import com.Panelinformativo.transportistas.dto.TransportistaDTO;
 import com.Panelinformativo.transportistas.model.Transportista;
 import com.Panelinformativo.transportistas.repository.TransportistaRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -15,6 +21,10 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class TransportistaService {
     private final TransportistaRepository transportistaRepository;
+    private final SnapshotPantallaService snapshotPantallaService;
+    private final BusEventos busEventos;
+    // Caché por nombre normalizado para resolver el catálogo sin consultar la base en cada planilla
+    private final CacheCatalogo cacheTransportistas = new CacheCatalogo();
 
     @Transactional
     public TransportistaDTO crearObtenerTransportista(String nombre) {
@@ -24,6 +34,18 @@ public class TransportistaService {
 
     @Transactional
     public Transportista crearObtenerTransportistaEntity(String nombre) {
+        Long idEnCache = cacheTransportistas.obtener(nombre);
+        if (idEnCache != null) {
+            return transportistaRepository.getReferenceById(idEnCache);
+        }
+
+        long generacion = cacheTransportistas.generacion();
+        Transportista transportista = buscarOCrearTransportista(nombre);
+        cacheTransportistas.guardar(nombre, transportista.getId(), generacion);
+        return transportista;
+    }
+
+    private Transportista buscarOCrearTransportista(String nombre) {
         // Buscar si existe (case insensitive)
         Optional<Transportista> transportistaExistente = transportistaRepository.findByNombreIgnoreCase(nombre.trim());
         
@@ -101,6 +123,9 @@ public class TransportistaService {
         }
 
         transportista = transportistaRepository.save(transportista);
+        // El nombre se muestra en los pedidos de las pantallas
+        snapshotPantallaService.invalidar();
+        invalidarCache();
         return convertirADTO(transportista);
     }
 
@@ -113,6 +138,20 @@ public class TransportistaService {
         // Esto evita problemas de integridad referencial con pedidos asociados
         transportista.setActivo(false);
         transportistaRepository.save(transportista);
+        invalidarCache();
+    }
+
+    // Descarta la caché en este nodo y avisa a los demás para que descarten la suya
+    private void invalidarCache() {
+        cacheTransportistas.invalidar();
+        busEventos.avisarCambio(AreaCluster.CATALOGOS);
+    }
+
+    @EventListener
+    public void cambiosDeOtroNodo(CambiosDeOtroNodo cambios) {
+        if (cambios.incluye(AreaCluster.CATALOGOS)) {
+            cacheTransportistas.invalidar();
+        }
     }
 
     private TransportistaDTO convertirADTO(Transportista transportista) {
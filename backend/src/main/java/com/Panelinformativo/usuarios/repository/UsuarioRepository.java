@@ -17,5 +17,9 @@ public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
     
     @Query("SELECT u FROM Usuario u WHERE u.rol.nombre = :tipoRol")
     List<Usuario> findByRolNombre(@Param("tipoRol") Rol.TipoRol tipoRol);
+    
+    // Todos los usuarios con su rol en una sola consulta (carga del directorio en memoria)
+    @Query("SELECT u FROM Usuario u JOIN FETCH u.rol ORDER BY u.id ASC")
+    List<Usuario> findAllConRol();
 }
 
@@ -0,0 +1,133 @@
+package com.Panelinformativo.usuarios.service;
+
+import com.Panelinformativo.common.util.TransaccionUtil;
+import com.Panelinformativo.common.websocket.AreaCluster;
+import com.Panelinformativo.common.websocket.BusEventos;
+import com.Panelinformativo.common.websocket.CambiosDeOtroNodo;
+import com.Panelinformativo.usuarios.model.Rol;
+import com.Panelinformativo.usuarios.model.Usuario;
+import com.Panelinformativo.usuarios.repository.UsuarioRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+// Directorio de usuarios en memoria, indexado por username, id y rol.
+// Se carga completo con una consulta (son pocos usuarios) y UsuarioService lo invalida en cada alta,
+// cambio de estado o baja (en todos los nodos). Entrega copias para que nadie modifique las instancias compartidas.
+@Component
+@RequiredArgsConstructor
+public class DirectorioUsuarios {
+    private final UsuarioRepository usuarioRepository;
+    private final BusEventos busEventos;
+
+    private volatile Indices indices;
+    // Aumenta con cada invalidación; una carga que empezó antes de la última invalidación no se publica.
+    // Se lee y modifica junto con 'indices' bajo 'bloqueoPublicacion' (la carga en sí no lo retiene)
+    private final Object bloqueoPublicacion = new Object();
+    private long generacion;
+
+    private record Indices(Map<String, Usuario> porUsername,
+                           Map<Long, Usuario> porId,
+                           Map<Rol.TipoRol, List<Usuario>> porRol,
+                           List<Usuario> todos,
+                           Long idPrimerAdmin) {
+    }
+
+    public Optional<Usuario> buscarPorUsername(String username) {
+        return Optional.ofNullable(obtenerIndices().porUsername().get(username)).map(DirectorioUsuarios::copiar);
+    }
+
+    public Optional<Usuario> buscarPorId(Long id) {
+        return Optional.ofNullable(obtenerIndices().porId().get(id)).map(DirectorioUsuarios::copiar);
+    }
+
+    public List<Usuario> obtenerPorRol(Rol.TipoRol tipoRol) {
+        return copiar(obtenerIndices().porRol().getOrDefault(tipoRol, Collections.emptyList()));
+    }
+
+    public List<Usuario> obtenerTodos() {
+        return copiar(obtenerIndices().todos());
+    }
+
+    // Admin principal más antiguo (menor id)
+    public Long obtenerIdPrimerAdmin() {
+        return obtenerIndices().idPrimerAdmin();
+    }
+
+    // Se descarta en el momento y otra vez al confirmar; lo que se esté cargando con datos previos al commit
+    // se descarta al terminar
+    public void invalidar() {
+        descartar();
+        TransaccionUtil.despuesDelCommit(this::descartar);
+        busEventos.avisarCambio(AreaCluster.USUARIOS);
+    }
+
+    @EventListener
+    public void cambiosDeOtroNodo(CambiosDeOtroNodo cambios) {
+        if (cambios.incluye(AreaCluster.USUARIOS)) {
+            descartar();
+        }
+    }
+
+    private void descartar() {
+        synchronized (bloqueoPublicacion) {
+            generacion++;
+            indices = null;
+        }
+    }
+
+    private Indices obtenerIndices() {
+        Indices actuales = indices;
+        if (actuales != null) {
+            return actuales;
+        }
+        synchronized (this) {
+            long generacionCarga;
+            synchronized (bloqueoPublicacion) {
+                if (indices != null) {
+                    return indices;
+                }
+                generacionCarga = generacion;
+            }
+            Indices cargados = cargar();
+            synchronized (bloqueoPublicacion) {
+                if (generacion == generacionCarga) {
+                    indices = cargados;
+                }
+            }
+            return cargados;
+        }
+    }
+
+    private Indices cargar() {
+        List<Usuario> todos = usuarioRepository.findAllConRol();
+
+        Map<String, Usuario> porUsername = new HashMap<>();
+        Map<Long, Usuario> porId = new HashMap<>();
+        Map<Rol.TipoRol, List<Usuario>> porRol = new EnumMap<>(Rol.TipoRol.class);
+        for (Usuario usuario : todos) {
+            porUsername.put(usuario.getUsername(), usuario);
+            porId.put(usuario.getId(), usuario);
+            porRol.computeIfAbsent(usuario.getRol().getNombre(), r -> new ArrayList<>()).add(usuario);
+        }
+
+        Long idPrimerAdmin = porRol.getOrDefault(Rol.TipoRol.ADMIN_PRINCIPAL, Collections.emptyList()).stream()
+                .map(Usuario::getId)
+                .min(Long::compare)
+                .orElse(null);
+
+        return new Indices(porUsername, porId, porRol, todos, idPrimerAdmin);
+    }
+
+    private static List<Usuario> copiar(List<Usuario> usuarios) {
+        return usuarios.stream().map(DirectorioUsuarios::copiar).collect(Collectors.toList());
+    }
+
+    private static Usuario copiar(Usuario usuario) {
+        return new Usuario(usuario.getId(), usuario.getUsername(), usuario.getPassword(),
+                usuario.getNombreCompleto(), usuario.getActivo(), usuario.getRol());
+    }
+}
@@ -20,11 +20,12 @@ public class UsuarioService implements UserDetailsService {
     private final UsuarioRepository usuarioRepository;
     private final RolRepository rolRepository;
     private final PasswordEncoder passwordEncoder;
+    private final DirectorioUsuarios directorioUsuarios;
 
+    // Se resuelve desde el directorio en memoria: no consulta la base en cada petición autenticada
     @Override
-    @Transactional
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        Usuario usuario = usuarioRepository.findByUsername(username)
+        Usuario usuario = directorioUsuarios.buscarPorUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("Usuario no encontrado: " + username));
         return usuario;
     }
@@ -49,7 +50,9 @@ public class UsuarioService implements UserDetailsService {
         admin.setRol(rolAdmin);
         admin.setActivo(true);
 
-        return usuarioRepository.save(admin);
+        admin = usuarioRepository.save(admin);
+        directorioUsuarios.invalidar();
+        return admin;
     }
 
     // Método deprecado - usar crearUsuarioConRol en su lugar
@@ -75,7 +78,9 @@ public class UsuarioService implements UserDetailsService {
         usuario.setRol(rolDeposito);
         usuario.setActivo(true);
 
-        return usuarioRepository.save(usuario);
+        usuario = usuarioRepository.save(usuario);
+        directorioUsuarios.invalidar();
+        return usuario;
     }
 
     @Transactional
@@ -98,16 +103,14 @@ public class UsuarioService implements UserDetailsService {
         usuario.setRol(rol);
         usuario.setActivo(true);
 
-        return usuarioRepository.save(usuario);
+        usuario = usuarioRepository.save(usuario);
+        directorioUsuarios.invalidar();
+        return usuario;
     }
 
     public Long obtenerIdPrimerAdmin() {
         // Obtener el admin más antiguo (menor ID) con rol ADMIN_PRINCIPAL
-        return usuarioRepository.findAll().stream()
-                .filter(u -> u.getRol().getNombre() == Rol.TipoRol.ADMIN_PRINCIPAL)
-                .min((u1, u2) -> Long.compare(u1.getId(), u2.getId()))
-                .map(Usuario::getId)
-                .orElse(null);
+        return directorioUsuarios.obtenerIdPrimerAdmin();
     }
 
     public boolean existeUsuario() {
@@ -115,11 +118,11 @@ public class UsuarioService implements UserDetailsService {
     }
 
     public List<Usuario> obtenerTodosLosUsuarios() {
-        return usuarioRepository.findAll();
+        return directorioUsuarios.obtenerTodos();
     }
     
     public List<Usuario> obtenerUsuariosPorRol(Rol.TipoRol tipoRol) {
-        return usuarioRepository.findByRolNombre(tipoRol);
+        return directorioUsuarios.obtenerPorRol(tipoRol);
     }
 
     @Transactional
@@ -134,7 +137,9 @@ public class UsuarioService implements UserDetailsService {
         }
         
         usuario.setActivo(activo);
-        return usuarioRepository.save(usuario);
+        usuario = usuarioRepository.save(usuario);
+        directorioUsuarios.invalidar();
+        return usuario;
     }
 
     @Transactional
@@ -143,6 +148,7 @@ public class UsuarioService implements UserDetailsService {
             throw new IllegalArgumentException("Usuario no encontrado");
         }
         usuarioRepository.deleteById(id);
+        directorioUsuarios.invalidar();
     }
 }
 
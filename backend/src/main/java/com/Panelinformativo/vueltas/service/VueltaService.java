@@ -1,9 +1,15 @@
 package com.Panelinformativo.vueltas.service;
 
+import com.Panelinformativo.common.cache.CacheCatalogo;
+import com.Panelinformativo.common.websocket.AreaCluster;
+import com.Panelinformativo.common.websocket.BusEventos;
+import com.Panelinformativo.common.websocket.CambiosDeOtroNodo;
+import com.Panelinformativo.pedidos.service.SnapshotPantallaService;
 import com.Panelinformativo.vueltas.dto.VueltaDTO;
 import com.Panelinformativo.vueltas.model.Vuelta;
 import com.Panelinformativo.vueltas.repository.VueltaRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -15,6 +21,10 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class VueltaService {
     private final VueltaRepository vueltaRepository;
+    private final SnapshotPantallaService snapshotPantallaService;
+    private final BusEventos busEventos;
+    // Caché por nombre normalizado para resolver el catálogo sin consultar la base en cada planilla
+    private final CacheCatalogo cacheVueltas = new CacheCatalogo();
 
     @Transactional
     public VueltaDTO crearObtenerVuelta(String nombre) {
@@ -24,6 +34,18 @@ public class VueltaService {
 
     @Transactional
     public Vuelta crearObtenerVueltaEntity(String nombre) {
+        Long idEnCache = cacheVueltas.obtener(nombre);
+        if (idEnCache != null) {
+            return vueltaRepository.getReferenceById(idEnCache);
+        }
+
+        long generacion = cacheVueltas.generacion();
+        Vuelta vuelta = buscarOCrearVuelta(nombre);
+        cacheVueltas.guardar(nombre, vuelta.getId(), generacion);
+        return vuelta;
+    }
+
+    private Vuelta buscarOCrearVuelta(String nombre) {
         // Buscar si existe (case insensitive)
         Optional<Vuelta> vueltaExistente = vueltaRepository.findByNombreIgnoreCase(nombre.trim());
         
@@ -87,6 +109,9 @@ public class VueltaService {
         }
 
         vuelta = vueltaRepository.save(vuelta);
+        // El nombre se muestra en los pedidos de las pantallas
+        snapshotPantallaService.invalidar();
+        invalidarCache();
         return convertirADTO(vuelta);
     }
 
@@ -98,6 +123,20 @@ public class VueltaService {
         // En lugar de eliminar físicamente, desactivar la vuelta
         vuelta.setActivo(false);
         vueltaRepository.save(vuelta);
+        invalidarCache();
+    }
+
+    // Descarta la caché en este nodo y avisa a los demás para que descarten la suya
+    private void invalidarCache() {
+        cacheVueltas.invalidar();
+        busEventos.avisarCambio(AreaCluster.CATALOGOS);
+    }
+
+    @EventListener
+    public void cambiosDeOtroNodo(CambiosDeOtroNodo cambios) {
+        if (cambios.incluye(AreaCluster.CATALOGOS)) {
+            cacheVueltas.invalidar();
+        }
     }
 
     private VueltaDTO convertirADTO(Vuelta vuelta) {
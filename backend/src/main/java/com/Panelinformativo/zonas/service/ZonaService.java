@@ -1,9 +1,15 @@
 package com.Panelinformativo.zonas.service;
 
+import com.Panelinformativo.common.cache.CacheCatalogo;
+import com.Panelinformativo.common.websocket.AreaCluster;
+import com.Panelinformativo.common.websocket.BusEventos;
+import com.Panelinformativo.common.websocket.CambiosDeOtroNodo;
+import com.Panelinformativo.pedidos.service.SnapshotPantallaService;
 import com.Panelinformativo.zonas.dto.ZonaDTO;
 import com.Panelinformativo.zonas.model.Zona;
 import com.Panelinformativo.zonas.repository.ZonaRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -15,6 +21,10 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ZonaService {
     private final ZonaRepository zonaRepository;
+    private final SnapshotPantallaService snapshotPantallaService;
+    private final BusEventos busEventos;
+    // Caché por nombre normalizado para resolver el catálogo sin consultar la base en cada planilla
+    private final CacheCatalogo cacheZonas = new CacheCatalogo();
 
     @Transactional
     public ZonaDTO crearObtenerZona(String nombre) {
@@ -24,6 +34,18 @@ public class ZonaService {
 
     @Transactional
     public Zona crearObtenerZonaEntity(String nombre) {
+        Long idEnCache = cacheZonas.obtener(nombre);
+        if (idEnCache != null) {
+            return zonaRepository.getReferenceById(idEnCache);
+        }
+
+        long generacion = cacheZonas.generacion();
+        Zona zona = buscarOCrearZona(nombre);
+        cacheZonas.guardar(nombre, zona.getId(), generacion);
+        return zona;
+    }
+
+    private Zona buscarOCrearZona(String nombre) {
         // Buscar si existe (case insensitive)
         Optional<Zona> zonaExistente = zonaRepository.findByNombreIgnoreCase(nombre.trim());
         
@@ -87,6 +109,9 @@ public class ZonaService {
         }
 
         zona = zonaRepository.save(zona);
+        // El nombre se muestra en los pedidos de las pantallas
+        snapshotPantallaService.invalidar();
+        invalidarCache();
         return convertirADTO(zona);
     }
 
@@ -98,6 +123,20 @@ public class ZonaService {
         // En lugar de eliminar físicamente, desactivar la zona
         zona.setActivo(false);
         zonaRepository.save(zona);
+        invalidarCache();
+    }
+
+    // Descarta la caché en este nodo y avisa a los demás para que descarten la suya
+    private void invalidarCache() {
+        cacheZonas.invalidar();
+        busEventos.avisarCambio(AreaCluster.CATALOGOS);
+    }
+
+    @EventListener
+    public void cambiosDeOtroNodo(CambiosDeOtroNodo cambios) {
+        if (cambios.incluye(AreaCluster.CATALOGOS)) {
+            cacheZonas.invalidar();
+        }
     }
 
     private ZonaDTO convertirADTO(Zona zona) {
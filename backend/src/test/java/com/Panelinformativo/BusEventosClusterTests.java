@@ -0,0 +1,191 @@
+package com.Panelinformativo;
+
+import com.Panelinformativo.common.websocket.WebSocketService;
+import com.Panelinformativo.pedidos.service.PosicionesColaPrioridadService;
+import com.Panelinformativo.pedidos.service.ResumenVueltasService;
+import com.Panelinformativo.pedidos.service.VersionCambiosService;
+import com.Panelinformativo.transportistas.model.Transportista;
+import com.Panelinformativo.transportistas.repository.TransportistaRepository;
+import com.Panelinformativo.transportistas.service.TransportistaService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Levanta dos nodos del backend sobre la misma base (H2 en memoria, compartida dentro de la JVM)
+// con websocket.bus=base-datos y verifica que un cliente STOMP conectado a un nodo recibe
+// lo que se publicó en el otro, una sola vez; también que los contadores (versiones, posiciones) son
+// comunes, que los avisos de cambios descartan lo que el otro nodo guarda en memoria y que los cambios
+// relevados se aplican en el otro nodo sin reconstruir.
+class BusEventosClusterTests {
+    private static final String DESTINO = "/topic/pedidos/eliminado";
+
+    private static ConfigurableApplicationContext nodoA;
+    private static ConfigurableApplicationContext nodoB;
+    private static final List<StompSession> sesiones = new ArrayList<>();
+
+    @BeforeAll
+    static void levantarNodos() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        String base = "jdbc:h2:mem:cluster-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        nodoA = iniciarNodo(base);
+        nodoB = iniciarNodo(base);
+    }
+
+    @AfterAll
+    static void detenerNodos() {
+        sesiones.forEach(StompSession::disconnect);
+        nodoB.close();
+        nodoA.close();
+    }
+
+    @Test
+    void unCambioEnUnNodoLlegaALosClientesDelOtro() throws Exception {
+        BlockingQueue<String> recibidosEnA = suscribir(nodoA);
+        BlockingQueue<String> recibidosEnB = suscribir(nodoB);
+
+        nodoA.getBean(WebSocketService.class).notificarEliminacionPedido(42L);
+
+        assertEquals("42", recibidosEnA.poll(5, TimeUnit.SECONDS));
+        assertEquals("42", recibidosEnB.poll(5, TimeUnit.SECONDS));
+        // El nodo que publicó no vuelve a entregar su propio evento al leer la tabla, y el otro lo entrega una vez
+        assertNull(recibidosEnA.poll(500, TimeUnit.MILLISECONDS));
+        assertNull(recibidosEnB.poll(100, TimeUnit.MILLISECONDS));
+
+        nodoB.getBean(WebSocketService.class).notificarEliminacionPedido(7L);
+        assertEquals("7", recibidosEnA.poll(5, TimeUnit.SECONDS));
+        assertEquals("7", recibidosEnB.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void losNodosCompartenLosContadoresYSeEnteranDeLosCambiosDelOtro() throws Exception {
+        VersionCambiosService versionesA = nodoA.getBean(VersionCambiosService.class);
+        VersionCambiosService versionesB = nodoB.getBean(VersionCambiosService.class);
+        long versionA = enTransaccion(nodoA, versionesA::versionDeLaTransaccion);
+        long versionB = enTransaccion(nodoB, versionesB::versionDeLaTransaccion);
+        assertEquals(versionA + 1, versionB);
+        assertEquals(versionB, versionesA.versionConfirmada());
+        // Cada nodo conoce la versión del otro por su aviso, sin consultar la base en cada pantalla
+        assertTrue(esperar(() -> versionesA.versionConocida() == versionB && versionesB.versionConocida() == versionB));
+
+        Integer posicionA = nodoA.getBean(PosicionesColaPrioridadService.class).siguientePosicion();
+        Integer posicionB = nodoB.getBean(PosicionesColaPrioridadService.class).siguientePosicion();
+        assertEquals(posicionA + PosicionesColaPrioridadService.ESPACIO_POSICIONES, posicionB);
+
+        // B guarda el transportista en su caché; A lo desactiva y B lo descarta: al volver a pedirlo lo reactiva
+        TransportistaService transportistasB = nodoB.getBean(TransportistaService.class);
+        Long id = enTransaccion(nodoB, () -> transportistasB.crearObtenerTransportistaEntity("Expreso Norte").getId());
+        nodoA.getBean(TransportistaService.class).eliminarTransportista(id);
+        TransportistaRepository repositorio = nodoA.getBean(TransportistaRepository.class);
+        assertTrue(esperar(() -> {
+            transportistasB.crearObtenerTransportistaEntity("Expreso Norte");
+            return repositorio.findById(id).map(Transportista::getActivo).orElse(false);
+        }));
+    }
+
+    @Test
+    void unCambioDelResumenDeVueltasSeAplicaEnElOtroNodo() throws Exception {
+        long version = enTransaccion(nodoA, nodoA.getBean(VersionCambiosService.class)::versionDeLaTransaccion);
+        LocalDate fecha = LocalDate.of(2026, 3, 2);
+
+        nodoA.getBean(ResumenVueltasService.class).registrar(-1L, version, -10L, -20L, fecha);
+
+        ResumenVueltasService resumenB = nodoB.getBean(ResumenVueltasService.class);
+        assertTrue(esperar(() -> resumenB.obtenerVueltasPorFecha(-10L, null, null)
+                .getOrDefault(fecha, Set.of()).contains(-20L)));
+    }
+
+    private static <T> T enTransaccion(ConfigurableApplicationContext nodo, Supplier<T> accion) {
+        return new TransactionTemplate(nodo.getBean(PlatformTransactionManager.class)).execute(estado -> accion.get());
+    }
+
+    private static boolean esperar(BooleanSupplier condicion) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5_000;
+        while (!condicion.getAsBoolean()) {
+            if (System.currentTimeMillis() > limite) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    private static ConfigurableApplicationContext iniciarNodo(String base) {
+        // Como argumentos de línea de comandos para que tengan prioridad sobre el application.properties
+        // de los tests (con propiedades por defecto los nodos usarían la base y el create-drop de los demás tests)
+        return new SpringApplicationBuilder(ProyectoPanelInformativoApplication.class)
+                .run("--server.port=0",
+                        "--spring.datasource.url=" + base,
+                        // El primer nodo crea las tablas y el segundo las reutiliza
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        "--websocket.bus=base-datos",
+                        "--websocket.bus.intervalo-ms=50");
+    }
+
+    private static BlockingQueue<String> suscribir(ConfigurableApplicationContext nodo) throws Exception {
+        String puerto = nodo.getEnvironment().getProperty("local.server.port");
+        WebSocketStompClient cliente = new WebSocketStompClient(new StandardWebSocketClient());
+        StompSession sesion = cliente.connectAsync("ws://localhost:" + puerto + "/ws/websocket", new StompSessionHandlerAdapter() {})
+                .get(5, TimeUnit.SECONDS);
+        sesiones.add(sesion);
+
+        BlockingQueue<String> recibidos = new LinkedBlockingQueue<>();
+        sesion.subscribe(DESTINO, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                recibidos.add(new String((byte[]) payload, StandardCharsets.UTF_8));
+            }
+        });
+        esperarSuscripcion(nodo);
+        return recibidos;
+    }
+
+    // La suscripción se procesa de forma asíncrona: esperar a que el broker del nodo la registre
+    private static void esperarSuscripcion(ConfigurableApplicationContext nodo) throws InterruptedException {
+        SimpleBrokerMessageHandler broker = nodo.getBean(SimpleBrokerMessageHandler.class);
+        SimpMessageHeaderAccessor encabezados = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        encabezados.setDestination(DESTINO);
+        Message<byte[]> mensaje = MessageBuilder.createMessage(new byte[0], encabezados.getMessageHeaders());
+        long limite = System.currentTimeMillis() + 5_000;
+        while (broker.getSubscriptionRegistry().findSubscriptions(mensaje).isEmpty()
+                && System.currentTimeMillis() < limite) {
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.Panelinformativo;
+
+import com.Panelinformativo.common.websocket.ColasSalidaWebSocket;
+import com.Panelinformativo.common.websocket.DeltasPedidos;
+import com.Panelinformativo.common.websocket.MetricasSalidaWebSocketDTO;
+import com.Panelinformativo.pedidos.dto.PedidoDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Un cliente lento recibe solo el último estado de cada pedido y, si se atrasa demasiado, se lo resincroniza
+class ColasSalidaWebSocketTests {
+    private static final String SESION = "s1";
+
+    private final JsonMapper jsonMapper = new JsonMapper();
+    private final DeltasPedidos deltasPedidos = new DeltasPedidos(jsonMapper, 100);
+    private final List<Message<?>> liberados = new ArrayList<>();
+    private final MessageChannel canal = (mensaje, timeout) -> liberados.add(mensaje);
+
+    @Test
+    void losDeltasPendientesDelMismoPedidoSeCombinan() {
+        ColasSalidaWebSocket colas = new ColasSalidaWebSocket(jsonMapper, deltasPedidos, 1024 * 1024, 60_000);
+        Message<byte[]> enCamino = mensaje("/topic/pedidos", "{\"id\":1,\"version\":5,\"versionBase\":null,\"cambios\":{}}");
+        assertSame(enCamino, colas.preSend(enCamino, canal));
+
+        assertNull(colas.preSend(mensaje("/topic/pedidos", "{\"id\":1,\"version\":6,\"versionBase\":5,\"cambios\":{\"estado\":\"EN_PREPARACION\"}}"), canal));
+        assertNull(colas.preSend(mensaje("/topic/pedidos", "{\"id\":2,\"version\":3,\"versionBase\":2,\"cambios\":{\"cantidad\":4}}"), canal));
+        assertNull(colas.preSend(mensaje("/topic/pedidos", "{\"id\":1,\"version\":7,\"versionBase\":6,\"cambios\":{\"etapaPreparacion\":\"CONTROL\"}}"), canal));
+        assertNull(colas.preSend(mensaje("/topic/pedidos/cola", "{\"secuencia\":1}"), canal));
+        assertNull(colas.preSend(mensaje("/topic/pedidos/cola", "{\"secuencia\":2}"), canal));
+
+        // Cada envío terminado libera el siguiente pendiente, en el orden en que llegó el primero de su clave
+        colas.afterMessageHandled(enCamino, canal, null, null);
+        JsonNode pedido1 = jsonMapper.readTree((byte[]) liberados.get(0).getPayload());
+        assertEquals(5L, pedido1.get("versionBase").asLong());
+        assertEquals(7L, pedido1.get("version").asLong());
+        assertEquals("EN_PREPARACION", pedido1.get("cambios").get("estado").asString());
+        assertEquals("CONTROL", pedido1.get("cambios").get("etapaPreparacion").asString());
+        for (int i = 0; i < 2; i++) {
+            Message<?> liberado = liberados.getLast();
+            assertSame(liberado, colas.preSend(liberado, canal)); // Ya tiene su turno: no vuelve a la cola
+            colas.afterMessageHandled(liberado, canal, null, null);
+        }
+        assertEquals(3, liberados.size());
+        assertEquals(2L, jsonMapper.readTree((byte[]) liberados.get(1).getPayload()).get("id").asLong());
+        assertEquals("{\"secuencia\":2}", new String((byte[]) liberados.get(2).getPayload(), StandardCharsets.UTF_8));
+
+        MetricasSalidaWebSocketDTO metricas = colas.obtenerMetricas();
+        assertEquals(5, metricas.getEncolados());
+        assertEquals(2, metricas.getConflados());
+        assertEquals(0, metricas.getMensajesPendientes());
+    }
+
+    @Test
+    void losDeltasPendientesNoContiguosSeReemplazanPorElPedidoCompleto() {
+        PedidoDTO publicado = new PedidoDTO();
+        publicado.setId(1L);
+        publicado.setNumeroPlanilla("PL-000123");
+        publicado.setCantidad(4);
+        publicado.setVersionCambio(8L);
+        deltasPedidos.calcular(publicado);
+
+        ColasSalidaWebSocket colas = new ColasSalidaWebSocket(jsonMapper, deltasPedidos, 1024 * 1024, 60_000);
+        Message<byte[]> enCamino = mensaje("/topic/pedidos", "{\"id\":1,\"version\":5,\"versionBase\":null,\"cambios\":{}}");
+        colas.preSend(enCamino, canal);
+        assertNull(colas.preSend(mensaje("/topic/pedidos", "{\"id\":1,\"version\":6,\"versionBase\":5,\"cambios\":{\"cantidad\":3}}"), canal));
+        // Falta la versión 7: combinarlos dejaría al cliente con los cambios de la 7 sin aplicar
+        assertNull(colas.preSend(mensaje("/topic/pedidos", "{\"id\":1,\"version\":8,\"versionBase\":7,\"cambios\":{\"cantidad\":4}}"), canal));
+
+        colas.afterMessageHandled(enCamino, canal, null, null);
+        JsonNode pedido1 = jsonMapper.readTree((byte[]) liberados.get(0).getPayload());
+        assertTrue(pedido1.get("versionBase").isNull());
+        assertEquals(8L, pedido1.get("version").asLong());
+        assertEquals("PL-000123", pedido1.get("cambios").get("numeroPlanilla").asString());
+        assertEquals(4, pedido1.get("cambios").get("cantidad").asInt());
+    }
+
+    @Test
+    void unaSesionQueSuperaElLimiteDeBytesSeResincroniza() {
+        ColasSalidaWebSocket colas = new ColasSalidaWebSocket(jsonMapper, deltasPedidos, 100, 60_000);
+        Message<byte[]> enCamino = mensaje("/topic/mensajes", "{\"id\":1}");
+        colas.preSend(enCamino, canal);
+        String texto = "{\"texto\":\"" + "x".repeat(60) + "\"}";
+        assertNull(colas.preSend(mensaje("/topic/mensajes", texto), canal));
+        assertNull(colas.preSend(mensaje("/topic/mensajes", texto), canal));
+
+        assertEquals(1, colas.obtenerMetricas().getResincronizaciones());
+        assertEquals(0, colas.obtenerMetricas().getMensajesPendientes());
+        colas.afterMessageHandled(enCamino, canal, null, null);
+        assertEquals(0, liberados.size());
+    }
+
+    private Message<byte[]> mensaje(String destino, String json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(SESION);
+        accessor.setDestination(destino);
+        return MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,407 @@
+package com.Panelinformativo;
+
+import com.Panelinformativo.mensajes.dto.MensajeCreateDTO;
+import com.Panelinformativo.mensajes.dto.MensajeDTO;
+import com.Panelinformativo.mensajes.repository.MensajeRepository;
+import com.Panelinformativo.mensajes.service.ContadoresNoLeidosService;
+import com.Panelinformativo.mensajes.service.MensajeService;
+import com.Panelinformativo.mensajes.service.PurgaDiariaMensajes;
+import com.Panelinformativo.pedidos.dto.DuracionTramoDTO;
+import com.Panelinformativo.pedidos.dto.PedidoCreateDTO;
+import com.Panelinformativo.pedidos.dto.PedidoDTO;
+import com.Panelinformativo.pedidos.model.Pedido;
+import com.Panelinformativo.pedidos.model.PedidoArchivado;
+import com.Panelinformativo.pedidos.repository.PedidoArchivadoRepository;
+import com.Panelinformativo.pedidos.repository.PedidoRepository;
+import com.Panelinformativo.pedidos.service.AnaliticaTramosService;
+import com.Panelinformativo.pedidos.service.PedidoService;
+import com.Panelinformativo.pedidos.service.ResumenVueltasService;
+import com.Panelinformativo.usuarios.model.Rol;
+import com.Panelinformativo.usuarios.model.Usuario;
+import com.Panelinformativo.usuarios.service.UsuarioService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Verifica cuántas sentencias SQL emite cada método de servicio, para detectar
+// regresiones de carga (N+1, relaciones EAGER, lecturas innecesarias).
+// Se cuentan en el DataSource y no con las estadísticas de Hibernate, que no ven las de JdbcTemplate.
+@SpringBootTest
+class ConteoConsultasSqlTests {
+
+    // Solo las sentencias del hilo que ejecuta la acción medida (no las de tareas en segundo plano)
+    private static final ThreadLocal<long[]> SENTENCIAS = new ThreadLocal<>();
+
+    @TestConfiguration
+    static class ConteoSentencias {
+        @Bean
+        static BeanPostProcessor contarSentenciasDelDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String nombre) {
+                    return bean instanceof DataSource dataSource
+                            ? envolver(dataSource, DataSource.class) : bean;
+                }
+            };
+        }
+
+        // Cada prepareStatement/prepareCall es una sentencia; de un Statement simple, cada execute
+        private static <T> T envolver(T destino, Class<T> tipo) {
+            return tipo.cast(Proxy.newProxyInstance(tipo.getClassLoader(), new Class<?>[]{tipo}, (proxy, metodo, args) -> {
+                String nombre = metodo.getName();
+                if (tipo == Connection.class && (nombre.equals("prepareStatement") || nombre.equals("prepareCall"))
+                        || tipo == Statement.class && nombre.startsWith("execute")) {
+                    contar();
+                }
+                Object resultado = invocar(destino, metodo, args);
+                if (tipo == DataSource.class && nombre.equals("getConnection")) {
+                    return envolver((Connection) resultado, Connection.class);
+                }
+                if (tipo == Connection.class && nombre.equals("createStatement")) {
+                    return envolver((Statement) resultado, Statement.class);
+                }
+                return resultado;
+            }));
+        }
+
+        private static Object invocar(Object destino, Method metodo, Object[] args) throws Throwable {
+            try {
+                return metodo.invoke(destino, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private static void contar() {
+            long[] contador = SENTENCIAS.get();
+            if (contador != null) {
+                contador[0]++;
+            }
+        }
+    }
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private PedidoArchivadoRepository pedidoArchivadoRepository;
+
+    @Autowired
+    private ResumenVueltasService resumenVueltasService;
+
+    @Autowired
+    private AnaliticaTramosService analiticaTramosService;
+
+    @Autowired
+    private MensajeService mensajeService;
+
+    @Autowired
+    private MensajeRepository mensajeRepository;
+
+    @Autowired
+    private ContadoresNoLeidosService contadoresNoLeidosService;
+
+    @Autowired
+    private PurgaDiariaMensajes purgaDiariaMensajes;
+
+    @Autowired
+    private UsuarioService usuarioService;
+
+    private Usuario admin;
+    private Usuario deposito;
+    private String sufijo;
+
+    @BeforeEach
+    void preparar() {
+        sufijo = UUID.randomUUID().toString().substring(0, 8);
+        admin = usuarioService.crearUsuarioConRol("admin-" + sufijo, "clave", "Admin " + sufijo, Rol.TipoRol.ADMIN_PRINCIPAL);
+        deposito = usuarioService.crearUsuarioConRol("deposito-" + sufijo, "clave", "Deposito " + sufijo, Rol.TipoRol.ADMIN_DEPOSITO);
+    }
+
+    @AfterEach
+    void limpiar() {
+        pedidoRepository.deleteAll();
+        pedidoArchivadoRepository.deleteAll();
+        mensajeRepository.deleteAll();
+        // Los mensajes se borran sin pasar por el servicio: volver a contar desde la base
+        contadoresNoLeidosService.reconciliar();
+    }
+
+    @Test
+    void obtenerPedidoPorIdUsaUnaSolaConsulta() {
+        PedidoDTO pedido = crearPedido("A");
+
+        long sentencias = contarSentencias(() -> pedidoService.obtenerPedidoPorId(pedido.getId()));
+
+        assertEquals(1, sentencias);
+    }
+
+    @Test
+    void listadosDePedidosUsanUnaSolaConsulta() {
+        crearPedido("A");
+        crearPedido("B");
+        crearPedido("C");
+
+        assertEquals(1, contarSentencias(() -> pedidoService.obtenerPedidosPorEstado(Pedido.EstadoPedido.PENDIENTE)));
+        assertEquals(1, contarSentencias(() -> pedidoService.obtenerPedidosPendientesSinOrden()));
+        assertEquals(1, contarSentencias(() -> pedidoService.obtenerPedidosConOrdenPrioridadCarga()));
+        assertEquals(1, contarSentencias(() -> pedidoService.obtenerPlanillasRecibidasDelDia()));
+        assertEquals(1, contarSentencias(() -> pedidoService.obtenerPaginaPedidos(null, 2)));
+    }
+
+    @Test
+    void avanzarEtapaActualizaSinLeerElPedidoAntes() {
+        PedidoDTO pedido = crearPedido("A");
+        pedidoService.actualizarEstadoPedido(pedido.getId(), Pedido.EstadoPedido.EN_PREPARACION, admin);
+
+        long sentencias = contarSentencias(() -> pedidoService.avanzarEtapaPreparacion(pedido.getId(), null, admin));
+
+        // UPDATE condicionado + proyección del pedido actualizado para la respuesta
+        assertEquals(2, sentencias);
+    }
+
+    @Test
+    void avanzarEtapaSobreUnaEtapaViejaEsUnConflicto() {
+        PedidoDTO pedido = crearPedido("A");
+        pedidoService.actualizarEstadoPedido(pedido.getId(), Pedido.EstadoPedido.EN_PREPARACION, admin);
+        pedidoService.avanzarEtapaPreparacion(pedido.getId(), null, admin);
+
+        // Un segundo toque que todavía ve el pedido sin etapa no debe saltear CONTROL
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> pedidoService.avanzarEtapaPreparacion(pedido.getId(), null, deposito));
+        assertEquals(Pedido.EtapaPreparacion.CONTROL, pedidoService.obtenerPedidoPorId(pedido.getId()).getEtapaPreparacion());
+    }
+
+    @Test
+    void cambiarEstadoDesdeUnEstadoDePartidaInvalidoEsUnaSolicitudInvalida() {
+        PedidoDTO pedido = crearPedido("A");
+
+        // PENDIENTE -> PENDIENTE no es una transición: 400 y no un conflicto
+        assertThrows(IllegalArgumentException.class,
+                () -> pedidoService.actualizarEstadoPedido(pedido.getId(), Pedido.EstadoPedido.PENDIENTE, admin));
+
+        pedidoService.actualizarEstadoPedido(pedido.getId(), Pedido.EstadoPedido.REALIZADO, admin);
+        assertThrows(IllegalArgumentException.class,
+                () -> pedidoService.actualizarEstadoPedido(pedido.getId(), Pedido.EstadoPedido.EN_PREPARACION, admin));
+        assertEquals(Pedido.EstadoPedido.REALIZADO, pedidoService.obtenerPedidoPorId(pedido.getId()).getEstado());
+    }
+
+    @Test
+    void crearPedidoConCatalogoEnCacheNoConsultaElCatalogo() {
+        crearPedido("A", LocalDate.now());
+
+        long sentencias = contarSentencias(() -> crearPedido("A", LocalDate.now().plusDays(1)));
+
+        // Duplicado de planilla (pedidos y archivo) + INSERT + proyección del pedido creado: transporte, zona
+        // y vuelta salen de la caché como referencias, sin buscarlos ni cargarlos (el conflicto
+        // transporte/vuelta/fecha lo valida la restricción única)
+        assertEquals(4, sentencias);
+    }
+
+    @Test
+    void crearPedidoConPlanillaArchivadaLoRechaza() {
+        PedidoArchivado archivado = new PedidoArchivado();
+        archivado.setId(Long.MAX_VALUE);
+        archivado.setNumeroPlanilla("PL-ARCHIVADA-" + sufijo);
+        archivado.setEstado(Pedido.EstadoPedido.REALIZADO);
+        archivado.setFechaCreacion(LocalDateTime.now().minusDays(3));
+        archivado.setFechaFinalizado(LocalDateTime.now().minusDays(2));
+        archivado.setFechaArchivado(LocalDateTime.now());
+        pedidoArchivadoRepository.save(archivado);
+        PedidoCreateDTO dto = new PedidoCreateDTO("PL-ARCHIVADA-" + sufijo, "Transporte " + sufijo, null, 5,
+                "Vuelta " + sufijo, LocalDate.now());
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> pedidoService.crearPedido(dto, admin));
+
+        assertTrue(error.getMessage().contains("número de planilla"));
+    }
+
+    @Test
+    void crearPedidoConVueltaOcupadaLoRechazaLaRestriccionUnica() {
+        PedidoDTO existente = crearPedido("A");
+        PedidoCreateDTO duplicado = new PedidoCreateDTO(
+                "PL-OTRA-" + sufijo,
+                existente.getTransportistaNombre(),
+                existente.getZonaNombre(),
+                5,
+                existente.getVueltaNombre(),
+                existente.getFechaEntrega());
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> pedidoService.crearPedido(duplicado, admin));
+
+        assertTrue(error.getMessage().contains("ya tiene asignada la vuelta"));
+    }
+
+    @Test
+    void agregarAColaPrioridadNoConsultaElMaximoOrden() {
+        // El primero inicializa la posición en memoria y la fila del contador de la secuencia de la cola
+        pedidoService.agregarAColaPrioridadCarga(crearPedido("A").getId());
+        PedidoDTO pedido = crearPedido("B");
+
+        long sentencias = contarSentencias(() -> pedidoService.agregarAColaPrioridadCarga(pedido.getId()));
+
+        // SELECT con joins + UPDATE + UPDATE y SELECT del contador de la secuencia de la cola
+        // + ids de la cola para el aviso por WebSocket
+        // (con un solo nodo la posición al final se reserva en memoria, sin consultar el máximo)
+        assertEquals(5, sentencias);
+    }
+
+    @Test
+    void eliminarPedidoNoCargaRelaciones() {
+        PedidoDTO pedido = crearPedido("A");
+
+        long sentencias = contarSentencias(() -> pedidoService.eliminarPedido(pedido.getId()));
+
+        // SELECT del pedido (sin relaciones) + DELETE + INSERT del registro de eliminación
+        assertEquals(3, sentencias);
+    }
+
+    @Test
+    void resumenVueltasNoCuentaDosVecesUnAltaQueYaLeyoLaReconstruccion() {
+        PedidoDTO pedido = crearPedido("A");
+        resumenVueltasService.reconstruir();
+        // El alta llega tarde (después de leer la base), como un afterCommit demorado
+        resumenVueltasService.registrar(pedido.getId(), pedido.getVersionCambio(),
+                pedido.getTransportistaId(), pedido.getVueltaId(), pedido.getFechaEntrega());
+
+        pedidoService.eliminarPedido(pedido.getId());
+
+        assertTrue(resumenVueltasService.obtenerVueltasPorFecha(pedido.getTransportistaId(), null, null).isEmpty());
+    }
+
+    @Test
+    void analiticaTramosNoCuentaDosVecesUnTramoQueYaLeyoLaReconstruccion() {
+        PedidoDTO pedido = crearPedido("A");
+        pedidoService.actualizarEstadoPedido(pedido.getId(), Pedido.EstadoPedido.EN_PREPARACION, admin);
+        PedidoDTO enControl = pedidoService.avanzarEtapaPreparacion(pedido.getId(), null, admin);
+        analiticaTramosService.reconstruir();
+        long muestras = muestrasDePreparacion();
+
+        // El tramo llega tarde (después de leer la base), como un afterCommit demorado
+        analiticaTramosService.registrar(AnaliticaTramosService.Tramo.PREPARACION, enControl);
+
+        assertEquals(muestras, muestrasDePreparacion());
+    }
+
+    @Test
+    void mensajesDelDiaSeSirvenDesdeMemoria() {
+        mensajeService.crearMensaje(new MensajeCreateDTO("Hola " + sufijo, Rol.TipoRol.ADMIN_DEPOSITO), admin);
+        mensajeService.crearMensaje(new MensajeCreateDTO("Recibido " + sufijo, Rol.TipoRol.ADMIN_PRINCIPAL), deposito);
+
+        AtomicReference<List<MensajeDTO>> mensajes = new AtomicReference<>();
+        long sentencias = contarSentencias(() ->
+                mensajes.set(mensajeService.obtenerMensajesDelDia(Rol.TipoRol.ADMIN_DEPOSITO, Rol.TipoRol.ADMIN_DEPOSITO)));
+
+        assertEquals(0, sentencias);
+        assertEquals(2, mensajes.get().stream().filter(m -> m.getContenido().endsWith(sufijo)).count());
+    }
+
+    @Test
+    void contarNoLeidosSeSirveDesdeLosContadores() {
+        long antes = mensajeService.contarMensajesNoLeidos(Rol.TipoRol.ADMIN_PRINCIPAL);
+        mensajeService.crearMensaje(new MensajeCreateDTO("Uno " + sufijo, Rol.TipoRol.ADMIN_PRINCIPAL), deposito);
+        mensajeService.crearMensaje(new MensajeCreateDTO("Dos " + sufijo, Rol.TipoRol.ADMIN_PRINCIPAL), deposito);
+
+        AtomicReference<Long> cantidad = new AtomicReference<>();
+        long sentencias = contarSentencias(() ->
+                cantidad.set(mensajeService.contarMensajesNoLeidos(Rol.TipoRol.ADMIN_PRINCIPAL)));
+
+        assertEquals(0, sentencias);
+        assertEquals(antes + 2, cantidad.get());
+
+        mensajeService.marcarTodosComoLeidos(Rol.TipoRol.ADMIN_PRINCIPAL, admin);
+        assertEquals(0, mensajeService.contarMensajesNoLeidos(Rol.TipoRol.ADMIN_PRINCIPAL));
+    }
+
+    @Test
+    void marcarTodosComoLeidosUsaUnSoloUpdate() {
+        for (int i = 0; i < 5; i++) {
+            mensajeService.crearMensaje(new MensajeCreateDTO("Aviso " + i + " " + sufijo, Rol.TipoRol.ADMIN_DEPOSITO), admin);
+        }
+        // El que envió el propio usuario no se marca
+        mensajeService.crearMensaje(new MensajeCreateDTO("Propio " + sufijo, Rol.TipoRol.ADMIN_DEPOSITO), deposito);
+
+        long sentencias = contarSentencias(() -> mensajeService.marcarTodosComoLeidos(Rol.TipoRol.ADMIN_DEPOSITO, deposito));
+
+        // SELECT acotado de ids y rol del remitente para el aviso + un UPDATE por criterio (sin lista de ids),
+        // sin importar cuántos mensajes haya
+        assertEquals(2, sentencias);
+        assertEquals(1, mensajeService.contarMensajesNoLeidos(Rol.TipoRol.ADMIN_DEPOSITO));
+    }
+
+    @Test
+    void purgaDiariaBorraLosDiasAnterioresYNoRepiteDentroDelDia() {
+        MensajeDTO viejo = mensajeService.crearMensaje(new MensajeCreateDTO("Ayer " + sufijo, Rol.TipoRol.ADMIN_DEPOSITO), admin);
+        MensajeDTO actual = mensajeService.crearMensaje(new MensajeCreateDTO("Hoy " + sufijo, Rol.TipoRol.ADMIN_DEPOSITO), admin);
+        mensajeRepository.findById(viejo.getId()).ifPresent(m -> {
+            m.setFechaDia(LocalDate.now().minusDays(1));
+            mensajeRepository.save(m);
+        });
+
+        purgaDiariaMensajes.renovarDia();
+
+        assertTrue(mensajeRepository.findById(viejo.getId()).isEmpty());
+        assertTrue(mensajeRepository.findById(actual.getId()).isPresent());
+        assertEquals(0, contarSentencias(purgaDiariaMensajes::purgarSiEsNuevoDia));
+    }
+
+    private PedidoDTO crearPedido(String codigo) {
+        return crearPedido(codigo, LocalDate.now());
+    }
+
+    private PedidoDTO crearPedido(String codigo, LocalDate fechaEntrega) {
+        PedidoCreateDTO dto = new PedidoCreateDTO(
+                "PL-" + codigo + "-" + fechaEntrega + "-" + sufijo,
+                "Transporte " + codigo + " " + sufijo,
+                "Zona " + sufijo,
+                5,
+                "Vuelta " + codigo + " " + sufijo,
+                fechaEntrega);
+        return pedidoService.crearPedido(dto, admin);
+    }
+
+    private long muestrasDePreparacion() {
+        return analiticaTramosService.obtenerDuraciones(AnaliticaTramosService.Dimension.GENERAL, null).stream()
+                .filter(duracion -> duracion.getTramo().equals(AnaliticaTramosService.Tramo.PREPARACION.name()))
+                .mapToLong(DuracionTramoDTO::getMuestras)
+                .sum();
+    }
+
+    private long contarSentencias(Runnable accion) {
+        long[] contador = new long[1];
+        SENTENCIAS.set(contador);
+        try {
+            accion.run();
+        } finally {
+            SENTENCIAS.remove();
+        }
+        return contador[0];
+    }
+}
@@ -0,0 +1,78 @@
+package com.Panelinformativo;
+
+import com.Panelinformativo.common.websocket.DeltasPedidos;
+import com.Panelinformativo.pedidos.dto.DeltaPedidoDTO;
+import com.Panelinformativo.pedidos.dto.PedidoDTO;
+import com.Panelinformativo.pedidos.model.Pedido;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ObjectNode;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Compara el mensaje WebSocket de un cambio de etapa con el formato anterior (PedidoDTO completo en JSON)
+// y el nuevo (delta en JSON o CBOR).
+class PayloadsPedidosTests {
+    private final JsonMapper jsonMapper = new JsonMapper();
+    private final CBORMapper cborMapper = new CBORMapper();
+
+    @Test
+    void elDeltaDeUnCambioDeEtapaEsMasChicoQueElPedidoCompleto() {
+        PedidoDTO antes = pedidoEnPreparacion(10L);
+        PedidoDTO despues = pedidoEnPreparacion(11L);
+        despues.setEtapaPreparacion(Pedido.EtapaPreparacion.CONTROL);
+        despues.setFechaControl(LocalDateTime.of(2026, 10, 17, 10, 45));
+        despues.setFechaActualizacion(despues.getFechaControl());
+        despues.setControlado(false);
+
+        DeltasPedidos deltas = new DeltasPedidos(jsonMapper, 100);
+        assertNull(deltas.calcular(antes).getVersionBase());
+        DeltaPedidoDTO delta = deltas.calcular(despues);
+        assertEquals(10L, delta.getVersionBase());
+        assertEquals(3, delta.getCambios().size()); // etapa, fecha de control y fecha de actualización
+
+        byte[] completoJson = jsonMapper.writeValueAsBytes(despues);
+        byte[] deltaJson = jsonMapper.writeValueAsBytes(delta);
+        byte[] deltaCbor = cborMapper.writeValueAsBytes(delta);
+        assertTrue(deltaJson.length * 3 < completoJson.length);
+        assertTrue(deltaCbor.length < deltaJson.length);
+    }
+
+    @Test
+    void aplicarElDeltaSobreLaVersionBaseReconstruyeElPedido() {
+        PedidoDTO antes = pedidoEnPreparacion(20L);
+        PedidoDTO despues = pedidoEnPreparacion(21L);
+        despues.setGrupoId(null);
+        despues.setGrupoNombre(null);
+        despues.setCantidad(12);
+
+        DeltasPedidos deltas = new DeltasPedidos(jsonMapper, 100);
+        deltas.calcular(antes);
+        DeltaPedidoDTO delta = deltas.calcular(despues);
+
+        ObjectNode reconstruido = jsonMapper.valueToTree(antes);
+        reconstruido.setAll(delta.getCambios());
+        reconstruido.put("versionCambio", delta.getVersion());
+        reconstruido.put("transportista", reconstruido.get("transportistaNombre").asString());
+        assertEquals(jsonMapper.valueToTree(despues), reconstruido);
+
+        // Una versión que no es más nueva que la publicada se manda completa y no reemplaza la base
+        assertNull(deltas.calcular(antes).getVersionBase());
+        assertEquals(21L, deltas.calcular(pedidoEnPreparacion(22L)).getVersionBase());
+    }
+
+    private PedidoDTO pedidoEnPreparacion(Long versionCambio) {
+        LocalDateTime creacion = LocalDateTime.of(2026, 10, 17, 8, 30);
+        return new PedidoDTO(1L, "PL-000123", 5L, "Transportes del Sur", "Transportes del Sur",
+                Pedido.EstadoPedido.EN_PREPARACION, null, 3L, "Juan Pérez", 7L, "Zona Norte", 8,
+                2L, "Vuelta 1", "Administrador", creacion, creacion.plusHours(1), creacion.plusHours(1),
+                null, null, null, LocalDate.of(2026, 10, 18), null, creacion.plusMinutes(5), false,
+                null, null, versionCambio);
+    }
+}
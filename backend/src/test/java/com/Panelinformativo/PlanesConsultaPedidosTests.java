@@ -0,0 +1,81 @@
+package com.Panelinformativo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Verifica con EXPLAIN que las consultas calientes de pedidos resuelven por índice
+// y no recorren la tabla completa. Las sentencias replican las que genera el repositorio.
+@SpringBootTest
+class PlanesConsultaPedidosTests {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String motor;
+
+    @BeforeEach
+    void preparar() {
+        motor = jdbcTemplate.execute((ConnectionCallback<String>) conexion ->
+                conexion.getMetaData().getDatabaseProductName());
+    }
+
+    @Test
+    void colaPrioridadCargaUsaIndice() {
+        verificarUsaIndice("SELECT * FROM pedidos WHERE estado = 'PENDIENTE' AND orden_prioridad_carga IS NOT NULL "
+                + "ORDER BY orden_prioridad_carga");
+        verificarUsaIndice("SELECT MAX(orden_prioridad_carga) FROM pedidos WHERE estado = 'PENDIENTE' "
+                + "AND orden_prioridad_carga < 100 AND id <> 1");
+    }
+
+    @Test
+    void pedidosPorEstadoUsanIndice() {
+        verificarUsaIndice("SELECT * FROM pedidos WHERE estado = 'PENDIENTE' AND orden_prioridad_carga IS NULL "
+                + "ORDER BY fecha_creacion");
+        verificarUsaIndice("SELECT * FROM pedidos WHERE estado = 'EN_PREPARACION' ORDER BY fecha_creacion");
+        verificarUsaIndice("SELECT * FROM pedidos WHERE estado = 'REALIZADO' "
+                + "ORDER BY fecha_actualizacion DESC, fecha_creacion DESC");
+    }
+
+    @Test
+    void rangoFechaCreacionUsaIndice() {
+        verificarUsaIndice("SELECT * FROM pedidos WHERE fecha_creacion >= TIMESTAMP '2026-01-01 00:00:00' "
+                + "AND fecha_creacion < TIMESTAMP '2026-01-02 00:00:00'");
+    }
+
+    @Test
+    void conflictoTransporteVueltaFechaUsaIndice() {
+        verificarUsaIndice("SELECT * FROM pedidos WHERE transportista_id = 1 AND vuelta_id = 1 "
+                + "AND fecha_entrega = DATE '2026-01-01'");
+    }
+
+    @Test
+    void cambiosDesdeVersionUsaIndice() {
+        verificarUsaIndice("SELECT * FROM pedidos WHERE version_cambio > 10");
+    }
+
+    private void verificarUsaIndice(String sql) {
+        if (motor.contains("MySQL") || motor.contains("MariaDB")) {
+            // En MySQL el plan trae una fila por tabla; type = ALL es un recorrido completo
+            List<Map<String, Object>> filas = jdbcTemplate.queryForList("EXPLAIN " + sql);
+            for (Map<String, Object> fila : filas) {
+                assertNotEquals("ALL", String.valueOf(fila.get("type")), "Recorrido completo en: " + sql);
+            }
+            return;
+        }
+        // En H2 el plan indica el índice elegido como comentario; tableScan es un recorrido completo
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+        assertFalse(plan.contains("tableScan"), "Recorrido completo en: " + sql + "\n" + plan);
+        assertTrue(plan.contains("/* PUBLIC."), "Plan sin índice en: " + sql + "\n" + plan);
+    }
+}
@@ -1,19 +1,35 @@
 import { useState, useEffect, useRef, useMemo } from 'react';
 import { useAuth } from '../context/AuthContext';
-import { pedidoService } from '../services/pedidoService';
+import { pedidoService, aplicarCambiosPedidos } from '../services/pedidoService';
 import { usuarioService } from '../services/usuarioService';
 import { transportistaService } from '../services/transportistaService';
 import { grupoService } from '../services/grupoService';
 import { mensajeService } from '../services/mensajeService';
 import { zonaService } from '../services/zonaService';
 import { vueltaService } from '../services/vueltaService';
-import { connectWebSocket, disconnectWebSocket } from '../services/websocketService';
+import { connectWebSocket, disconnectWebSocket, pedidoDelMensaje, actualizarPedidoEnLista } from '../services/websocketService';
 import SockJS from 'sockjs-client';
 import { Client } from '@stomp/stompjs';
 import Chat from './Chat';
 import GestionPrioridadCarga from './GestionPrioridadCarga';
 import './AdminPanel.css';
 
+const porFechaCreacionDescendente = (a, b) => new Date(b.fechaCreacion || 0) - new Date(a.fechaCreacion || 0);
+const porFechaActualizacionDescendente = (a, b) =>
+  new Date(b.fechaActualizacion || b.fechaCreacion || 0) - new Date(a.fechaActualizacion || a.fechaCreacion || 0);
+
+// Planillas recibidas hoy (el mismo criterio que /pedidos/del-dia)
+const esDelDia = (pedido) => {
+  const inicioDia = new Date();
+  inicioDia.setHours(0, 0, 0, 0);
+  const fechaCreacion = new Date(pedido.fechaCreacion);
+  return fechaCreacion >= inicioDia && fechaCreacion < new Date(inicioDia.getTime() + 24 * 60 * 60 * 1000);
+};
+
+// Pendiente sin orden de prioridad de carga (lo que cuenta el indicador de Prioridad de Carga)
+const esSinOrden = (pedido) => !!pedido && pedido.estado === 'PENDIENTE'
+  && (pedido.ordenPrioridadCarga === null || pedido.ordenPrioridadCarga === undefined);
+
 const AdminPanel = () => {
   const { user, logout } = useAuth();
   const [pedidos, setPedidos] = useState([]);
@@ -140,6 +156,13 @@ const AdminPanel = () => {
   // Estado para rastrear cantidad de planillas sin orden (para el indicador de Prioridad de Carga)
   const [cantidadPlanillasSinOrden, setCantidadPlanillasSinOrden] = useState(0);
 
+  // Copia de todos los pedidos para aplicar deltas desde el callback del WebSocket (que no ve el estado nuevo)
+  const listasActuales = useRef({ todos: [] });
+
+  useEffect(() => {
+    listasActuales.current = { todos: todosLosPedidos };
+  }, [todosLosPedidos]);
+
   // Función para cargar cantidad de planillas sin orden
   const cargarCantidadPlanillasSinOrden = async () => {
     try {
@@ -164,41 +187,79 @@ const AdminPanel = () => {
     // Cargar cantidad de planillas sin orden inicialmente
     cargarCantidadPlanillasSinOrden();
     
+    // Vuelve a pedir las listas al servidor: al reconectar o cuando un delta no se puede aplicar
+    // sobre la copia local
+    const recargarDesdeElServidor = () => {
+      // Recargar pedidos según la pestaña activa
+      if (activeTab === 'realizados') {
+        pedidoService.obtenerPorEstado('REALIZADO').then(response => {
+          setPedidos(response.data || []);
+        }).catch(err => console.error('Error al recargar pedidos realizados:', err));
+      } else if (activeTab === 'pedidos') {
+        pedidoService.obtenerPlanillasDelDia().then(response => {
+          setPedidos(response.data || []);
+        }).catch(err => console.error('Error al recargar pedidos:', err));
+      }
+
+      // Todos los pedidos para el contador (y para las planillas agrupadas por día en la pestaña de pedidos)
+      pedidoService.obtenerTodos().then(response => {
+        setTodosLosPedidos(response.data || []);
+        if (activeTab === 'pedidos') {
+          setTodasLasPlanillas(response.data || []);
+        }
+      }).catch(err => console.error('Error al actualizar todos los pedidos:', err));
+
+      cargarCantidadPlanillasSinOrden();
+    };
+
+    // Pone un pedido actualizado en las listas locales y ajusta el contador de planillas sin orden
+    const aplicarPedido = (pedido) => {
+      const anterior = listasActuales.current.todos.find((p) => p.id === pedido.id);
+      if (anterior && anterior.versionCambio != null && pedido.versionCambio != null
+          && anterior.versionCambio > pedido.versionCambio) {
+        return; // Ya se tiene una copia más nueva
+      }
+      if (activeTab === 'realizados') {
+        setPedidos(prev => actualizarPedidoEnLista(prev, pedido,
+          (p) => p.estado === 'REALIZADO', porFechaActualizacionDescendente));
+      } else if (activeTab === 'pedidos') {
+        setPedidos(prev => actualizarPedidoEnLista(prev, pedido, esDelDia, porFechaCreacionDescendente));
+        setTodasLasPlanillas(prev => actualizarPedidoEnLista(prev, pedido, () => true, porFechaCreacionDescendente));
+      }
+      setTodosLosPedidos(prev => actualizarPedidoEnLista(prev, pedido, () => true, porFechaCreacionDescendente));
+      const diferencia = (esSinOrden(pedido) ? 1 : 0) - (esSinOrden(anterior) ? 1 : 0);
+      if (diferencia !== 0) {
+        setCantidadPlanillasSinOrden(prev => Math.max(0, prev + diferencia));
+      }
+    };
+
     const stompClient = connectWebSocket((message) => {
       if (message.tipo === 'eliminado') {
+        const anterior = listasActuales.current.todos.find((p) => p.id === message.id);
         setPedidos((prev) => prev.filter((p) => p.id !== message.id));
         setTodosLosPedidos((prev) => prev.filter((p) => p.id !== message.id));
+        setTodasLasPlanillas((prev) => prev.filter((p) => p.id !== message.id));
         // Actualizar contador de planillas sin orden
-        cargarCantidadPlanillasSinOrden();
+        if (esSinOrden(anterior)) {
+          setCantidadPlanillasSinOrden(prev => Math.max(0, prev - 1));
+        }
+      } else if (message.tipo === 'resync') {
+        // Se pudieron perder cambios mientras no había conexión
+        recargarDesdeElServidor();
+      } else if (message.tipo === 'cola') {
+        // El orden de la cola no cambia las listas de este panel: los pedidos que entran o salen
+        // de la cola llegan en su propio mensaje
       } else {
-        // Recargar pedidos según la pestaña activa
-        if (activeTab === 'realizados') {
-          pedidoService.obtenerPorEstado('REALIZADO').then(response => {
-            setPedidos(response.data || []);
-          }).catch(err => console.error('Error al recargar pedidos realizados:', err));
-        } else if (activeTab === 'pedidos') {
-          // Cargar todas las planillas para agruparlas por día
-          Promise.all([
-            pedidoService.obtenerTodos(),
-            pedidoService.obtenerPlanillasDelDia()
-          ]).then(([todasResponse, diaResponse]) => {
-            setTodasLasPlanillas(todasResponse.data || []);
-            setPedidos(diaResponse.data || []);
-          }).catch(err => console.error('Error al recargar pedidos:', err));
+        // Delta o pedido importado: actualizar solo ese pedido en las listas locales
+        const pedido = pedidoDelMensaje(message, listasActuales.current.todos);
+        if (pedido) {
+          aplicarPedido(pedido);
+        } else {
+          // No se tiene la versión sobre la que se calculó el cambio: pedir solo ese pedido
+          pedidoService.obtenerPorId(message.id)
+            .then(response => aplicarPedido(response.data))
+            .catch(() => recargarDesdeElServidor());
         }
-        
-        // Actualizar todos los pedidos para el contador (IMPORTANTE: esto actualiza el indicador)
-        // Hacer esto siempre, independientemente de la pestaña activa
-        pedidoService.obtenerTodos().then(response => {
-          setTodosLosPedidos(response.data || []);
-          // Si estamos en la pestaña de pedidos, también actualizar todasLasPlanillas
-          if (activeTab === 'pedidos') {
-            setTodasLasPlanillas(response.data || []);
-          }
-        }).catch(err => console.error('Error al actualizar todos los pedidos:', err));
-        
-        // Actualizar contador de planillas sin orden cuando hay cambios
-        cargarCantidadPlanillasSinOrden();
       }
     });
 
@@ -214,10 +275,13 @@ const AdminPanel = () => {
       return;
     }
 
+    // La primera consulta trae la lista completa; las siguientes solo lo que cambió desde la versión anterior
+    let versionCambios = null;
     const cargarTodosLosPedidos = async () => {
       try {
-        const response = await pedidoService.obtenerTodos();
-        setTodosLosPedidos(response.data || []);
+        const response = await pedidoService.obtenerCambios(versionCambios);
+        versionCambios = response.data.version;
+        setTodosLosPedidos(prev => aplicarCambiosPedidos(prev, response.data));
       } catch (error) {
         console.error('Error al cargar todos los pedidos:', error);
       }
@@ -485,14 +549,9 @@ const AdminPanel = () => {
     }
   };
 
-  // Cargar cantidad de mensajes no leídos al montar y periódicamente
+  // Cargar cantidad de mensajes no leídos al montar; después la actualiza el backend vía WebSocket
   useEffect(() => {
     actualizarCantidadMensajesNoLeidos();
-    const interval = setInterval(() => {
-      actualizarCantidadMensajesNoLeidos();
-    }, 5000); // Cada 5 segundos
-
-    return () => clearInterval(interval);
   }, []);
 
   // Función para reproducir sonido de notificación
@@ -551,8 +610,7 @@ const AdminPanel = () => {
         // AdminPanel solo para ADMIN_PRINCIPAL
         const rolUsuario = user.rol.toLowerCase(); // Debería ser 'admin_principal'
         const topicNuevo = '/topic/mensajes/nuevo';
-        const topicLeido = `/topic/mensajes/leido/${rolUsuario}`;
-        const topicTodosLeidos = `/topic/mensajes/todos-leidos/${rolUsuario}`;
+        const topicNoLeidos = `/topic/mensajes/no-leidos/${rolUsuario}`;
 
         // Suscribirse a mensajes nuevos
         client.subscribe(topicNuevo, (message) => {
@@ -563,29 +621,16 @@ const AdminPanel = () => {
             if (!showChat && String(nuevoMensaje.remitenteId) !== String(user?.id)) {
               reproducirSonidoNotificacion();
             }
-            
-            // Actualizar contador de forma optimista (incrementar inmediatamente)
-            setCantidadMensajesNoLeidos(prev => {
-              // Si el mensaje no está leído, incrementar
-              if (!nuevoMensaje.leido) {
-                return prev + 1;
-              }
-              return prev;
-            });
-            // También actualizar desde el servidor para confirmar
-            actualizarCantidadMensajesNoLeidos();
           }
         });
 
-        // Suscribirse a mensajes leídos
-        client.subscribe(topicLeido, () => {
-          actualizarCantidadMensajesNoLeidos();
+        // El backend envía el contador actualizado con cada mensaje nuevo o leído
+        client.subscribe(topicNoLeidos, (message) => {
+          setCantidadMensajesNoLeidos(Number(message.body) || 0);
         });
 
-        // Suscribirse a todos los mensajes leídos
-        client.subscribe(topicTodosLeidos, () => {
-          setCantidadMensajesNoLeidos(0);
-        });
+        // Al (re)conectar, sincronizar el contador por si se perdieron eventos mientras tanto
+        actualizarCantidadMensajesNoLeidos();
       },
     });
 
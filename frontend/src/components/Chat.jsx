@@ -69,9 +69,8 @@ const Chat = ({ onClose, rolDestinatario }) => {
   const marcarMensajesComoLeidos = async () => {
     try {
       await mensajeService.marcarTodosComoLeidos();
-      // No actualizar el estado local aquí, la notificación WebSocket lo hará
+      // No actualizar el estado local aquí, la notificación WebSocket lo hará (incluido el contador)
       // Esto evita condiciones de carrera y asegura que solo se marquen los mensajes correctos
-      await actualizarCantidadNoLeidos();
     } catch (error) {
       console.error('Error al marcar mensajes como leídos:', error);
     }
@@ -215,7 +214,7 @@ const Chat = ({ onClose, rolDestinatario }) => {
         // Suscribirse a mensajes nuevos para el rol del usuario
         const topicDestino = `/topic/mensajes/${rolUsuario?.toLowerCase()}`;
         const topicNuevo = '/topic/mensajes/nuevo';
-        const topicLeido = `/topic/mensajes/leido/${rolUsuario?.toLowerCase()}`;
+        const topicNoLeidos = `/topic/mensajes/no-leidos/${rolUsuario?.toLowerCase()}`;
         const topicTodosLeidos = `/topic/mensajes/todos-leidos/${rolUsuario?.toLowerCase()}`;
 
         client.subscribe(topicDestino, (message) => {
@@ -235,7 +234,6 @@ const Chat = ({ onClose, rolDestinatario }) => {
               console.error('Error al marcar mensaje como leído:', err);
             });
           }
-          actualizarCantidadNoLeidos();
         });
 
         client.subscribe(topicNuevo, (message) => {
@@ -277,14 +275,13 @@ const Chat = ({ onClose, rolDestinatario }) => {
                 console.error('Error al marcar mensaje como leído:', err);
               });
             }
-            actualizarCantidadNoLeidos();
             scrollToBottom();
           }
         });
 
-        client.subscribe(topicLeido, () => {
-          // Actualizar contador cuando se marca un mensaje como leído
-          actualizarCantidadNoLeidos();
+        // El backend envía el contador actualizado con cada mensaje nuevo o leído
+        client.subscribe(topicNoLeidos, (message) => {
+          setCantidadNoLeidos(Number(message.body) || 0);
         });
 
         client.subscribe(topicTodosLeidos, () => {
@@ -297,7 +294,6 @@ const Chat = ({ onClose, rolDestinatario }) => {
             }
             return m;
           }));
-          actualizarCantidadNoLeidos();
         });
 
         // Suscribirse a notificaciones de mensajes leídos para el remitente
@@ -319,6 +315,13 @@ const Chat = ({ onClose, rolDestinatario }) => {
             return m;
           }));
         });
+
+        // "Marcar todos como leídos" llega como un solo aviso con los ids de nuestros mensajes leídos
+        const topicLeidosRemitente = `/topic/mensajes/leidos-remitente/${rolUsuario?.toLowerCase()}`;
+        client.subscribe(topicLeidosRemitente, (message) => {
+          const idsLeidos = new Set(JSON.parse(message.body));
+          setMensajes(prev => prev.map(m => idsLeidos.has(m.id) ? { ...m, leido: true } : m));
+        });
       },
     });
 
@@ -332,15 +335,6 @@ const Chat = ({ onClose, rolDestinatario }) => {
     };
   }, [rolUsuario]);
 
-  // Actualizar cantidad de no leídos periódicamente
-  useEffect(() => {
-    const interval = setInterval(() => {
-      actualizarCantidadNoLeidos();
-    }, 5000); // Cada 5 segundos
-
-    return () => clearInterval(interval);
-  }, []);
-
   // Determinar la clase CSS según el rol del usuario para aplicar colores
   const isAdminChat = rolUsuario === 'ADMIN_PRINCIPAL';
   
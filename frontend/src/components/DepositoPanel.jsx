@@ -1,16 +1,46 @@
 import { useState, useEffect, useRef, useCallback, useMemo } from 'react';
 import { useAuth } from '../context/AuthContext';
-import { pedidoService } from '../services/pedidoService';
+import { pedidoService, crearDetectorCambiosPedidos } from '../services/pedidoService';
 import { grupoService } from '../services/grupoService';
 import { transportistaService } from '../services/transportistaService';
 import { mensajeService } from '../services/mensajeService';
 import { usuarioService } from '../services/usuarioService';
-import { connectWebSocket, disconnectWebSocket } from '../services/websocketService';
+import { connectWebSocket, disconnectWebSocket, pedidoDelMensaje, actualizarPedidoEnLista, CANALES_PEDIDOS } from '../services/websocketService';
 import SockJS from 'sockjs-client';
 import { Client } from '@stomp/stompjs';
 import Chat from './Chat';
 import './DepositoPanel.css';
 
+const porFechaCreacionAscendente = (a, b) => new Date(a.fechaCreacion || 0) - new Date(b.fechaCreacion || 0);
+
+// Orden de cada pestaña de pedidos (el mismo que arma cargarPedidos). PENDIENTE sigue el orden de la cola,
+// que llega en su propio mensaje
+const ORDEN_PESTANIAS_PEDIDOS = {
+  PENDIENTE: null,
+  EN_PREPARACION: porFechaCreacionAscendente,
+  CONTROL: porFechaCreacionAscendente,
+  PENDIENTE_CARGA: porFechaCreacionAscendente,
+  REALIZADO: (a, b) => new Date(b.fechaActualizacion || b.fechaCreacion || 0) - new Date(a.fechaActualizacion || a.fechaCreacion || 0),
+};
+
+// Qué pedidos muestra cada pestaña de pedidos (los mismos filtros que cargarPedidos)
+const correspondeALaPestania = (filtroEstado, pedido) => {
+  switch (filtroEstado) {
+    case 'PENDIENTE':
+      return pedido.estado === 'PENDIENTE' && pedido.ordenPrioridadCarga !== null && pedido.ordenPrioridadCarga !== undefined;
+    case 'EN_PREPARACION':
+      return pedido.estado === 'EN_PREPARACION' && !pedido.etapaPreparacion;
+    case 'CONTROL':
+      return pedido.estado === 'EN_PREPARACION' && pedido.etapaPreparacion === 'CONTROL' && !pedido.controlado;
+    case 'PENDIENTE_CARGA':
+      return pedido.estado === 'EN_PREPARACION' && pedido.etapaPreparacion === 'PENDIENTE_CARGA';
+    case 'REALIZADO':
+      return pedido.estado === 'REALIZADO';
+    default:
+      return false;
+  }
+};
+
 const DepositoPanel = () => {
   const { user, logout } = useAuth();
   const [pedidos, setPedidos] = useState([]);
@@ -73,6 +103,14 @@ const DepositoPanel = () => {
 
   // Ref para rastrear si es la primera carga
   const isInitialLoad = useRef(true);
+  // Última secuencia recibida del evento de cambio de cola (para descartar eventos viejos)
+  const ultimaSecuenciaCola = useRef(0);
+  // Copia de las listas para aplicar deltas desde el callback del WebSocket (que no ve el estado nuevo)
+  const listasActuales = useRef({ pedidos: [], cache: { PENDIENTE: [], EN_PREPARACION: [] } });
+
+  useEffect(() => {
+    listasActuales.current = { pedidos, cache: todosLosPedidos };
+  }, [pedidos, todosLosPedidos]);
   // Ref para el campo del formulario de equipos
   const grupoNombreRef = useRef(null);
   // Refs para los campos del formulario de usuarios
@@ -148,6 +186,62 @@ const DepositoPanel = () => {
 
     cargarDatos();
 
+    // Solo los pedidos pendientes y en preparación (más los realizados si se está viendo esa pestaña):
+    // los cambios de otros estados no llegan a este panel
+    const canales = [CANALES_PEDIDOS.PENDIENTES, CANALES_PEDIDOS.EN_PREPARACION];
+    if (filtroEstado === 'REALIZADO') {
+      canales.push(CANALES_PEDIDOS.REALIZADOS);
+    }
+
+    // Vuelve a pedir las listas al servidor: al reconectar o cuando un delta no se puede aplicar
+    // sobre la copia local
+    const recargarDesdeElServidor = () => {
+      if (filtroEstado === 'TRANSPORTISTAS') {
+        cargarTransportistas().catch(err => {
+          console.error('Error al recargar transportistas desde WebSocket:', err);
+        });
+      } else if (filtroEstado === 'ROLES') {
+        cargarUsuariosRoles().catch(err => {
+          console.error('Error al recargar usuarios desde WebSocket:', err);
+        });
+      } else {
+        cargarPedidos().catch(err => {
+          console.error('Error al recargar pedidos desde WebSocket:', err);
+        });
+      }
+      // Recargar cache para notificaciones
+      // Usar un pequeño delay para agrupar múltiples actualizaciones
+      clearTimeout(actualizarCacheTimeout);
+      actualizarCacheTimeout = setTimeout(() => {
+        Promise.all([
+          pedidoService.obtenerConOrdenPrioridadCarga(),
+          pedidoService.obtenerPorEstado('EN_PREPARACION'),
+        ]).then(([pendientesConOrden, enPreparacion]) => {
+          setTodosLosPedidos({
+            PENDIENTE: pendientesConOrden.data || [],
+            EN_PREPARACION: enPreparacion.data || [],
+          });
+        }).catch(err => {
+          console.error('Error al actualizar cache desde WebSocket:', err);
+        });
+      }, 200); // Delay reducido a 200ms para actualizaciones más rápidas
+    };
+
+    // Pone un pedido actualizado en la pestaña activa y en la cache de notificaciones
+    // (la cache se actualiza siempre, independientemente de la pestaña activa)
+    const aplicarPedido = (pedido) => {
+      if (ORDEN_PESTANIAS_PEDIDOS[filtroEstado] !== undefined) {
+        setPedidos(prev => actualizarPedidoEnLista(prev, pedido,
+          (p) => correspondeALaPestania(filtroEstado, p), ORDEN_PESTANIAS_PEDIDOS[filtroEstado]));
+      }
+      setTodosLosPedidos(prev => ({
+        PENDIENTE: actualizarPedidoEnLista(prev.PENDIENTE, pedido,
+          (p) => correspondeALaPestania('PENDIENTE', p)),
+        EN_PREPARACION: actualizarPedidoEnLista(prev.EN_PREPARACION, pedido,
+          (p) => p.estado === 'EN_PREPARACION', porFechaCreacionAscendente),
+      }));
+    };
+
     // Conectar WebSocket (solo una vez, el servicio maneja múltiples conexiones)
     connectWebSocket((message) => {
       if (message.tipo === 'eliminado') {
@@ -157,58 +251,43 @@ const DepositoPanel = () => {
           PENDIENTE: prev.PENDIENTE.filter(p => p.id !== message.id),
           EN_PREPARACION: prev.EN_PREPARACION.filter(p => p.id !== message.id),
         }));
+      } else if (message.tipo === 'resync') {
+        // Se pudieron perder cambios mientras no había conexión
+        recargarDesdeElServidor();
+      } else if (message.tipo === 'cola') {
+        if (message.secuencia <= ultimaSecuenciaCola.current) {
+          return;
+        }
+        ultimaSecuenciaCola.current = message.secuencia;
+        // Reordenar los pendientes según la cola recibida (los pedidos nuevos llegan en su propio mensaje)
+        const posiciones = new Map(message.pedidoIds.map((id, index) => [id, index]));
+        const ordenarSegunCola = (lista) => lista
+          .filter((p) => posiciones.has(p.id))
+          .sort((a, b) => posiciones.get(a.id) - posiciones.get(b.id));
+        if (filtroEstado === 'PENDIENTE') {
+          setPedidos(ordenarSegunCola);
+        }
+        setTodosLosPedidos(prev => ({ ...prev, PENDIENTE: ordenarSegunCola(prev.PENDIENTE) }));
       } else {
-        // Recargar datos según la pestaña activa
-        if (filtroEstado === 'TRANSPORTISTAS') {
+        // Delta o pedido importado: actualizar solo ese pedido en las listas locales
+        const { pedidos: pedidosActuales, cache } = listasActuales.current;
+        const pedido = pedidoDelMensaje(message, pedidosActuales, cache.PENDIENTE, cache.EN_PREPARACION);
+        if (pedido) {
+          aplicarPedido(pedido);
+        } else {
+          // No se tiene la versión sobre la que se calculó el cambio: pedir solo ese pedido
+          pedidoService.obtenerPorId(message.id)
+            .then(response => aplicarPedido(response.data))
+            .catch(() => recargarDesdeElServidor());
+        }
+        if (filtroEstado === 'TRANSPORTISTAS' && !message.tipo) {
+          // Una importación puede haber dado de alta transportistas nuevos
           cargarTransportistas().catch(err => {
             console.error('Error al recargar transportistas desde WebSocket:', err);
           });
-        } else if (filtroEstado === 'ROLES') {
-          cargarUsuariosRoles().catch(err => {
-            console.error('Error al recargar usuarios desde WebSocket:', err);
-          });
-        } else if (filtroEstado === 'PENDIENTE') {
-          // Para PENDIENTE: actualizar silenciosamente sin mostrar loading
-          // Solo recargar si no hay datos actualmente cargados
-          if (pedidos.length === 0) {
-            cargarPedidos().catch(err => {
-              console.error('Error al recargar pedidos desde WebSocket:', err);
-            });
-          } else {
-            // Actualizar silenciosamente en segundo plano
-            pedidoService.obtenerConOrdenPrioridadCarga()
-              .then(response => {
-                setPedidos(response.data || []);
-              })
-              .catch(err => {
-                console.error('Error al actualizar pedidos pendientes desde WebSocket:', err);
-              });
-          }
-        } else if (filtroEstado === 'EN_PREPARACION' || filtroEstado === 'CONTROL' || filtroEstado === 'PENDIENTE_CARGA' || filtroEstado === 'REALIZADO') {
-          // Para EN_PREPARACION, CONTROL, PENDIENTE_CARGA, REALIZADO
-          cargarPedidos().catch(err => {
-            console.error('Error al recargar pedidos desde WebSocket:', err);
-          });
         }
-        // Recargar cache para notificaciones
-        // Esto se ejecuta SIEMPRE cuando hay cambios, independientemente de la pestaña activa
-        // Usar un pequeño delay para agrupar múltiples actualizaciones
-        clearTimeout(actualizarCacheTimeout);
-        actualizarCacheTimeout = setTimeout(() => {
-          Promise.all([
-            pedidoService.obtenerConOrdenPrioridadCarga(),
-            pedidoService.obtenerPorEstado('EN_PREPARACION'),
-          ]).then(([pendientesConOrden, enPreparacion]) => {
-            setTodosLosPedidos({
-              PENDIENTE: pendientesConOrden.data || [],
-              EN_PREPARACION: enPreparacion.data || [],
-            });
-          }).catch(err => {
-            console.error('Error al actualizar cache desde WebSocket:', err);
-          });
-        }, 200); // Delay reducido a 200ms para actualizaciones más rápidas
       }
-    });
+    }, undefined, canales);
 
     return () => {
       disconnectWebSocket();
@@ -225,17 +304,12 @@ const DepositoPanel = () => {
     }
   };
 
-  // Cargar cantidad de mensajes no leídos al montar y periódicamente
+  // Cargar cantidad de mensajes no leídos al montar; después la actualiza el backend vía WebSocket
   useEffect(() => {
     actualizarCantidadMensajesNoLeidos();
-    const interval = setInterval(() => {
-      actualizarCantidadMensajesNoLeidos();
-    }, 5000); // Cada 5 segundos
-
-    return () => clearInterval(interval);
   }, []);
 
-  // Suscribirse a mensajes nuevos vía WebSocket para actualizar contador en tiempo real
+  // Suscribirse al contador de mensajes no leídos vía WebSocket para actualizarlo en tiempo real
   useEffect(() => {
     if (!user?.rol) return;
 
@@ -251,37 +325,15 @@ const DepositoPanel = () => {
       heartbeatOutgoing: 4000,
       onConnect: () => {
         const rolUsuario = user.rol.toLowerCase();
-        const topicNuevo = '/topic/mensajes/nuevo';
-        const topicLeido = `/topic/mensajes/leido/${rolUsuario}`;
-        const topicTodosLeidos = `/topic/mensajes/todos-leidos/${rolUsuario}`;
-
-        // Suscribirse a mensajes nuevos
-        client.subscribe(topicNuevo, (message) => {
-          const nuevoMensaje = JSON.parse(message.body);
-          // Solo actualizar si el mensaje es para nuestro rol
-          if (nuevoMensaje.rolDestinatario === user.rol) {
-            // Actualizar contador de forma optimista (incrementar inmediatamente)
-            setCantidadMensajesNoLeidos(prev => {
-              // Si el mensaje no está leído, incrementar
-              if (!nuevoMensaje.leido) {
-                return prev + 1;
-              }
-              return prev;
-            });
-            // También actualizar desde el servidor para confirmar
-            actualizarCantidadMensajesNoLeidos();
-          }
-        });
+        const topicNoLeidos = `/topic/mensajes/no-leidos/${rolUsuario}`;
 
-        // Suscribirse a mensajes leídos
-        client.subscribe(topicLeido, () => {
-          actualizarCantidadMensajesNoLeidos();
+        // El backend envía el contador actualizado con cada mensaje nuevo o leído
+        client.subscribe(topicNoLeidos, (message) => {
+          setCantidadMensajesNoLeidos(Number(message.body) || 0);
         });
 
-        // Suscribirse a todos los mensajes leídos
-        client.subscribe(topicTodosLeidos, () => {
-          setCantidadMensajesNoLeidos(0);
-        });
+        // Al (re)conectar, sincronizar el contador por si se perdieron eventos mientras tanto
+        actualizarCantidadMensajesNoLeidos();
       },
     });
 
@@ -1016,8 +1068,17 @@ const DepositoPanel = () => {
     if (!notificationIntervalSet.current) {
       notificationIntervalSet.current = true;
       cargarTodosLosPedidosParaNotificaciones();
-      // Recargar cada 5 segundos para actualizar notificaciones
-      const interval = setInterval(cargarTodosLosPedidosParaNotificaciones, 5000);
+      // Cada 5 segundos consultar si hubo cambios y recargar solo en ese caso
+      const hayCambios = crearDetectorCambiosPedidos();
+      const interval = setInterval(() => {
+        hayCambios()
+          .then(huboCambios => {
+            if (huboCambios) {
+              cargarTodosLosPedidosParaNotificaciones();
+            }
+          })
+          .catch(error => console.error('Error al consultar cambios de pedidos:', error));
+      }, 5000);
       return () => {
         clearInterval(interval);
         notificationIntervalSet.current = false;
@@ -1215,9 +1276,9 @@ const DepositoPanel = () => {
     }
   };
 
-  const handleAvanzarEtapa = async (pedidoId) => {
+  const handleAvanzarEtapa = async (pedidoId, etapaActual) => {
     try {
-      await pedidoService.avanzarEtapaPreparacion(pedidoId);
+      await pedidoService.avanzarEtapaPreparacion(pedidoId, etapaActual);
       await cargarPedidos();
       // Actualizar cache
       const [pendientesConOrden, enPreparacion] = await Promise.all([
@@ -1231,6 +1292,10 @@ const DepositoPanel = () => {
     } catch (error) {
       console.error('Error al avanzar etapa:', error);
       alert(error.response?.data || 'Error al avanzar etapa');
+      // 409: otro usuario ya cambió el pedido, recargar para mostrar su estado real
+      if (error.response?.status === 409) {
+        cargarPedidos();
+      }
     }
   };
 
@@ -1373,6 +1438,9 @@ const DepositoPanel = () => {
       }, delay);
     } catch (error) {
       alert(error.response?.data || 'Error al actualizar estado');
+      if (error.response?.status === 409) {
+        cargarPedidos();
+      }
     }
   };
 
@@ -3034,7 +3102,7 @@ const DepositoPanel = () => {
               }}
             >
               <div className="pedido-header" style={{ position: 'relative' }}>
-                {pedido.ordenPrioridadCarga && filtroEstado === 'PENDIENTE' && (
+                {pedido.ordenPrioridadCarga != null && filtroEstado === 'PENDIENTE' && (
                   <span style={{
                     position: 'absolute',
                     top: '-8px',
@@ -3049,7 +3117,7 @@ const DepositoPanel = () => {
                     boxShadow: '0 2px 6px rgba(15, 118, 110, 0.3)',
                     zIndex: 10
                   }}>
-                    #{pedido.ordenPrioridadCarga}
+                    #{index + 1}
                   </span>
                 )}
                 <div style={{ display: 'flex', alignItems: 'center', gap: '12px' }}>
@@ -3626,7 +3694,7 @@ const DepositoPanel = () => {
                           className="btn-success"
                           onClick={() => {
                             if (window.confirm(`¿Estás seguro de que deseas finalizar la preparación de la planilla ${pedido.numeroPlanilla}?\n\nLa planilla pasará a la etapa de "Control".`)) {
-                              handleAvanzarEtapa(pedido.id);
+                              handleAvanzarEtapa(pedido.id, pedido.etapaPreparacion);
                             }
                           }}
                           style={{
@@ -3676,7 +3744,7 @@ const DepositoPanel = () => {
                         className="btn-success"
                         onClick={() => {
                           if (window.confirm(`¿Estás seguro de que deseas controlar la planilla ${pedido.numeroPlanilla}?\n\nLa planilla pasará a "Pendiente de Carga".`)) {
-                            handleAvanzarEtapa(pedido.id);
+                            handleAvanzarEtapa(pedido.id, pedido.etapaPreparacion);
                           }
                         }}
                         style={{
@@ -3720,7 +3788,7 @@ const DepositoPanel = () => {
                         className="btn-success"
                         onClick={() => {
                           if (window.confirm(`¿Estás seguro de que deseas finalizar la planilla ${pedido.numeroPlanilla}?\n\nLa planilla pasará a estado "Realizado" y se completará el proceso.`)) {
-                            handleAvanzarEtapa(pedido.id);
+                            handleAvanzarEtapa(pedido.id, pedido.etapaPreparacion);
                           }
                         }}
                         style={{
@@ -1,6 +1,6 @@
 import { useState, useEffect, useRef } from 'react';
 import { pedidoService } from '../services/pedidoService';
-import { connectWebSocket, disconnectWebSocket } from '../services/websocketService';
+import { connectWebSocket, disconnectWebSocket, aplicarDelta, CANALES_PEDIDOS } from '../services/websocketService';
 import './GestionPrioridadCarga.css';
 
 const GestionPrioridadCarga = ({ onContadorCambio, onPedidoAgregadoACola, onPedidoRemovidoDeCola }) => {
@@ -14,6 +14,14 @@ const GestionPrioridadCarga = ({ onContadorCambio, onPedidoAgregadoACola, onPedi
   const [pedidoSeleccionado, setPedidoSeleccionado] = useState(null);
   // Ref para evitar recargas cuando el cambio viene de esta misma sesión
   const actualizacionesLocales = useRef(new Set());
+  // Última secuencia recibida del evento de cambio de cola (para descartar eventos viejos)
+  const ultimaSecuenciaCola = useRef(0);
+  // Copia de las listas para aplicar deltas desde el callback del WebSocket (que no ve el estado nuevo)
+  const listasActuales = useRef({ sinOrden: [], conOrden: [] });
+
+  useEffect(() => {
+    listasActuales.current = { sinOrden: pedidosSinOrden, conOrden: pedidosConOrden };
+  }, [pedidosSinOrden, pedidosConOrden]);
 
   useEffect(() => {
     cargarPedidos(true); // Solo mostrar loading en la carga inicial
@@ -29,24 +37,44 @@ const GestionPrioridadCarga = ({ onContadorCambio, onPedidoAgregadoACola, onPedi
       if (message.tipo === 'eliminado') {
         setPedidosSinOrden((prev) => prev.filter((p) => p.id !== message.id));
         setPedidosConOrden((prev) => prev.filter((p) => p.id !== message.id));
-      } else if (message.tipo === 'actualizado' && message.pedido) {
+      } else if (message.tipo === 'cola') {
+        if (message.secuencia <= ultimaSecuenciaCola.current) {
+          return;
+        }
+        ultimaSecuenciaCola.current = message.secuencia;
+        // Reordenar la cola local según el orden recibido (los pedidos nuevos llegan en su propio mensaje)
+        const posiciones = new Map(message.pedidoIds.map((id, index) => [id, index]));
+        setPedidosConOrden((prev) => prev
+          .filter((p) => posiciones.has(p.id))
+          .sort((a, b) => posiciones.get(a.id) - posiciones.get(b.id)));
+      } else if (message.tipo === 'delta') {
         // Actualizar solo el pedido específico sin recargar todo
-        const pedidoActualizado = message.pedido;
-        
-        // Si tiene ordenPrioridadCarga, actualizar en la lista con orden
-        if (pedidoActualizado.ordenPrioridadCarga !== null && pedidoActualizado.ordenPrioridadCarga !== undefined) {
+        const { sinOrden, conOrden } = listasActuales.current;
+        const pedidoLocal = conOrden.find((p) => p.id === message.id) || sinOrden.find((p) => p.id === message.id);
+        const pedidoActualizado = aplicarDelta(pedidoLocal, message);
+        if (!pedidoActualizado) {
+          // No se tiene la versión sobre la que se calculó el cambio
+          recargarSiNoHayCambiosLocales();
+          return;
+        }
+
+        if (pedidoActualizado.estado !== 'PENDIENTE') {
+          // Salió de pendientes: ya no corresponde a ninguna de las dos listas
+          setPedidosConOrden((prev) => prev.filter((p) => p.id !== pedidoActualizado.id));
+          setPedidosSinOrden((prev) => prev.filter((p) => p.id !== pedidoActualizado.id));
+        } else if (pedidoActualizado.ordenPrioridadCarga !== null && pedidoActualizado.ordenPrioridadCarga !== undefined) {
+          // Si tiene ordenPrioridadCarga, actualizar en la lista con orden. La posición la define el
+          // último evento de la cola (el orden local de los demás puede estar desactualizado)
           setPedidosConOrden((prev) => {
             const index = prev.findIndex(p => p.id === pedidoActualizado.id);
             if (index >= 0) {
               // Actualizar el pedido existente
               const nuevo = [...prev];
               nuevo[index] = pedidoActualizado;
-              // Reordenar según ordenPrioridadCarga
-              return nuevo.sort((a, b) => (a.ordenPrioridadCarga || 0) - (b.ordenPrioridadCarga || 0));
+              return nuevo;
             } else {
-              // Agregar nuevo pedido a la lista
-              const nuevo = [...prev, pedidoActualizado];
-              return nuevo.sort((a, b) => (a.ordenPrioridadCarga || 0) - (b.ordenPrioridadCarga || 0));
+              // Los pedidos entran al final de la cola
+              return [...prev, pedidoActualizado];
             }
           });
           
@@ -70,19 +98,23 @@ const GestionPrioridadCarga = ({ onContadorCambio, onPedidoAgregadoACola, onPedi
         }
       } else {
         // Para otros tipos de mensajes, recargar solo si no es una actualización local
-        setTimeout(() => {
-          if (!actualizacionesLocales.current.size) {
-            cargarPedidos();
-          }
-        }, 500);
+        recargarSiNoHayCambiosLocales();
       }
-    });
+    }, undefined, [CANALES_PEDIDOS.PENDIENTES]); // La cola solo contiene pedidos pendientes
 
     return () => {
       disconnectWebSocket();
     };
   }, []);
 
+  const recargarSiNoHayCambiosLocales = () => {
+    setTimeout(() => {
+      if (!actualizacionesLocales.current.size) {
+        cargarPedidos();
+      }
+    }, 500);
+  };
+
   const cargarPedidos = async (mostrarLoading = false) => {
     try {
       if (mostrarLoading) {
@@ -124,8 +156,8 @@ const GestionPrioridadCarga = ({ onContadorCambio, onPedidoAgregadoACola, onPedi
         return nuevo;
       });
       
-      // Calcular el nuevo orden (al final de la cola)
-      const nuevoOrden = pedidosConOrden.length + 1;
+      // Calcular el nuevo orden (al final de la cola); el valor definitivo lo asigna el backend
+      const nuevoOrden = pedidosConOrden.reduce((max, p) => Math.max(max, p.ordenPrioridadCarga || 0), 0) + 1;
       const pedidoConOrden = {
         ...pedido,
         ordenPrioridadCarga: nuevoOrden,
@@ -185,19 +217,8 @@ const GestionPrioridadCarga = ({ onContadorCambio, onPedidoAgregadoACola, onPedi
       // Guardar el pedido para restaurarlo si hay error
       const pedidoParaRestaurar = { ...pedido };
       
-      // Obtener todos los IDs de pedidos con orden para actualizar sus índices
-      const todosLosIds = pedidosConOrden.map(p => p.id);
-      const idsRestantes = todosLosIds.filter(id => id !== pedidoId);
-      
-      // Actualizar estado local inmediatamente
-      setPedidosConOrden(prev => {
-        const nuevo = prev.filter(p => p.id !== pedidoId);
-        // Recalcular los índices de orden para los pedidos restantes
-        return nuevo.map((p, index) => ({
-          ...p,
-          ordenPrioridadCarga: index + 1
-        }));
-      });
+      // Actualizar estado local inmediatamente (el resto de la cola conserva su orden)
+      setPedidosConOrden(prev => prev.filter(p => p.id !== pedidoId));
       
       // Agregar de vuelta a la lista sin orden
       const pedidoSinOrden = { ...pedido };
@@ -216,23 +237,6 @@ const GestionPrioridadCarga = ({ onContadorCambio, onPedidoAgregadoACola, onPedi
         onPedidoRemovidoDeCola(pedidoId);
       }
       
-      // Actualizar el orden en el backend en segundo plano para todos los pedidos restantes
-      if (idsRestantes.length > 0) {
-        // Marcar todos los pedidos restantes como actualizaciones locales
-        idsRestantes.forEach(id => actualizacionesLocales.current.add(id));
-        
-        pedidoService.actualizarOrdenPrioridadCarga(idsRestantes)
-          .then(() => {
-            setTimeout(() => {
-              idsRestantes.forEach(id => actualizacionesLocales.current.delete(id));
-            }, 2000);
-          })
-          .catch(err => {
-            idsRestantes.forEach(id => actualizacionesLocales.current.delete(id));
-            console.error('Error al actualizar orden después de remover:', err);
-          });
-      }
-      
       // Enviar al backend en segundo plano
       pedidoService.removerDeColaPrioridadCarga(pedidoId)
         .then(() => {
@@ -276,34 +280,38 @@ const GestionPrioridadCarga = ({ onContadorCambio, onPedidoAgregadoACola, onPedi
     }
   };
 
-  const actualizarOrden = async (nuevoOrden) => {
+  const actualizarOrden = async (nuevoOrden, pedidoMovido) => {
     try {
-      const pedidoIds = nuevoOrden.map((p) => p.id);
-      
-      // Marcar estos pedidos como actualizaciones locales para evitar recarga del WebSocket
-      pedidoIds.forEach(id => actualizacionesLocales.current.add(id));
-      
-      // Actualizar el ordenPrioridadCarga localmente en cada pedido
-      const nuevoOrdenConIndices = nuevoOrden.map((pedido, index) => ({
-        ...pedido,
-        ordenPrioridadCarga: index + 1
-      }));
+      // Marcar el pedido movido como actualización local para evitar recarga del WebSocket
+      actualizacionesLocales.current.add(pedidoMovido.id);
       
       // Actualizar el estado local inmediatamente (sin recargar)
-      setPedidosConOrden(nuevoOrdenConIndices);
+      setPedidosConOrden(nuevoOrden);
+      
+      // Solo se envía el movimiento del pedido: queda después de su nuevo anterior, o al inicio
+      const posicion = nuevoOrden.findIndex(p => p.id === pedidoMovido.id);
+      const anterior = posicion > 0 ? nuevoOrden[posicion - 1] : null;
+      const peticion = anterior
+        ? pedidoService.moverDespuesEnColaPrioridadCarga(pedidoMovido.id, anterior.id)
+        : pedidoService.moverAlInicioColaPrioridadCarga(pedidoMovido.id);
       
       // Enviar al backend en segundo plano (sin bloquear la UI)
-      pedidoService.actualizarOrdenPrioridadCarga(pedidoIds)
-        .then(() => {
-          // Limpiar los IDs de actualizaciones locales después de un delay
+      peticion
+        .then((response) => {
+          // Tomar los órdenes asignados por el backend (normalmente solo el del pedido movido)
+          const ordenes = new Map(response.data.map(p => [p.id, p.ordenPrioridadCarga]));
+          setPedidosConOrden(prev => prev.map(p =>
+            ordenes.has(p.id) ? { ...p, ordenPrioridadCarga: ordenes.get(p.id) } : p
+          ));
+          // Limpiar la marca de actualización local después de un delay
           setTimeout(() => {
-            pedidoIds.forEach(id => actualizacionesLocales.current.delete(id));
+            actualizacionesLocales.current.delete(pedidoMovido.id);
           }, 2000);
         })
         .catch((err) => {
           console.error('Error al actualizar orden en el backend:', err);
-          // Limpiar las marcas de actualizaciones locales
-          pedidoIds.forEach(id => actualizacionesLocales.current.delete(id));
+          // Limpiar la marca de actualización local
+          actualizacionesLocales.current.delete(pedidoMovido.id);
           // Si hay error, recargar para restaurar el estado correcto
           cargarPedidos();
           alert(err.response?.data || 'Error al actualizar el orden. Se restauró el orden anterior.');
@@ -349,7 +357,7 @@ const GestionPrioridadCarga = ({ onContadorCambio, onPedidoAgregadoACola, onPedi
     setDraggedItem(null);
 
     // Guardar el nuevo orden en el backend
-    actualizarOrden(nuevoOrden);
+    actualizarOrden(nuevoOrden, removed);
   };
 
   const moverArriba = (index) => {
@@ -357,7 +365,7 @@ const GestionPrioridadCarga = ({ onContadorCambio, onPedidoAgregadoACola, onPedi
     const nuevoOrden = [...pedidosConOrden];
     [nuevoOrden[index - 1], nuevoOrden[index]] = [nuevoOrden[index], nuevoOrden[index - 1]];
     setPedidosConOrden(nuevoOrden);
-    actualizarOrden(nuevoOrden);
+    actualizarOrden(nuevoOrden, nuevoOrden[index - 1]);
   };
 
   const moverAbajo = (index) => {
@@ -365,7 +373,7 @@ const GestionPrioridadCarga = ({ onContadorCambio, onPedidoAgregadoACola, onPedi
     const nuevoOrden = [...pedidosConOrden];
     [nuevoOrden[index], nuevoOrden[index + 1]] = [nuevoOrden[index + 1], nuevoOrden[index]];
     setPedidosConOrden(nuevoOrden);
-    actualizarOrden(nuevoOrden);
+    actualizarOrden(nuevoOrden, nuevoOrden[index + 1]);
   };
 
   const abrirModalDetalle = (pedido) => {
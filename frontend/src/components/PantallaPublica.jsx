@@ -1,6 +1,6 @@
-import { useState, useEffect } from 'react';
-import { pedidoService } from '../services/pedidoService';
-import { connectWebSocket, disconnectWebSocket } from '../services/websocketService';
+import { useState, useEffect, useRef } from 'react';
+import { pedidoService, crearDetectorCambiosPedidos } from '../services/pedidoService';
+import { connectWebSocket, disconnectWebSocket, CANALES_PEDIDOS } from '../services/websocketService';
 import './PantallaPublica.css';
 
 const PantallaPublica = () => {
@@ -14,21 +14,45 @@ const PantallaPublica = () => {
   const [cursorVisible, setCursorVisible] = useState(true);
   const [horaActual, setHoraActual] = useState(new Date());
 
+  // Último orden recibido de la cola de prioridad (posición por id) y su secuencia
+  const posicionesCola = useRef(new Map());
+  const ultimaSecuenciaCola = useRef(0);
+
   useEffect(() => {
     cargarPedidos();
+    // Solo el canal de la pantalla: recibe la vista reducida de cada pedido y se aplica sin recargar
     const stompClient = connectWebSocket((message) => {
       if (message.tipo === 'eliminado') {
         setPedidosPrioridadArmado((prev) => prev.filter((p) => p.id !== message.id));
         setPedidosEnPreparacion((prev) => prev.filter((p) => p.id !== message.id));
         setPedidosControl((prev) => prev.filter((p) => p.id !== message.id));
         setPedidosPendienteCarga((prev) => prev.filter((p) => p.id !== message.id));
+      } else if (message.tipo === 'cola') {
+        if (message.secuencia <= ultimaSecuenciaCola.current) {
+          return;
+        }
+        ultimaSecuenciaCola.current = message.secuencia;
+        posicionesCola.current = new Map(message.pedidoIds.map((id, index) => [id, index]));
+        setPedidosPrioridadArmado((prev) => ordenarSegunCola(
+          prev.filter((p) => posicionesCola.current.has(p.id)), posicionesCola.current));
+      } else if (message.id) {
+        aplicarCambioPedido(message);
       } else {
         cargarPedidos();
       }
-    });
+    }, undefined, [CANALES_PEDIDOS.PANTALLA]);
 
-    // Actualizar cada 30 segundos
-    const interval = setInterval(cargarPedidos, 30000);
+    // Cada 30 segundos consultar si hubo cambios y recargar solo en ese caso
+    const hayCambios = crearDetectorCambiosPedidos();
+    const interval = setInterval(() => {
+      hayCambios()
+        .then(huboCambios => {
+          if (huboCambios) {
+            cargarPedidos();
+          }
+        })
+        .catch(() => cargarPedidos());
+    }, 30000);
 
     // Escuchar cambios en el estado de pantalla completa
     const handleFullscreenChange = () => {
@@ -122,6 +146,45 @@ const PantallaPublica = () => {
     }
   };
 
+  const ordenarSegunCola = (pedidos, posiciones) => [...pedidos].sort(
+    (a, b) => (posiciones.get(a.id) ?? Infinity) - (posiciones.get(b.id) ?? Infinity));
+
+  // Quita el pedido de la lista o lo reemplaza/agrega (ordenado por fecha de creación) si pertenece a ella
+  const ubicarEnLista = (lista, pedido, pertenece) => {
+    const resto = lista.filter((p) => p.id !== pedido.id);
+    if (!pertenece) {
+      return resto.length === lista.length ? lista : resto;
+    }
+    return [...resto, pedido].sort((a, b) => (a.fechaCreacion || '').localeCompare(b.fechaCreacion || ''));
+  };
+
+  // Aplica el cambio de un pedido a las listas de la pantalla sin volver a pedirlas al servidor
+  const aplicarCambioPedido = (pedido) => {
+    const enCola = pedido.estado === 'PENDIENTE' && pedido.ordenPrioridadCarga !== null && pedido.ordenPrioridadCarga !== undefined;
+    const enPreparacion = pedido.estado === 'EN_PREPARACION';
+
+    setPedidosPrioridadArmado((prev) => {
+      if (!enCola) {
+        return prev.filter((p) => p.id !== pedido.id);
+      }
+      const index = prev.findIndex((p) => p.id === pedido.id);
+      if (index >= 0) {
+        const nuevo = [...prev];
+        nuevo[index] = pedido;
+        return nuevo;
+      }
+      // Los pedidos entran al final de la cola, salvo que el último orden recibido ya los ubique
+      return ordenarSegunCola([...prev, pedido], posicionesCola.current);
+    });
+    setPedidosEnPreparacion((prev) => ubicarEnLista(prev, pedido, enPreparacion && !pedido.etapaPreparacion));
+    setPedidosControl((prev) => ubicarEnLista(prev, pedido, enPreparacion && pedido.etapaPreparacion === 'CONTROL'));
+    setPedidosPendienteCarga((prev) => ubicarEnLista(prev, pedido, enPreparacion && pedido.etapaPreparacion === 'PENDIENTE_CARGA'));
+    // Realizados: el más reciente primero
+    setPedidosRealizados((prev) => pedido.estado === 'REALIZADO'
+      ? [pedido, ...prev.filter((p) => p.id !== pedido.id)]
+      : prev.filter((p) => p.id !== pedido.id));
+  };
+
   // Calcular pedidos realizados hoy
   const getRealizadosHoy = () => {
     const hoy = new Date();
@@ -2,15 +2,29 @@ import api from '../config/axios';
 
 export const pedidoService = {
   obtenerTodos: () => api.get('/pedidos'),
+  obtenerPagina: (cursor, tamanio) => api.get('/pedidos/pagina', { params: { cursor, tamanio } }),
+  // Histórico de pedidos archivados (finalizados hace más de un día), desde/hasta en formato yyyy-MM-dd
+  obtenerPaginaArchivados: (cursor, tamanio, desde, hasta) =>
+    api.get('/pedidos/archivados', { params: { cursor, tamanio, desde, hasta } }),
+  // Sincronización incremental: sin "since" devuelve la lista completa y la versión actual
+  obtenerCambios: (since) => api.get('/pedidos/changes', { params: since != null ? { since } : {} }),
+  // Solo la versión actual de los cambios (pública: la usa la pantalla pública para saber si recargar)
+  obtenerVersionCambios: () => api.get('/pedidos/changes/version'),
   obtenerPorEstado: (estado) => api.get(`/pedidos/estado/${estado}`),
+  // Percentiles de duración por tramo de la preparación (dimension: GENERAL, GRUPO, ZONA, TRANSPORTISTA o DIA)
+  obtenerDuracionesTramos: (dimension, valor) => api.get('/pedidos/analitica/tramos', { params: { dimension, valor } }),
   obtenerPorId: (id) => api.get(`/pedidos/${id}`),
   crear: (data) => api.post('/pedidos', data),
+  importar: (pedidos) => api.post('/pedidos/importar', pedidos),
+  importarCsv: (csv) => api.post('/pedidos/importar', csv, { headers: { 'Content-Type': 'text/csv' } }),
   actualizar: (id, data) => api.put(`/pedidos/${id}`, data),
   actualizarEstado: (id, estado) => {
     // Enviar el estado como string JSON
     return api.put(`/pedidos/${id}/estado`, JSON.stringify(estado));
   },
-  avanzarEtapaPreparacion: (id) => api.put(`/pedidos/${id}/avanzar-etapa`),
+  // Se envía la etapa que ve el usuario: si otro ya la avanzó, el backend responde 409 en lugar de saltear una etapa
+  avanzarEtapaPreparacion: (id, etapaActual) =>
+    api.put(`/pedidos/${id}/avanzar-etapa`, null, { params: etapaActual ? { etapa: etapaActual } : {} }),
   asignarGrupo: (id, grupoId) => api.put(`/pedidos/${id}/grupo`, grupoId),
   quitarGrupo: (id) => api.delete(`/pedidos/${id}/grupo`),
   eliminar: (id) => api.delete(`/pedidos/${id}`),
@@ -20,8 +34,37 @@ export const pedidoService = {
   actualizarOrdenPrioridadCarga: (pedidoIds) => api.put('/pedidos/prioridad-carga/orden', pedidoIds),
   agregarAColaPrioridadCarga: (id) => api.put(`/pedidos/${id}/prioridad-carga/agregar`),
   removerDeColaPrioridadCarga: (id) => api.put(`/pedidos/${id}/prioridad-carga/remover`),
+  moverAntesEnColaPrioridadCarga: (id, referenciaId) => api.put(`/pedidos/${id}/prioridad-carga/mover-antes/${referenciaId}`),
+  moverDespuesEnColaPrioridadCarga: (id, referenciaId) => api.put(`/pedidos/${id}/prioridad-carga/mover-despues/${referenciaId}`),
+  moverAlInicioColaPrioridadCarga: (id) => api.put(`/pedidos/${id}/prioridad-carga/mover-al-inicio`),
   // Métodos para obtener planillas del día y resumen de transportistas
   obtenerPlanillasDelDia: () => api.get('/pedidos/del-dia'),
   obtenerTransportistasVueltasDelDia: () => api.get('/pedidos/transportistas-vueltas/del-dia'),
 };
 
+
+// Aplica una respuesta de /pedidos/changes sobre una lista local (ordenada por fecha de creación descendente)
+export const aplicarCambiosPedidos = (lista, cambios) => {
+  if (cambios.completo) {
+    return cambios.pedidos || [];
+  }
+  if (cambios.pedidos.length === 0 && cambios.eliminados.length === 0) {
+    return lista;
+  }
+  const modificados = new Set(cambios.pedidos.map(p => p.id));
+  const eliminados = new Set(cambios.eliminados);
+  return [...lista.filter(p => !modificados.has(p.id) && !eliminados.has(p.id)), ...cambios.pedidos]
+    .sort((a, b) => new Date(b.fechaCreacion) - new Date(a.fechaCreacion));
+};
+
+// Devuelve una función que consulta la versión de cambios de pedidos y responde si cambió desde la consulta
+// anterior. Sirve para que los paneles solo recarguen sus listas cuando realmente cambió algo.
+export const crearDetectorCambiosPedidos = () => {
+  let version = null;
+  return async () => {
+    const { data } = await pedidoService.obtenerVersionCambios();
+    const huboCambios = version === null || data.version !== version;
+    version = data.version;
+    return huboCambios;
+  };
+};
@@ -4,6 +4,7 @@ import { Client } from '@stomp/stompjs';
 let stompClient = null;
 let currentOnMessage = null;
 let currentOnError = null;
+let canalesSuscritos = [];
 let isConnecting = false; // Flag para evitar múltiples conexiones simultáneas
 
 // Función para obtener la URL base del backend
@@ -19,10 +20,76 @@ const getBackendBaseUrl = () => {
   return 'http://localhost:8080';
 };
 
-export const connectWebSocket = (onMessage, onError) => {
+// Canales con los cambios de pedidos: cada pantalla se suscribe solo a los pedidos que muestra
+// (importaciones, cola de prioridad y eliminaciones llegan siempre)
+export const CANALES_PEDIDOS = {
+  TODOS: '/topic/pedidos',
+  PENDIENTES: '/topic/pedidos/estado/pendiente',
+  EN_PREPARACION: '/topic/pedidos/estado/en_preparacion',
+  REALIZADOS: '/topic/pedidos/estado/realizado',
+  // Vista reducida para la Pantalla Pública (id, planilla, estado, etapa y orden en la cola)
+  PANTALLA: '/topic/pedidos/pantalla',
+  grupo: (grupoId) => `/topic/pedidos/grupo/${grupoId}`,
+};
+
+// Aplica un delta de pedido ({ id, version, versionBase, cambios }) sobre la copia local.
+// Devuelve el pedido actualizado, o null si la copia no es la versión base (hay que volver a pedirlo)
+export const aplicarDelta = (pedido, delta) => {
+  if (pedido && pedido.versionCambio != null && delta.version != null && pedido.versionCambio >= delta.version) {
+    return pedido; // La copia local ya es igual o más nueva
+  }
+  let actualizado;
+  if (delta.versionBase === null || delta.versionBase === undefined) {
+    actualizado = { id: delta.id, ...delta.cambios };
+  } else if (pedido && pedido.versionCambio === delta.versionBase) {
+    actualizado = { ...pedido, ...delta.cambios };
+  } else {
+    return null;
+  }
+  // El delta no repite "transportista" (es el mismo nombre que transportistaNombre)
+  return {
+    ...actualizado,
+    versionCambio: delta.version,
+    transportista: actualizado.transportistaNombre || 'Sin transporte asignado',
+  };
+};
+
+// Pedido actualizado a partir de un mensaje de pedido: un delta se aplica sobre la copia local que esté en
+// alguna de las listas; una importación ya trae el pedido completo. null si hay que volver a pedir las listas
+export const pedidoDelMensaje = (message, ...listas) => {
+  if (message.tipo !== 'delta') {
+    return message;
+  }
+  const pedidoLocal = listas.map((lista) => lista.find((p) => p.id === message.id)).find(Boolean);
+  return aplicarDelta(pedidoLocal, message);
+};
+
+// Pone un pedido actualizado en una lista local: lo reemplaza, lo agrega si ahora le corresponde o lo quita
+// si ya no. Con 'comparar' se reordena la lista; sin él se mantiene la posición y los nuevos van al final.
+// Una copia local más nueva (llegó otro cambio mientras se pedía éste) no se pisa
+export const actualizarPedidoEnLista = (lista, pedido, corresponde, comparar) => {
+  const index = lista.findIndex((p) => p.id === pedido.id);
+  if (index >= 0 && lista[index].versionCambio != null && pedido.versionCambio != null
+      && lista[index].versionCambio > pedido.versionCambio) {
+    return lista;
+  }
+  if (!corresponde(pedido)) {
+    return index >= 0 ? lista.filter((p) => p.id !== pedido.id) : lista;
+  }
+  const nueva = [...lista];
+  if (index >= 0) {
+    nueva[index] = pedido;
+  } else {
+    nueva.push(pedido);
+  }
+  return comparar ? nueva.sort(comparar) : nueva;
+};
+
+export const connectWebSocket = (onMessage, onError, canales = [CANALES_PEDIDOS.TODOS]) => {
   // Guardar los callbacks
   currentOnMessage = onMessage;
   currentOnError = onError;
+  canalesSuscritos = canales;
   
   // Si ya existe una conexión activa, no crear otra
   if (stompClient && stompClient.connected) {
@@ -53,9 +120,10 @@ export const connectWebSocket = (onMessage, onError) => {
 
   try {
     const backendUrl = getBackendBaseUrl();
-    const socket = new SockJS(`${backendUrl}/ws`);
+    let conexiones = 0;
     const client = new Client({
-      webSocketFactory: () => socket,
+      // Un socket nuevo en cada intento: un SockJS cerrado no se puede reabrir
+      webSocketFactory: () => new SockJS(`${backendUrl}/ws`),
       reconnectDelay: 5000,
       heartbeatIncoming: 4000,
       heartbeatOutgoing: 4000,
@@ -77,23 +145,31 @@ export const connectWebSocket = (onMessage, onError) => {
             return;
           }
           
-          client.subscribe('/topic/pedidos', (message) => {
-            try {
-              messageHandler(JSON.parse(message.body));
-            } catch (err) {
-              console.error('Error procesando mensaje WebSocket:', err);
-            }
+          // Cambios de pedidos solo de los canales que muestra la pantalla (ver CANALES_PEDIDOS).
+          // Salvo el de la pantalla pública, traen deltas: usar aplicarDelta sobre la copia local
+          canalesSuscritos.forEach((canal) => {
+            client.subscribe(canal, (message) => {
+              try {
+                const datos = JSON.parse(message.body);
+                messageHandler(canal === CANALES_PEDIDOS.PANTALLA ? datos : { tipo: 'delta', ...datos });
+              } catch (err) {
+                console.error('Error procesando mensaje WebSocket:', err);
+              }
+            });
           });
-          client.subscribe('/topic/pedidos/nuevo', (message) => {
+          client.subscribe('/topic/pedidos/importados', (message) => {
             try {
-              messageHandler(JSON.parse(message.body));
+              // Importación masiva: un solo mensaje con todos los pedidos creados
+              JSON.parse(message.body).forEach((pedido) => messageHandler(pedido));
             } catch (err) {
               console.error('Error procesando mensaje WebSocket:', err);
             }
           });
-          client.subscribe('/topic/pedidos/actualizado', (message) => {
+          client.subscribe('/topic/pedidos/cola', (message) => {
             try {
-              messageHandler(JSON.parse(message.body));
+              // Cambio de la cola de prioridad de carga: un solo mensaje con el orden completo
+              const cola = JSON.parse(message.body);
+              messageHandler({ tipo: 'cola', secuencia: cola.secuencia, pedidoIds: cola.pedidoIds });
             } catch (err) {
               console.error('Error procesando mensaje WebSocket:', err);
             }
@@ -106,6 +182,12 @@ export const connectWebSocket = (onMessage, onError) => {
             }
           });
           console.log('Suscripciones a canales WebSocket establecidas');
+          // Al reconectar (corte de red, o el servidor cerró la sesión por ir muy atrasada) se pudieron
+          // perder cambios: avisar para que la pantalla recargue sus datos
+          conexiones += 1;
+          if (conexiones > 1) {
+            messageHandler({ tipo: 'resync' });
+          }
         } catch (err) {
           console.error('Error suscribiéndose a canales WebSocket:', err);
           isConnecting = false; // Resetear flag si hay error
@@ -155,5 +237,5 @@ export const disconnectWebSocket = () => {
   isConnecting = false; // Resetear flag al desconectar
 };
 
-export default { connectWebSocket, disconnectWebSocket };
+export default { connectWebSocket, disconnectWebSocket, aplicarDelta, pedidoDelMensaje, actualizarPedidoEnLista };
 